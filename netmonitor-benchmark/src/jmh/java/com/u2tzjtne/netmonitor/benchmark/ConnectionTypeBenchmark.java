@@ -0,0 +1,44 @@
+package com.u2tzjtne.netmonitor.benchmark;
+
+import android.net.ConnectivityManager;
+import android.telephony.TelephonyManager;
+
+import com.u2tzjtne.netmonitor.entity.NetState;
+import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.util.NetUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Throughput of {@link NetUtils#getConnectionType(NetState)}, cycling through
+ * the type/subtype pairs seen on devices.
+ */
+@State(Scope.Thread)
+public class ConnectionTypeBenchmark {
+    private NetState[] states;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        states = new NetState[]{
+                new NetState(true, ConnectivityManager.TYPE_WIFI, 0),
+                new NetState(true, ConnectivityManager.TYPE_MOBILE, TelephonyManager.NETWORK_TYPE_LTE),
+                new NetState(true, ConnectivityManager.TYPE_MOBILE, TelephonyManager.NETWORK_TYPE_HSPAP),
+                new NetState(true, ConnectivityManager.TYPE_MOBILE, TelephonyManager.NETWORK_TYPE_EDGE),
+                new NetState(true, ConnectivityManager.TYPE_ETHERNET, 0),
+                new NetState(true, ConnectivityManager.TYPE_BLUETOOTH, 0),
+                new NetState(false, ConnectivityManager.TYPE_NONE, 0),
+                new NetState(true, ConnectivityManager.TYPE_VPN, 0),
+        };
+    }
+
+    @Benchmark
+    public NetType getConnectionType() {
+        NetState state = states[index];
+        index = (index + 1) & 7;
+        return NetUtils.getConnectionType(state);
+    }
+}
@@ -0,0 +1,113 @@
+package com.u2tzjtne.netmonitor.benchmark;
+
+import android.net.Network;
+
+import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end latency from a platform NetworkCallback event to the last
+ * subscriber's NetCallback, with the monitor in legacy mode so the whole path
+ * runs on the benchmark thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+    @Param({"1", "10", "100"})
+    public int subscribers;
+
+    private FakePlatform platform;
+    private NetMonitor monitor;
+    private Network network;
+    private CountingCallback last;
+    private int generation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        platform = new FakePlatform();
+        network = platform.connectWifi(100, 2);
+        monitor = new NetMonitor(platform.context);
+        for (int i = 0; i < subscribers; i++) {
+            last = new CountingCallback();
+            monitor.register(last);
+        }
+        platform.fireAvailable(network);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        monitor.destroy();
+        if (last.connects == 0) {
+            throw new IllegalStateException("No event delivered");
+        }
+    }
+
+    /**
+     * The addresses of the network change: a NetInfo is built and delivered to
+     * every subscriber.
+     */
+    @Benchmark
+    public int linkPropertiesChanged() {
+        platform.renumber(network, generation ^= 1, 2);
+        platform.fireLinkPropertiesChanged(network);
+        return last.connects;
+    }
+
+    /**
+     * A capabilities update that changes nothing: it must be dropped before
+     * reaching subscribers.
+     */
+    @Benchmark
+    public int unchangedEvent() {
+        platform.fireCapabilitiesChanged(network);
+        return last.connects;
+    }
+
+    /**
+     * A network connects then disconnects.
+     */
+    @Benchmark
+    public int connectThenLose() {
+        Network cellular = platform.connectCellular(200, 2);
+        platform.fireAvailable(cellular);
+        platform.fireLost(cellular);
+        return last.disconnects;
+    }
+
+    static final class CountingCallback implements NetCallback {
+        int changes;
+        int connects;
+        int disconnects;
+
+        @Override
+        public void onNetChanged(NetType newNetType) {
+            changes++;
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+            connects++;
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+            disconnects++;
+        }
+    }
+}
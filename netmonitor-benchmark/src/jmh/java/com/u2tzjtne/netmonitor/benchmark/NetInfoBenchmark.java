@@ -0,0 +1,59 @@
+package com.u2tzjtne.netmonitor.benchmark;
+
+import android.net.LinkProperties;
+import android.net.Network;
+
+import com.u2tzjtne.netmonitor.core.delegate.ConnectivityManagerDelegate;
+import com.u2tzjtne.netmonitor.entity.IPAddress;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost and allocations of building a NetInfo from the platform. Run with
+ * {@code -prof gc} (the default of the jmh task) to see bytes per operation.
+ */
+@State(Scope.Thread)
+public class NetInfoBenchmark {
+    @Param({"2", "8"})
+    public int addressCount;
+
+    private ConnectivityManagerDelegate delegate;
+    private Network network;
+    private LinkProperties linkProperties;
+    private NetInfo previous;
+
+    @Setup
+    public void setUp() {
+        FakePlatform platform = new FakePlatform();
+        network = platform.connectWifi(100, addressCount);
+        linkProperties = platform.connectivityManager.getLinkProperties(network);
+        delegate = new ConnectivityManagerDelegate(platform.context);
+        previous = delegate.networkToInfo(network);
+    }
+
+    /**
+     * A network seen for the first time.
+     */
+    @Benchmark
+    public NetInfo networkToInfo() {
+        return delegate.networkToInfo(network);
+    }
+
+    /**
+     * An event for a network whose NetInfo did not change, the common case.
+     */
+    @Benchmark
+    public NetInfo networkToInfoUnchanged() {
+        return delegate.networkToInfo(network, previous);
+    }
+
+    @Benchmark
+    public IPAddress[] getIPAddresses() {
+        return delegate.getIPAddresses(linkProperties);
+    }
+}
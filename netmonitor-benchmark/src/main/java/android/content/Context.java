@@ -0,0 +1,79 @@
+package android.content;
+
+import android.os.Handler;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory Context: system services are registered with
+ * {@link #setSystemService(String, Object)} and broadcasts sent with
+ * {@link #sendBroadcast(Intent)} are delivered synchronously to the matching
+ * receivers. Sticky broadcasts are kept and returned by registerReceiver.
+ */
+public class Context {
+    public static final String CONNECTIVITY_SERVICE = "connectivity";
+    public static final String WIFI_SERVICE = "wifi";
+    public static final String TELEPHONY_SERVICE = "phone";
+
+    private final Map<String, Object> services = new HashMap<>();
+    private final Map<BroadcastReceiver, IntentFilter> receivers = new LinkedHashMap<>();
+    private final Map<String, Intent> stickyBroadcasts = new HashMap<>();
+
+    public Object getSystemService(String name) {
+        return services.get(name);
+    }
+
+    public void setSystemService(String name, Object service) {
+        services.put(name, service);
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        return registerReceiver(receiver, filter, null, null);
+    }
+
+    public synchronized Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter,
+                                                String broadcastPermission, Handler scheduler) {
+        if (receiver != null) {
+            receivers.put(receiver, filter);
+        }
+        for (Intent sticky : stickyBroadcasts.values()) {
+            if (filter.hasAction(sticky.getAction())) {
+                return sticky;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void unregisterReceiver(BroadcastReceiver receiver) {
+        if (receivers.remove(receiver) == null) {
+            throw new IllegalArgumentException("Receiver not registered: " + receiver);
+        }
+    }
+
+    public void sendBroadcast(Intent intent) {
+        BroadcastReceiver[] snapshot;
+        synchronized (this) {
+            snapshot = receivers.keySet().toArray(new BroadcastReceiver[0]);
+        }
+        for (BroadcastReceiver receiver : snapshot) {
+            IntentFilter filter;
+            synchronized (this) {
+                filter = receivers.get(receiver);
+            }
+            if (filter != null && filter.hasAction(intent.getAction())) {
+                receiver.onReceive(this, intent);
+            }
+        }
+    }
+
+    public synchronized void sendStickyBroadcast(Intent intent) {
+        stickyBroadcasts.put(intent.getAction(), intent);
+        sendBroadcast(intent);
+    }
+}
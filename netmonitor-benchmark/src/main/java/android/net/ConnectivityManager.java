@@ -0,0 +1,176 @@
+package android.net;
+
+import android.os.Handler;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory ConnectivityManager. The networks it reports are set with
+ * {@link #putNetwork} and {@link #removeNetwork}; NetworkCallbacks are only
+ * recorded, events are fired by calling {@link #getNetworkCallbacks()},
+ * {@link #getDefaultNetworkCallbacks()} and {@link #getRequests()} directly so the caller controls their
+ * order and timing, on the Handler returned by {@link #getHandler} if any.
+ */
+public class ConnectivityManager {
+    public static final String CONNECTIVITY_ACTION = "android.net.conn.CONNECTIVITY_CHANGE";
+    public static final int TYPE_NONE = -1;
+    public static final int TYPE_MOBILE = 0;
+    public static final int TYPE_WIFI = 1;
+    public static final int TYPE_WIMAX = 6;
+    public static final int TYPE_BLUETOOTH = 7;
+    public static final int TYPE_ETHERNET = 9;
+    public static final int TYPE_VPN = 17;
+
+    private final Map<Network, NetworkInfo> infos = new LinkedHashMap<>();
+    private final Map<Network, LinkProperties> linkProperties = new LinkedHashMap<>();
+    private final Map<Network, NetworkCapabilities> capabilities = new LinkedHashMap<>();
+    private final List<NetworkCallback> networkCallbacks = new CopyOnWriteArrayList<>();
+    private final List<NetworkCallback> defaultNetworkCallbacks = new CopyOnWriteArrayList<>();
+    private final List<NetworkCallback> requests = new CopyOnWriteArrayList<>();
+    private final Map<NetworkCallback, Handler> handlers = new ConcurrentHashMap<>();
+    private Network activeNetwork;
+
+    public synchronized void putNetwork(Network network, NetworkInfo info,
+                                        LinkProperties properties, NetworkCapabilities caps) {
+        infos.put(network, info);
+        linkProperties.put(network, properties);
+        capabilities.put(network, caps);
+    }
+
+    public synchronized void removeNetwork(Network network) {
+        infos.remove(network);
+        linkProperties.remove(network);
+        capabilities.remove(network);
+        if (network.equals(activeNetwork)) {
+            activeNetwork = null;
+        }
+    }
+
+    public synchronized void setActiveNetwork(Network network) {
+        activeNetwork = network;
+    }
+
+    public List<NetworkCallback> getNetworkCallbacks() {
+        return networkCallbacks;
+    }
+
+    /**
+     * Returns the callbacks registered with registerDefaultNetworkCallback.
+     */
+    public List<NetworkCallback> getDefaultNetworkCallbacks() {
+        return defaultNetworkCallbacks;
+    }
+
+    /**
+     * Returns the callbacks registered with requestNetwork.
+     */
+    public List<NetworkCallback> getRequests() {
+        return requests;
+    }
+
+    /**
+     * Returns the Handler {@code networkCallback} was registered with, or null.
+     */
+    public Handler getHandler(NetworkCallback networkCallback) {
+        return handlers.get(networkCallback);
+    }
+
+    public synchronized Network getActiveNetwork() {
+        return activeNetwork;
+    }
+
+    public synchronized NetworkInfo getActiveNetworkInfo() {
+        return activeNetwork == null ? null : infos.get(activeNetwork);
+    }
+
+    public synchronized NetworkInfo getNetworkInfo(Network network) {
+        return infos.get(network);
+    }
+
+    public synchronized Network[] getAllNetworks() {
+        return infos.keySet().toArray(new Network[0]);
+    }
+
+    public synchronized LinkProperties getLinkProperties(Network network) {
+        return linkProperties.get(network);
+    }
+
+    public synchronized NetworkCapabilities getNetworkCapabilities(Network network) {
+        return capabilities.get(network);
+    }
+
+    public void registerNetworkCallback(NetworkRequest request, NetworkCallback networkCallback) {
+        networkCallbacks.add(networkCallback);
+    }
+
+    public void registerNetworkCallback(NetworkRequest request, NetworkCallback networkCallback,
+                                        Handler handler) {
+        networkCallbacks.add(networkCallback);
+        putHandler(networkCallback, handler);
+    }
+
+    public void registerDefaultNetworkCallback(NetworkCallback networkCallback) {
+        defaultNetworkCallbacks.add(networkCallback);
+    }
+
+    public void registerDefaultNetworkCallback(NetworkCallback networkCallback, Handler handler) {
+        defaultNetworkCallbacks.add(networkCallback);
+        putHandler(networkCallback, handler);
+    }
+
+    public void requestNetwork(NetworkRequest request, NetworkCallback networkCallback) {
+        requests.add(networkCallback);
+    }
+
+    public void requestNetwork(NetworkRequest request, NetworkCallback networkCallback,
+                               Handler handler) {
+        requests.add(networkCallback);
+        putHandler(networkCallback, handler);
+    }
+
+    public void unregisterNetworkCallback(NetworkCallback networkCallback) {
+        if (!networkCallbacks.remove(networkCallback) && !defaultNetworkCallbacks.remove(networkCallback)
+                && !requests.remove(networkCallback)) {
+            throw new IllegalArgumentException("NetworkCallback was not registered");
+        }
+        handlers.remove(networkCallback);
+    }
+
+    private void putHandler(NetworkCallback networkCallback, Handler handler) {
+        if (handler != null) {
+            handlers.put(networkCallback, handler);
+        }
+    }
+
+    public static class NetworkCallback {
+        public static final int FLAG_INCLUDE_LOCATION_INFO = 1;
+
+        public NetworkCallback() {
+        }
+
+        public NetworkCallback(int flags) {
+        }
+
+        public void onAvailable(Network network) {
+        }
+
+        public void onLosing(Network network, int maxMsToLive) {
+        }
+
+        public void onLost(Network network) {
+        }
+
+        public void onUnavailable() {
+        }
+
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+        }
+
+        public void onLinkPropertiesChanged(Network network, LinkProperties linkProperties) {
+        }
+    }
+}
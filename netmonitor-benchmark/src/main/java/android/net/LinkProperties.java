@@ -0,0 +1,58 @@
+package android.net;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class LinkProperties {
+    private String interfaceName;
+    private final List<LinkAddress> linkAddresses = new ArrayList<>();
+    private final List<InetAddress> dnsServers = new ArrayList<>();
+    private ProxyInfo httpProxy;
+
+    public String getInterfaceName() {
+        return interfaceName;
+    }
+
+    public void setInterfaceName(String interfaceName) {
+        this.interfaceName = interfaceName;
+    }
+
+    public List<LinkAddress> getLinkAddresses() {
+        return Collections.unmodifiableList(linkAddresses);
+    }
+
+    public boolean addLinkAddress(LinkAddress address) {
+        return linkAddresses.add(address);
+    }
+
+    public void clear() {
+        interfaceName = null;
+        linkAddresses.clear();
+        dnsServers.clear();
+        httpProxy = null;
+    }
+
+    public List<InetAddress> getDnsServers() {
+        return Collections.unmodifiableList(dnsServers);
+    }
+
+    public boolean addDnsServer(InetAddress server) {
+        return dnsServers.add(server);
+    }
+
+    public ProxyInfo getHttpProxy() {
+        return httpProxy;
+    }
+
+    public void setHttpProxy(ProxyInfo proxy) {
+        httpProxy = proxy;
+    }
+
+    @Override
+    public String toString() {
+        return "{InterfaceName: " + interfaceName + " LinkAddresses: " + linkAddresses
+                + " DnsAddresses: " + dnsServers + "}";
+    }
+}
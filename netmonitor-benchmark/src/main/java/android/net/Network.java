@@ -0,0 +1,53 @@
+package android.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+
+import javax.net.SocketFactory;
+
+/**
+ * A network identified by its netId. Sockets and lookups use the JVM default
+ * network.
+ */
+public class Network {
+    // Same munging as the platform handle.
+    private static final long HANDLE_MAGIC = 0xcafed00dL;
+
+    public final int netId;
+
+    public Network(int netId) {
+        this.netId = netId;
+    }
+
+    public long getNetworkHandle() {
+        return netId == 0 ? 0 : (((long) netId) << 32) | HANDLE_MAGIC;
+    }
+
+    public SocketFactory getSocketFactory() {
+        return SocketFactory.getDefault();
+    }
+
+    public InetAddress[] getAllByName(String host) throws UnknownHostException {
+        return InetAddress.getAllByName(host);
+    }
+
+    public void bindSocket(Socket socket) throws IOException {
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Network && ((Network) o).netId == netId;
+    }
+
+    @Override
+    public int hashCode() {
+        return netId * 11;
+    }
+
+    @Override
+    public String toString() {
+        return Integer.toString(netId);
+    }
+}
@@ -0,0 +1,91 @@
+package android.net;
+
+public final class NetworkCapabilities {
+    public static final int NET_CAPABILITY_NOT_METERED = 11;
+    public static final int NET_CAPABILITY_INTERNET = 12;
+    public static final int NET_CAPABILITY_NOT_VPN = 15;
+    public static final int NET_CAPABILITY_VALIDATED = 16;
+    public static final int NET_CAPABILITY_CAPTIVE_PORTAL = 17;
+    public static final int NET_CAPABILITY_NOT_ROAMING = 18;
+    public static final int NET_CAPABILITY_NOT_SUSPENDED = 21;
+    public static final int NET_CAPABILITY_TEMPORARILY_NOT_METERED = 25;
+
+    public static final int TRANSPORT_CELLULAR = 0;
+    public static final int TRANSPORT_WIFI = 1;
+    public static final int TRANSPORT_BLUETOOTH = 2;
+    public static final int TRANSPORT_ETHERNET = 3;
+    public static final int TRANSPORT_VPN = 4;
+
+    private long capabilities;
+    private long transports;
+    private int linkUpBandwidthKbps;
+    private int linkDownBandwidthKbps;
+    private TransportInfo transportInfo;
+
+    public NetworkCapabilities() {
+    }
+
+    public NetworkCapabilities(NetworkCapabilities other) {
+        capabilities = other.capabilities;
+        transports = other.transports;
+        linkUpBandwidthKbps = other.linkUpBandwidthKbps;
+        linkDownBandwidthKbps = other.linkDownBandwidthKbps;
+        transportInfo = other.transportInfo;
+    }
+
+    public NetworkCapabilities setTransportInfo(TransportInfo transportInfo) {
+        this.transportInfo = transportInfo;
+        return this;
+    }
+
+    public TransportInfo getTransportInfo() {
+        return transportInfo;
+    }
+
+    public NetworkCapabilities addCapability(int capability) {
+        capabilities |= 1L << capability;
+        return this;
+    }
+
+    public NetworkCapabilities removeCapability(int capability) {
+        capabilities &= ~(1L << capability);
+        return this;
+    }
+
+    public boolean hasCapability(int capability) {
+        return (capabilities & (1L << capability)) != 0;
+    }
+
+    public NetworkCapabilities addTransportType(int transportType) {
+        transports |= 1L << transportType;
+        return this;
+    }
+
+    public boolean hasTransport(int transportType) {
+        return (transports & (1L << transportType)) != 0;
+    }
+
+    public NetworkCapabilities setLinkUpstreamBandwidthKbps(int upKbps) {
+        linkUpBandwidthKbps = upKbps;
+        return this;
+    }
+
+    public int getLinkUpstreamBandwidthKbps() {
+        return linkUpBandwidthKbps;
+    }
+
+    public NetworkCapabilities setLinkDownstreamBandwidthKbps(int downKbps) {
+        linkDownBandwidthKbps = downKbps;
+        return this;
+    }
+
+    public int getLinkDownstreamBandwidthKbps() {
+        return linkDownBandwidthKbps;
+    }
+
+    @Override
+    public String toString() {
+        return "[ Transports: " + Long.toBinaryString(transports)
+                + " Capabilities: " + Long.toBinaryString(capabilities) + "]";
+    }
+}
@@ -0,0 +1,29 @@
+package android.net;
+
+public class NetworkInfo {
+    private final int type;
+    private final int subtype;
+    private final boolean connected;
+
+    public NetworkInfo(int type, int subtype, boolean connected) {
+        this.type = type;
+        this.subtype = subtype;
+        this.connected = connected;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getSubtype() {
+        return subtype;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isRoaming() {
+        return false;
+    }
+}
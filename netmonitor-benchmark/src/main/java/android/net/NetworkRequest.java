@@ -0,0 +1,32 @@
+package android.net;
+
+public class NetworkRequest {
+    public final NetworkCapabilities networkCapabilities;
+
+    NetworkRequest(NetworkCapabilities networkCapabilities) {
+        this.networkCapabilities = networkCapabilities;
+    }
+
+    public static class Builder {
+        private final NetworkCapabilities capabilities = new NetworkCapabilities();
+
+        public Builder addCapability(int capability) {
+            capabilities.addCapability(capability);
+            return this;
+        }
+
+        public Builder removeCapability(int capability) {
+            capabilities.removeCapability(capability);
+            return this;
+        }
+
+        public Builder addTransportType(int transportType) {
+            capabilities.addTransportType(transportType);
+            return this;
+        }
+
+        public NetworkRequest build() {
+            return new NetworkRequest(new NetworkCapabilities(capabilities));
+        }
+    }
+}
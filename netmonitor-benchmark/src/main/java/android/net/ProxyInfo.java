@@ -0,0 +1,39 @@
+package android.net;
+
+public class ProxyInfo {
+    private final String host;
+    private final int port;
+    private final Uri pacFileUrl;
+    private final String[] exclusionList;
+
+    private ProxyInfo(String host, int port, Uri pacFileUrl, String[] exclusionList) {
+        this.host = host;
+        this.port = port;
+        this.pacFileUrl = pacFileUrl;
+        this.exclusionList = exclusionList;
+    }
+
+    public static ProxyInfo buildDirectProxy(String host, int port) {
+        return new ProxyInfo(host, port, Uri.EMPTY, new String[0]);
+    }
+
+    public static ProxyInfo buildPacProxy(Uri pacUri) {
+        return new ProxyInfo("localhost", -1, pacUri, new String[0]);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public Uri getPacFileUrl() {
+        return pacFileUrl;
+    }
+
+    public String[] getExclusionList() {
+        return exclusionList;
+    }
+}
@@ -0,0 +1,31 @@
+package android.net;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory TrafficStats. The counters of a UID are set with {@link #setUidBytes}
+ * and are UNSUPPORTED until then.
+ */
+public class TrafficStats {
+    public static final int UNSUPPORTED = -1;
+
+    private static final Map<Integer, long[]> UID_BYTES = new ConcurrentHashMap<>();
+
+    private TrafficStats() {
+    }
+
+    public static void setUidBytes(int uid, long rxBytes, long txBytes) {
+        UID_BYTES.put(uid, new long[]{rxBytes, txBytes});
+    }
+
+    public static long getUidRxBytes(int uid) {
+        long[] bytes = UID_BYTES.get(uid);
+        return bytes != null ? bytes[0] : UNSUPPORTED;
+    }
+
+    public static long getUidTxBytes(int uid) {
+        long[] bytes = UID_BYTES.get(uid);
+        return bytes != null ? bytes[1] : UNSUPPORTED;
+    }
+}
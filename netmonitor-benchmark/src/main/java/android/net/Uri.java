@@ -0,0 +1,30 @@
+package android.net;
+
+public class Uri {
+    public static final Uri EMPTY = new Uri("");
+
+    private final String uriString;
+
+    private Uri(String uriString) {
+        this.uriString = uriString;
+    }
+
+    public static Uri parse(String uriString) {
+        return new Uri(uriString);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Uri && uriString.equals(((Uri) o).uriString);
+    }
+
+    @Override
+    public int hashCode() {
+        return uriString.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return uriString;
+    }
+}
@@ -0,0 +1,41 @@
+package android.net.wifi;
+
+public class WifiInfo {
+    private final String ssid;
+    private final String bssid;
+    private final int rssi;
+    private final int linkSpeed;
+    private final int frequency;
+
+    public WifiInfo(String ssid) {
+        this(ssid, "02:00:00:00:00:00", -127, -1, -1);
+    }
+
+    public WifiInfo(String ssid, String bssid, int rssi, int linkSpeed, int frequency) {
+        this.ssid = ssid;
+        this.bssid = bssid;
+        this.rssi = rssi;
+        this.linkSpeed = linkSpeed;
+        this.frequency = frequency;
+    }
+
+    public String getSSID() {
+        return ssid;
+    }
+
+    public String getBSSID() {
+        return bssid;
+    }
+
+    public int getRssi() {
+        return rssi;
+    }
+
+    public int getLinkSpeed() {
+        return linkSpeed;
+    }
+
+    public int getFrequency() {
+        return frequency;
+    }
+}
@@ -0,0 +1,8 @@
+package android.net.wifi;
+
+public class WifiManager {
+    public static final String NETWORK_STATE_CHANGED_ACTION = "android.net.wifi.STATE_CHANGE";
+    public static final String RSSI_CHANGED_ACTION = "android.net.wifi.RSSI_CHANGED";
+    public static final String EXTRA_WIFI_INFO = "wifiInfo";
+    public static final String EXTRA_NEW_RSSI = "newRssi";
+}
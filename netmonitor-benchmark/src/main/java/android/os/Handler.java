@@ -0,0 +1,92 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts Runnables to the thread of a {@link Looper}. Messages are not supported.
+ */
+public class Handler {
+    private final Looper looper;
+    // Pending posts, so they can be removed. Guarded by itself.
+    private final Map<Runnable, List<Future<?>>> pending = new IdentityHashMap<>();
+
+    public Handler() {
+        this(Looper.myLooper());
+    }
+
+    public Handler(Looper looper) {
+        if (looper == null) {
+            throw new IllegalStateException("No Looper");
+        }
+        this.looper = looper;
+    }
+
+    public final Looper getLooper() {
+        return looper;
+    }
+
+    public final boolean post(Runnable r) {
+        return postDelayed(r, 0);
+    }
+
+    public final boolean postAtTime(Runnable r, long uptimeMillis) {
+        return postDelayed(r, uptimeMillis - SystemClock.uptimeMillis());
+    }
+
+    public final boolean postDelayed(final Runnable r, long delayMillis) {
+        final Future<?>[] holder = new Future<?>[1];
+        synchronized (pending) {
+            try {
+                holder[0] = looper.executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (pending) {
+                            List<Future<?>> futures = pending.get(r);
+                            if (futures != null && futures.remove(holder[0]) && futures.isEmpty()) {
+                                pending.remove(r);
+                            }
+                        }
+                        r.run();
+                    }
+                }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+            List<Future<?>> futures = pending.get(r);
+            if (futures == null) {
+                futures = new ArrayList<>(1);
+                pending.put(r, futures);
+            }
+            futures.add(holder[0]);
+        }
+        return true;
+    }
+
+    public final void removeCallbacks(Runnable r) {
+        synchronized (pending) {
+            List<Future<?>> futures = pending.remove(r);
+            if (futures != null) {
+                for (Future<?> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    public final void removeCallbacksAndMessages(Object token) {
+        synchronized (pending) {
+            for (List<Future<?>> futures : pending.values()) {
+                for (Future<?> future : futures) {
+                    future.cancel(false);
+                }
+            }
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package android.os;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A message loop backed by a single thread.
+ */
+public final class Looper {
+    private static final ThreadLocal<Looper> CURRENT = new ThreadLocal<>();
+    private static Looper mainLooper;
+
+    final ScheduledThreadPoolExecutor executor;
+    private volatile Thread thread;
+
+    Looper(final String name) {
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread created = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        CURRENT.set(Looper.this);
+                        runnable.run();
+                    }
+                }, name);
+                created.setDaemon(true);
+                thread = created;
+                return created;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.prestartCoreThread();
+    }
+
+    public static synchronized Looper getMainLooper() {
+        if (mainLooper == null) {
+            mainLooper = new Looper("main");
+        }
+        return mainLooper;
+    }
+
+    public static Looper myLooper() {
+        return CURRENT.get();
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    public void quit() {
+        executor.shutdownNow();
+    }
+
+    public void quitSafely() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,19 @@
+package android.telephony;
+
+public final class CellSignalStrengthLte extends CellSignalStrength {
+    private final int rsrp;
+    private final int rssnr;
+
+    public CellSignalStrengthLte(int rsrp, int rssnr) {
+        this.rsrp = rsrp;
+        this.rssnr = rssnr;
+    }
+
+    public int getRsrp() {
+        return rsrp;
+    }
+
+    public int getRssnr() {
+        return rssnr;
+    }
+}
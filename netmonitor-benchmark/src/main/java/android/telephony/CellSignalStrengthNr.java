@@ -0,0 +1,19 @@
+package android.telephony;
+
+public final class CellSignalStrengthNr extends CellSignalStrength {
+    private final int ssRsrp;
+    private final int ssSinr;
+
+    public CellSignalStrengthNr(int ssRsrp, int ssSinr) {
+        this.ssRsrp = ssRsrp;
+        this.ssSinr = ssSinr;
+    }
+
+    public int getSsRsrp() {
+        return ssRsrp;
+    }
+
+    public int getSsSinr() {
+        return ssSinr;
+    }
+}
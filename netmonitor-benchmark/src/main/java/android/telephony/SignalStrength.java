@@ -0,0 +1,16 @@
+package android.telephony;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class SignalStrength {
+    private final List<CellSignalStrength> cellSignalStrengths;
+
+    public SignalStrength(CellSignalStrength... cellSignalStrengths) {
+        this.cellSignalStrengths = Arrays.asList(cellSignalStrengths);
+    }
+
+    public List<CellSignalStrength> getCellSignalStrengths() {
+        return cellSignalStrengths;
+    }
+}
@@ -0,0 +1,20 @@
+package android.telephony;
+
+import java.util.concurrent.Executor;
+
+public class TelephonyCallback {
+    // Set by TelephonyManager.registerTelephonyCallback.
+    Executor executor;
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public interface DisplayInfoListener {
+        void onDisplayInfoChanged(TelephonyDisplayInfo telephonyDisplayInfo);
+    }
+
+    public interface SignalStrengthsListener {
+        void onSignalStrengthsChanged(SignalStrength signalStrength);
+    }
+}
@@ -0,0 +1,26 @@
+package android.telephony;
+
+public final class TelephonyDisplayInfo {
+    public static final int OVERRIDE_NETWORK_TYPE_NONE = 0;
+    public static final int OVERRIDE_NETWORK_TYPE_LTE_CA = 1;
+    public static final int OVERRIDE_NETWORK_TYPE_LTE_ADVANCED_PRO = 2;
+    public static final int OVERRIDE_NETWORK_TYPE_NR_NSA = 3;
+    public static final int OVERRIDE_NETWORK_TYPE_NR_NSA_MMWAVE = 4;
+    public static final int OVERRIDE_NETWORK_TYPE_NR_ADVANCED = 5;
+
+    private final int networkType;
+    private final int overrideNetworkType;
+
+    public TelephonyDisplayInfo(int networkType, int overrideNetworkType) {
+        this.networkType = networkType;
+        this.overrideNetworkType = overrideNetworkType;
+    }
+
+    public int getNetworkType() {
+        return networkType;
+    }
+
+    public int getOverrideNetworkType() {
+        return overrideNetworkType;
+    }
+}
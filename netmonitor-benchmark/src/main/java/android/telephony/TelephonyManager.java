@@ -0,0 +1,42 @@
+package android.telephony;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+public class TelephonyManager {
+    public static final int NETWORK_TYPE_UNKNOWN = 0;
+    public static final int NETWORK_TYPE_GPRS = 1;
+    public static final int NETWORK_TYPE_EDGE = 2;
+    public static final int NETWORK_TYPE_UMTS = 3;
+    public static final int NETWORK_TYPE_CDMA = 4;
+    public static final int NETWORK_TYPE_EVDO_0 = 5;
+    public static final int NETWORK_TYPE_EVDO_A = 6;
+    public static final int NETWORK_TYPE_1xRTT = 7;
+    public static final int NETWORK_TYPE_HSDPA = 8;
+    public static final int NETWORK_TYPE_HSUPA = 9;
+    public static final int NETWORK_TYPE_HSPA = 10;
+    public static final int NETWORK_TYPE_IDEN = 11;
+    public static final int NETWORK_TYPE_EVDO_B = 12;
+    public static final int NETWORK_TYPE_LTE = 13;
+    public static final int NETWORK_TYPE_EHRPD = 14;
+    public static final int NETWORK_TYPE_HSPAP = 15;
+    public static final int NETWORK_TYPE_GSM = 16;
+    public static final int NETWORK_TYPE_TD_SCDMA = 17;
+    public static final int NETWORK_TYPE_IWLAN = 18;
+    public static final int NETWORK_TYPE_NR = 20;
+
+    private final CopyOnWriteArrayList<TelephonyCallback> callbacks = new CopyOnWriteArrayList<>();
+
+    public void registerTelephonyCallback(Executor executor, TelephonyCallback callback) {
+        callback.executor = executor;
+        callbacks.add(callback);
+    }
+
+    public void unregisterTelephonyCallback(TelephonyCallback callback) {
+        callbacks.remove(callback);
+    }
+
+    public CopyOnWriteArrayList<TelephonyCallback> getTelephonyCallbacks() {
+        return callbacks;
+    }
+}
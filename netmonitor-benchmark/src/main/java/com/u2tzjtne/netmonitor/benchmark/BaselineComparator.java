@@ -0,0 +1,160 @@
+package com.u2tzjtne.netmonitor.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a JMH CSV result file with a committed baseline and fails when a
+ * benchmark regressed by more than a tolerance.
+ * <p>
+ * Usage: {@code BaselineComparator <baseline.csv> <results.csv> [tolerance]},
+ * tolerance defaulting to 0.15 (15%). Throughput scores regress when they go
+ * down, everything else (average time, bytes per operation) when it goes up.
+ * Only primary scores and allocated bytes per operation are compared.
+ * Benchmarks missing from either file are reported but not failed on. A row
+ * whose column count differs from the header's fails the comparison rather
+ * than silently dropping the benchmark from it.
+ */
+public final class BaselineComparator {
+    private static final double DEFAULT_TOLERANCE = 0.15;
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+    private static final double ALLOCATION_NOISE_BYTES = 8;
+
+    private BaselineComparator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparator <baseline.csv> <results.csv> [tolerance]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+        Map<String, Score> baseline = read(new File(args[0]));
+        Map<String, Score> results = read(new File(args[1]));
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : results.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            Score after = entry.getValue();
+            if (before == null) {
+                System.out.println(String.format("NEW        %s: %.3f %s", entry.getKey(), after.value, after.unit));
+                continue;
+            }
+            // Relative change, positive when worse.
+            double change = before.value == 0 ? 0 : (after.value - before.value) / before.value;
+            if (after.higherIsBetter()) {
+                change = -change;
+            }
+            // A few bytes per operation come and go with JIT decisions.
+            boolean regressed = change > tolerance
+                    && !(after.isAllocation() && after.value - before.value < ALLOCATION_NOISE_BYTES);
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format("%-10s %s: %.3f -> %.3f %s (%+.1f%%)",
+                    regressed ? "REGRESSED" : "OK", entry.getKey(), before.value, after.value,
+                    after.unit, change * 100));
+        }
+        for (String key : baseline.keySet()) {
+            if (!results.containsKey(key)) {
+                System.out.println("MISSING    " + key);
+            }
+        }
+        if (regressions > 0) {
+            System.err.println(regressions + " benchmark(s) regressed by more than "
+                    + Math.round(tolerance * 100) + "%");
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Score> read(File file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            List<String> header = split(reader.readLine());
+            int benchmark = header.indexOf("Benchmark");
+            int mode = header.indexOf("Mode");
+            int score = header.indexOf("Score");
+            int unit = header.indexOf("Unit");
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                List<String> columns = split(line);
+                if (columns.size() != header.size()) {
+                    throw new IOException(file + ":" + lineNumber + ": " + columns.size()
+                            + " columns, the header has " + header.size());
+                }
+                if (!isCompared(columns.get(benchmark))) {
+                    continue;
+                }
+                StringBuilder key = new StringBuilder(columns.get(benchmark));
+                for (int i = 0; i < header.size(); i++) {
+                    if (header.get(i).startsWith("Param: ") && !columns.get(i).isEmpty()) {
+                        key.append(' ').append(header.get(i).substring(7)).append('=').append(columns.get(i));
+                    }
+                }
+                scores.put(key.toString(), new Score(columns.get(mode),
+                        Double.parseDouble(columns.get(score)), columns.get(unit)));
+            }
+        } finally {
+            reader.close();
+        }
+        return scores;
+    }
+
+    /**
+     * Returns true for primary scores and bytes per operation. Other profiler
+     * outputs, such as GC counts, are too noisy to gate on.
+     */
+    private static boolean isCompared(String benchmark) {
+        return benchmark.indexOf(':') < 0 || benchmark.endsWith(ALLOCATION_METRIC);
+    }
+
+    private static List<String> split(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+
+    private static final class Score {
+        final String mode;
+        final double value;
+        final String unit;
+
+        Score(String mode, double value, String unit) {
+            this.mode = mode;
+            this.value = value;
+            this.unit = unit;
+        }
+
+        boolean higherIsBetter() {
+            // Secondary metrics such as gc.alloc.rate.norm are reported in the
+            // mode of their benchmark but are costs.
+            return "thrpt".equals(mode) && unit.startsWith("ops/");
+        }
+
+        boolean isAllocation() {
+            return "B/op".equals(unit);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.u2tzjtne.netmonitor.benchmark;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.ConnectivityManager.NetworkCallback;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.telephony.SignalStrength;
+import android.telephony.TelephonyCallback;
+import android.telephony.TelephonyDisplayInfo;
+import android.telephony.TelephonyManager;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static android.net.NetworkCapabilities.NET_CAPABILITY_INTERNET;
+import static android.net.NetworkCapabilities.NET_CAPABILITY_VALIDATED;
+import static android.net.NetworkCapabilities.TRANSPORT_CELLULAR;
+import static android.net.NetworkCapabilities.TRANSPORT_VPN;
+import static android.net.NetworkCapabilities.TRANSPORT_WIFI;
+
+/**
+ * A Context and ConnectivityManager running on the JVM, with helpers to add
+ * networks and fire NetworkCallback events the way the platform would. Every
+ * network request is taken for a cellular one: the events of cellular
+ * networks also go to the request callbacks.
+ */
+public class FakePlatform {
+    public final Context context = new Context();
+    public final ConnectivityManager connectivityManager = new ConnectivityManager();
+    public final TelephonyManager telephonyManager = new TelephonyManager();
+
+    public FakePlatform() {
+        context.setSystemService(Context.CONNECTIVITY_SERVICE, connectivityManager);
+        context.setSystemService(Context.TELEPHONY_SERVICE, telephonyManager);
+    }
+
+    /**
+     * Connects a Wi-Fi network with {@code addressCount} addresses and makes it
+     * the default.
+     */
+    public Network connectWifi(int netId, int addressCount) {
+        Network network = new Network(netId);
+        connectivityManager.putNetwork(network,
+                new NetworkInfo(ConnectivityManager.TYPE_WIFI, 0, true),
+                linkProperties("wlan0", netId, addressCount),
+                new NetworkCapabilities().addCapability(NET_CAPABILITY_INTERNET).addTransportType(TRANSPORT_WIFI));
+        connectivityManager.setActiveNetwork(network);
+        return network;
+    }
+
+    /**
+     * Connects an LTE network with {@code addressCount} addresses.
+     */
+    public Network connectCellular(int netId, int addressCount) {
+        Network network = new Network(netId);
+        connectivityManager.putNetwork(network,
+                new NetworkInfo(ConnectivityManager.TYPE_MOBILE, TelephonyManager.NETWORK_TYPE_LTE, true),
+                linkProperties("rmnet_data0", netId, addressCount),
+                new NetworkCapabilities().addCapability(NET_CAPABILITY_INTERNET).addTransportType(TRANSPORT_CELLULAR)
+                        // The platform's default for LTE.
+                        .setLinkDownstreamBandwidthKbps(30000).setLinkUpstreamBandwidthKbps(15000));
+        return network;
+    }
+
+    /**
+     * Connects a VPN with {@code addressCount} addresses and makes it the
+     * default, as for a VPN covering every app.
+     */
+    public Network connectVpn(int netId, int addressCount) {
+        Network network = new Network(netId);
+        connectivityManager.putNetwork(network,
+                new NetworkInfo(ConnectivityManager.TYPE_VPN, 0, true),
+                linkProperties("tun0", netId, addressCount),
+                new NetworkCapabilities().addCapability(NET_CAPABILITY_INTERNET).addTransportType(TRANSPORT_VPN));
+        connectivityManager.setActiveNetwork(network);
+        return network;
+    }
+
+    /**
+     * Replaces the addresses of {@code network}; {@code generation} selects a
+     * distinct address set, so alternating it produces real changes.
+     */
+    public LinkProperties renumber(Network network, int generation, int addressCount) {
+        LinkProperties properties = linkProperties(
+                connectivityManager.getLinkProperties(network).getInterfaceName(),
+                network.netId + generation * 256, addressCount);
+        connectivityManager.putNetwork(network, connectivityManager.getNetworkInfo(network), properties,
+                connectivityManager.getNetworkCapabilities(network));
+        return properties;
+    }
+
+    /**
+     * Marks {@code network} validated; fire its capabilities to report it.
+     */
+    public void validate(Network network) {
+        NetworkCapabilities capabilities = new NetworkCapabilities(
+                connectivityManager.getNetworkCapabilities(network)).addCapability(NET_CAPABILITY_VALIDATED);
+        connectivityManager.putNetwork(network, connectivityManager.getNetworkInfo(network),
+                connectivityManager.getLinkProperties(network), capabilities);
+    }
+
+    /**
+     * Reports a TelephonyDisplayInfo to the telephony callbacks, on their Executor.
+     */
+    public void reportDisplayInfo(int networkType, int overrideNetworkType) {
+        final TelephonyDisplayInfo displayInfo = new TelephonyDisplayInfo(networkType, overrideNetworkType);
+        for (final TelephonyCallback callback : telephonyManager.getTelephonyCallbacks()) {
+            if (callback instanceof TelephonyCallback.DisplayInfoListener) {
+                callback.getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ((TelephonyCallback.DisplayInfoListener) callback).onDisplayInfoChanged(displayInfo);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Reports a SignalStrength to the telephony callbacks, on their Executor.
+     */
+    public void reportSignalStrength(final SignalStrength signalStrength) {
+        for (final TelephonyCallback callback : telephonyManager.getTelephonyCallbacks()) {
+            if (callback instanceof TelephonyCallback.SignalStrengthsListener) {
+                callback.getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ((TelephonyCallback.SignalStrengthsListener) callback).onSignalStrengthsChanged(signalStrength);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Sends the sticky Wi-Fi connection broadcast, with a connection if
+     * {@code wifiInfo} is not null, as the platform does before Android 12.
+     */
+    public void reportWifi(WifiInfo wifiInfo) {
+        Intent intent = new Intent(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+        if (wifiInfo != null) {
+            intent.putExtra(WifiManager.EXTRA_WIFI_INFO, wifiInfo);
+        }
+        context.sendStickyBroadcast(intent);
+    }
+
+    public void reportRssi(int rssi) {
+        context.sendBroadcast(new Intent(WifiManager.RSSI_CHANGED_ACTION).putExtra(WifiManager.EXTRA_NEW_RSSI, rssi));
+    }
+
+    /**
+     * Fires onAvailable followed by onCapabilitiesChanged and
+     * onLinkPropertiesChanged, as the platform does since Oreo, to the network
+     * callbacks, and to the default network callbacks if it is the default.
+     * Callbacks registered with a Handler are called on it, the others on the
+     * calling thread.
+     */
+    public void fireAvailable(Network network) {
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        LinkProperties properties = connectivityManager.getLinkProperties(network);
+        for (NetworkCallback callback : callbacksFor(network)) {
+            available(callback, network, capabilities, properties);
+        }
+        if (capabilities.hasTransport(TRANSPORT_CELLULAR)) {
+            for (NetworkCallback callback : connectivityManager.getRequests()) {
+                available(callback, network, capabilities, properties);
+            }
+        }
+    }
+
+    /**
+     * Makes {@code network}, already available, the default and fires
+     * onAvailable, onCapabilitiesChanged and onLinkPropertiesChanged to the
+     * default network callbacks, as the platform does on a handover.
+     */
+    public void fireDefaultChanged(Network network) {
+        connectivityManager.setActiveNetwork(network);
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        LinkProperties properties = connectivityManager.getLinkProperties(network);
+        for (NetworkCallback callback : connectivityManager.getDefaultNetworkCallbacks()) {
+            available(callback, network, capabilities, properties);
+        }
+    }
+
+    public void fireCapabilitiesChanged(Network network) {
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        // Measured paths: no copy of the callback lists.
+        for (NetworkCallback callback : connectivityManager.getNetworkCallbacks()) {
+            capabilitiesChanged(callback, network, capabilities);
+        }
+        if (isDefault(network)) {
+            for (NetworkCallback callback : connectivityManager.getDefaultNetworkCallbacks()) {
+                capabilitiesChanged(callback, network, capabilities);
+            }
+        }
+        if (capabilities.hasTransport(TRANSPORT_CELLULAR)) {
+            for (NetworkCallback callback : connectivityManager.getRequests()) {
+                capabilitiesChanged(callback, network, capabilities);
+            }
+        }
+    }
+
+    public void fireLinkPropertiesChanged(Network network) {
+        LinkProperties properties = connectivityManager.getLinkProperties(network);
+        for (NetworkCallback callback : connectivityManager.getNetworkCallbacks()) {
+            linkPropertiesChanged(callback, network, properties);
+        }
+        if (isDefault(network)) {
+            for (NetworkCallback callback : connectivityManager.getDefaultNetworkCallbacks()) {
+                linkPropertiesChanged(callback, network, properties);
+            }
+        }
+    }
+
+    /**
+     * Fires onLosing to the network callbacks, as the platform does before
+     * tearing down a network it found a replacement for.
+     */
+    public void fireLosing(Network network, int maxMsToLive) {
+        for (NetworkCallback callback : connectivityManager.getNetworkCallbacks()) {
+            losing(callback, network, maxMsToLive);
+        }
+        if (isCellular(network)) {
+            for (NetworkCallback callback : connectivityManager.getRequests()) {
+                losing(callback, network, maxMsToLive);
+            }
+        }
+    }
+
+    public void fireLost(Network network) {
+        List<NetworkCallback> callbacks = callbacksFor(network);
+        boolean cellular = isCellular(network);
+        connectivityManager.removeNetwork(network);
+        for (NetworkCallback callback : callbacks) {
+            lost(callback, network);
+        }
+        if (cellular) {
+            for (NetworkCallback callback : connectivityManager.getRequests()) {
+                lost(callback, network);
+            }
+        }
+    }
+
+    private List<NetworkCallback> callbacksFor(Network network) {
+        List<NetworkCallback> callbacks = new ArrayList<>(connectivityManager.getNetworkCallbacks());
+        if (isDefault(network)) {
+            callbacks.addAll(connectivityManager.getDefaultNetworkCallbacks());
+        }
+        return callbacks;
+    }
+
+    private boolean isCellular(Network network) {
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        return capabilities != null && capabilities.hasTransport(TRANSPORT_CELLULAR);
+    }
+
+    private void available(final NetworkCallback callback, final Network network,
+                           final NetworkCapabilities capabilities, final LinkProperties properties) {
+        Handler handler = connectivityManager.getHandler(callback);
+        if (handler == null) {
+            callback.onAvailable(network);
+            callback.onCapabilitiesChanged(network, capabilities);
+            callback.onLinkPropertiesChanged(network, properties);
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onAvailable(network);
+                callback.onCapabilitiesChanged(network, capabilities);
+                callback.onLinkPropertiesChanged(network, properties);
+            }
+        });
+    }
+
+    private void capabilitiesChanged(final NetworkCallback callback, final Network network,
+                                     final NetworkCapabilities capabilities) {
+        Handler handler = connectivityManager.getHandler(callback);
+        if (handler == null) {
+            callback.onCapabilitiesChanged(network, capabilities);
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onCapabilitiesChanged(network, capabilities);
+            }
+        });
+    }
+
+    private void linkPropertiesChanged(final NetworkCallback callback, final Network network,
+                                       final LinkProperties properties) {
+        Handler handler = connectivityManager.getHandler(callback);
+        if (handler == null) {
+            callback.onLinkPropertiesChanged(network, properties);
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onLinkPropertiesChanged(network, properties);
+            }
+        });
+    }
+
+    private void lost(final NetworkCallback callback, final Network network) {
+        Handler handler = connectivityManager.getHandler(callback);
+        if (handler == null) {
+            callback.onLost(network);
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onLost(network);
+            }
+        });
+    }
+
+    private void losing(final NetworkCallback callback, final Network network, final int maxMsToLive) {
+        Handler handler = connectivityManager.getHandler(callback);
+        if (handler == null) {
+            callback.onLosing(network, maxMsToLive);
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onLosing(network, maxMsToLive);
+            }
+        });
+    }
+
+    private boolean isDefault(Network network) {
+        return network.equals(connectivityManager.getActiveNetwork());
+    }
+
+    private static LinkProperties linkProperties(String interfaceName, int seed, int addressCount) {
+        LinkProperties properties = new LinkProperties();
+        properties.setInterfaceName(interfaceName);
+        for (int i = 0; i < addressCount; i++) {
+            byte[] address;
+            if (i % 2 == 0) {
+                address = new byte[]{10, (byte) (seed >> 8), (byte) seed, (byte) (i + 1)};
+            } else {
+                address = new byte[16];
+                address[0] = 0x20;
+                address[1] = 0x01;
+                address[2] = 0x0d;
+                address[3] = (byte) 0xb8;
+                address[13] = (byte) (seed >> 8);
+                address[14] = (byte) seed;
+                address[15] = (byte) (i + 1);
+            }
+            properties.addLinkAddress(new LinkAddress(toInetAddress(address), i % 2 == 0 ? 24 : 64));
+        }
+        return properties;
+    }
+
+    private static InetAddress toInetAddress(byte[] address) {
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.u2tzjtne.netmonitor.benchmark;
+
+import com.u2tzjtne.netmonitor.entity.ProbeResult;
+import com.u2tzjtne.netmonitor.probe.HttpProbe;
+import com.u2tzjtne.netmonitor.probe.Probe;
+import com.u2tzjtne.netmonitor.probe.ProbeTransport;
+import com.u2tzjtne.netmonitor.probe.TcpProbe;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+/**
+ * Runs the HTTP and TCP probes against a stand-in server on the loopback
+ * interface, answering the way a working network, a captive portal, a
+ * non-HTTP middlebox or a black hole would, and fails if a probe misreads
+ * one of them.
+ * <p>
+ * Usage: {@code ProbeCheck}. The exit code is 1 if any check failed.
+ */
+public final class ProbeCheck {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String LOOPBACK = "127.0.0.1";
+    private static final int TIMEOUT_MS = 500;
+
+    private ProbeCheck() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int failures = 0;
+        failures += check("204", "HTTP/1.1 204 No Content\r\n\r\n", ProbeResult.Status.VALIDATED);
+        failures += check("portal", "HTTP/1.1 302 Found\r\nLocation: http://portal/\r\n\r\n",
+                ProbeResult.Status.CAPTIVE_PORTAL);
+        failures += check("not HTTP", "SSH-2.0-OpenSSH\r\n", ProbeResult.Status.FAILED);
+        failures += check("silent", null, ProbeResult.Status.FAILED);
+        failures += checkClosedPort();
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Probes a server answering {@code answer} to the expected request, or
+     * nothing if null.
+     */
+    private static int check(String name, String answer, ProbeResult.Status expected)
+            throws IOException, InterruptedException {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName(LOOPBACK))) {
+            StandIn standIn = new StandIn(server, answer);
+            standIn.start();
+            HttpProbe probe = new HttpProbe(LOOPBACK, server.getLocalPort(), HttpProbe.DEFAULT_PATH, TIMEOUT_MS);
+            int failures = run("http " + name, probe, expected);
+            standIn.join(TIMEOUT_MS * 2);
+            if (!("GET " + HttpProbe.DEFAULT_PATH + " HTTP/1.1").equals(standIn.requestLine)) {
+                System.out.println("FAILED http " + name + ": request line " + standIn.requestLine);
+                failures++;
+            }
+            if (expected == ProbeResult.Status.VALIDATED) {
+                failures += run("tcp " + name, new TcpProbe(LOOPBACK, server.getLocalPort(), TIMEOUT_MS),
+                        ProbeResult.Status.VALIDATED);
+            }
+            return failures;
+        }
+    }
+
+    private static int checkClosedPort() throws IOException {
+        int port;
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName(LOOPBACK))) {
+            port = server.getLocalPort();
+        }
+        return run("http closed port", new HttpProbe(LOOPBACK, port, HttpProbe.DEFAULT_PATH, TIMEOUT_MS),
+                ProbeResult.Status.FAILED)
+                + run("tcp closed port", new TcpProbe(LOOPBACK, port, TIMEOUT_MS), ProbeResult.Status.FAILED);
+    }
+
+    private static int run(String name, Probe probe, ProbeResult.Status expected) {
+        long start = System.nanoTime();
+        ProbeResult result = probe.run(ProbeTransport.DEFAULT);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        // Every case is local: only the silent server may take the timeout.
+        boolean ok = result.status == expected && elapsedMs < TIMEOUT_MS * 2;
+        System.out.println(String.format("%-6s %s: %s in %dms", ok ? "OK" : "FAILED", name, result, elapsedMs));
+        return ok ? 0 : 1;
+    }
+
+    /**
+     * Accepts one connection, reads the request and answers it.
+     */
+    private static final class StandIn extends Thread {
+        private final ServerSocket server;
+        private final String answer;
+        volatile String requestLine;
+
+        StandIn(ServerSocket server, String answer) {
+            super("ProbeCheck-" + server.getLocalPort());
+            this.server = server;
+            this.answer = answer;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(TIMEOUT_MS * 2);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ASCII));
+                requestLine = reader.readLine();
+                String header;
+                while ((header = reader.readLine()) != null && !header.isEmpty()) {
+                    // Skips the headers.
+                }
+                if (answer == null) {
+                    // A black hole: hold the connection past the probe timeout.
+                    Thread.sleep(TIMEOUT_MS * 2);
+                    return;
+                }
+                OutputStream out = socket.getOutputStream();
+                out.write(answer.getBytes(ASCII));
+                out.flush();
+            } catch (IOException | InterruptedException e) {
+                // The probe gave up first.
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.u2tzjtne.netmonitor.benchmark;
+
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.telephony.TelephonyDisplayInfo;
+import android.telephony.TelephonyManager;
+
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.core.delegate.ConnectivityManagerDelegate;
+import com.u2tzjtne.netmonitor.core.delegate.TelephonyManagerDelegate;
+import com.u2tzjtne.netmonitor.core.delegate.WifiManagerDelegate;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.entity.RadioTech;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Reports TelephonyDisplayInfos for a cellular default network, as the
+ * TelephonyCallback does on Android 12, and fails if the radio technology,
+ * the default type or the NetInfo of the network is not the expected one:
+ * LTE with an NR_NSA override is 5G, with an LTE_CA one still 4G, NR is 5G
+ * whatever its override, IWLAN is cellular of unknown generation. Before any
+ * display info the generation is the NetworkInfo subtype's, and a change of
+ * the link bandwidth alone leaves it as is.
+ * <p>
+ * Usage: {@code RadioCheck}. The exit code is 1 if any check failed.
+ */
+public final class RadioCheck {
+    private static final int NET_ID = 200;
+
+    private final FakePlatform platform = new FakePlatform();
+    private final HandlerThread thread = new HandlerThread("RadioCheck");
+    private Handler workHandler;
+    private NetMonitor monitor;
+    private long handle;
+
+    private RadioCheck() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        RadioCheck check = new RadioCheck();
+        check.start();
+        int failures = 0;
+        try {
+            // The NetworkInfo subtype of the fake network, LTE.
+            failures += check.verify("NetworkInfo", RadioTech.UNKNOWN, NetType.NET_4G);
+            // An EDGE-like estimate, no reason to leave LTE.
+            check.setDownstreamBandwidth(100);
+            failures += check.verify("bandwidth", RadioTech.UNKNOWN, NetType.NET_4G);
+            failures += check.check("LTE", TelephonyManager.NETWORK_TYPE_LTE,
+                    TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE, RadioTech.LTE, NetType.NET_4G);
+            failures += check.check("LTE+NR_NSA", TelephonyManager.NETWORK_TYPE_LTE,
+                    TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NR_NSA, RadioTech.NR_NSA, NetType.NET_5G);
+            failures += check.check("LTE+LTE_CA", TelephonyManager.NETWORK_TYPE_LTE,
+                    TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_LTE_CA, RadioTech.LTE_CA, NetType.NET_4G);
+            failures += check.check("LTE+NR_ADVANCED", TelephonyManager.NETWORK_TYPE_LTE,
+                    TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NR_ADVANCED, RadioTech.NR_NSA_MMWAVE, NetType.NET_5G);
+            failures += check.check("NR", TelephonyManager.NETWORK_TYPE_NR,
+                    TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE, RadioTech.NR_SA, NetType.NET_5G);
+            failures += check.check("NR+NR_ADVANCED", TelephonyManager.NETWORK_TYPE_NR,
+                    TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NR_ADVANCED, RadioTech.NR_SA, NetType.NET_5G);
+            failures += check.check("IWLAN", TelephonyManager.NETWORK_TYPE_IWLAN,
+                    TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE, RadioTech.IWLAN, NetType.NET_UNKNOWN_CELLULAR);
+            failures += check.check("HSPAP", TelephonyManager.NETWORK_TYPE_HSPAP,
+                    TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE, RadioTech.GEN_3G, NetType.NET_3G);
+            // The subtype known last is kept.
+            failures += check.check("UNKNOWN", TelephonyManager.NETWORK_TYPE_UNKNOWN,
+                    TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE, RadioTech.UNKNOWN, NetType.NET_3G);
+        } finally {
+            check.stop();
+        }
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+    }
+
+    private void start() throws InterruptedException {
+        thread.start();
+        workHandler = new Handler(thread.getLooper());
+        monitor = new NetMonitor(null, platform.context, workHandler,
+                new ConnectivityManagerDelegate(platform.context), new WifiManagerDelegate(platform.context),
+                new TelephonyManagerDelegate(platform.context) {
+                    @Override
+                    public boolean supportRadioListener() {
+                        // The fake platform is Pie, the listener is faked anyway.
+                        return true;
+                    }
+                });
+        Network network = platform.connectCellular(NET_ID, 1);
+        platform.fireAvailable(network);
+        platform.fireCapabilitiesChanged(network);
+        platform.fireDefaultChanged(network);
+        handle = NetMonitor.networkToNetId(network);
+        idle(workHandler);
+    }
+
+    private void stop() {
+        monitor.destroy();
+        thread.quitSafely();
+    }
+
+    private void setDownstreamBandwidth(int downKbps) throws InterruptedException {
+        Network network = platform.connectivityManager.getAllNetworks()[0];
+        platform.connectivityManager.putNetwork(network, platform.connectivityManager.getNetworkInfo(network),
+                platform.connectivityManager.getLinkProperties(network),
+                new NetworkCapabilities(platform.connectivityManager.getNetworkCapabilities(network))
+                        .setLinkDownstreamBandwidthKbps(downKbps));
+        platform.fireCapabilitiesChanged(network);
+        idle(workHandler);
+    }
+
+    private int check(String name, int networkType, int overrideNetworkType, RadioTech expectedTech,
+                      NetType expectedType) throws InterruptedException {
+        platform.reportDisplayInfo(networkType, overrideNetworkType);
+        idle(workHandler);
+        return verify(name, expectedTech, expectedType);
+    }
+
+    private int verify(String name, RadioTech expectedTech, NetType expectedType) {
+        RadioTech tech = monitor.getRadioInfoProvider().getRadioTech();
+        NetType defaultType = monitor.getSnapshot().getDefaultType();
+        NetInfo netInfo = monitor.getSnapshot().getNetwork(handle);
+        NetType networkTypeReported = netInfo != null ? netInfo.type : null;
+        boolean ok = tech == expectedTech && defaultType == expectedType && networkTypeReported == expectedType;
+        System.out.println(String.format("%-6s %s: %s, default %s, network %s", ok ? "OK" : "FAILED", name,
+                tech, defaultType, networkTypeReported));
+        return ok ? 0 : 1;
+    }
+
+    /**
+     * Waits for the work thread to process everything queued so far.
+     */
+    private static void idle(Handler workHandler) throws InterruptedException {
+        final CountDownLatch idle = new CountDownLatch(1);
+        workHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                idle.countDown();
+            }
+        });
+        idle.await();
+    }
+}
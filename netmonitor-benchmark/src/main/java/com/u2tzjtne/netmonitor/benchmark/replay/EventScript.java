@@ -0,0 +1,166 @@
+package com.u2tzjtne.netmonitor.benchmark.replay;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A sequence of platform events to replay with a {@link ReplayEngine}, and
+ * optionally the NetCallback calls they must produce.
+ * <p>
+ * Scripts are text, one step per line, networks being named by their netId:
+ * <pre>
+ * # comment
+ * wifi 100        connects a Wi-Fi network and makes it the default
+ * cell 200        connects a cellular network, the default only if there is none
+ * vpn 300         connects a VPN and makes it the default
+ * default 200     hands the default over to a connected network
+ * caps 200        pushes its unchanged capabilities again
+ * link 200        renumbers it and pushes its link properties
+ * validate 200    marks it validated and pushes its capabilities
+ * losing 100      announces it will be lost in 30 s
+ * lost 100        disconnects it
+ * sleep 10        waits 10 ms
+ * repeat 1000     repeats the steps up to the matching "end"
+ * end
+ * expect onNetConnect 200 NET_4G
+ * </pre>
+ * The {@code expect} lines, if any, list in order every call the subscribers
+ * must receive over the whole script, as written by
+ * {@link ReplayReport#getTranscript()}.
+ */
+public final class EventScript {
+    static final String WIFI = "wifi";
+    static final String CELL = "cell";
+    static final String VPN = "vpn";
+    static final String DEFAULT = "default";
+    static final String CAPS = "caps";
+    static final String LINK = "link";
+    static final String VALIDATE = "validate";
+    static final String LOSING = "losing";
+    static final String LOST = "lost";
+    static final String SLEEP = "sleep";
+
+    private static final String REPEAT = "repeat";
+    private static final String END = "end";
+    private static final String EXPECT = "expect";
+
+    private final List<Step> steps = new ArrayList<>();
+    private final List<String> expected = new ArrayList<>();
+
+    /**
+     * Parses a script, expanding its repeat blocks.
+     *
+     * @throws IllegalArgumentException if it is malformed.
+     */
+    public static EventScript parse(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        EventScript script = new EventScript();
+        // Start index in steps and expected of each open repeat block, and its count.
+        List<int[]> blocks = new ArrayList<>();
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith(EXPECT + " ")) {
+                script.expected.add(line.substring(EXPECT.length() + 1).trim());
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            if (words[0].equals(END) && words.length == 1) {
+                if (blocks.isEmpty()) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": end without repeat");
+                }
+                int[] block = blocks.remove(blocks.size() - 1);
+                script.repeatFrom(block[0], block[1], block[2]);
+                continue;
+            }
+            if (words.length != 2) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected <command> <number>");
+            }
+            int argument;
+            try {
+                argument = Integer.parseInt(words[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": not a number: " + words[1]);
+            }
+            if (words[0].equals(REPEAT)) {
+                blocks.add(new int[]{script.steps.size(), script.expected.size(), argument});
+                continue;
+            }
+            switch (words[0]) {
+                case WIFI:
+                case CELL:
+                case VPN:
+                case DEFAULT:
+                case CAPS:
+                case LINK:
+                case VALIDATE:
+                case LOSING:
+                case LOST:
+                case SLEEP:
+                    script.steps.add(new Step(words[0], argument, lineNumber));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Line " + lineNumber + ": unknown command " + words[0]);
+            }
+        }
+        if (!blocks.isEmpty()) {
+            throw new IllegalArgumentException("Missing end of repeat");
+        }
+        return script;
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * Returns the expected transcript, empty if the script has no expectations.
+     */
+    public List<String> getExpected() {
+        return Collections.unmodifiableList(expected);
+    }
+
+    private void repeatFrom(int firstStep, int firstExpected, int count) {
+        List<Step> blockSteps = new ArrayList<>(steps.subList(firstStep, steps.size()));
+        List<String> blockExpected = new ArrayList<>(expected.subList(firstExpected, expected.size()));
+        for (int i = 1; i < count; i++) {
+            steps.addAll(blockSteps);
+            expected.addAll(blockExpected);
+        }
+        if (count <= 0) {
+            steps.subList(firstStep, steps.size()).clear();
+            expected.subList(firstExpected, expected.size()).clear();
+        }
+    }
+
+    /**
+     * One platform event of a script.
+     */
+    public static final class Step {
+        public final String command;
+        // The netId, or the duration of a sleep.
+        public final int argument;
+        // In the script, for error messages.
+        public final int line;
+
+        Step(String command, int argument, int line) {
+            this.command = command;
+            this.argument = argument;
+            this.line = line;
+        }
+
+        @Override
+        public String toString() {
+            return command + " " + argument;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.u2tzjtne.netmonitor.benchmark.replay;
+
+import android.net.Network;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import com.u2tzjtne.netmonitor.benchmark.FakePlatform;
+import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.core.delegate.ConnectivityManagerDelegate;
+import com.u2tzjtne.netmonitor.core.delegate.WifiManagerDelegate;
+import com.u2tzjtne.netmonitor.entity.NetDegradation;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays an {@link EventScript} on a {@link FakePlatform} against a fresh
+ * NetMonitor, and records every call its subscriber and degradation listener
+ * receive.
+ * <p>
+ * Without a work thread the monitor runs on the replaying thread, so the
+ * recorded calls are fully deterministic. In background mode it runs on its
+ * own work thread, as {@code NetMonitor(Context, Handler)} does on a device;
+ * the order of the calls is still deterministic but they lag the platform
+ * events. The fake platform forgets a lost network at once, as the real one
+ * does, so the work thread catches up before each loss: the queries it makes
+ * for earlier events, such as a cellular subtype, still see the network. The
+ * latency of a call is measured from the platform event fired last before it.
+ */
+public final class ReplayEngine {
+    // The platform's linger time before tearing down a replaced network.
+    private static final int LINGER_MS = 30000;
+
+    private final boolean background;
+    private final long eventsPerSecond;
+
+    /**
+     * @param background      runs the monitor on a work thread.
+     * @param eventsPerSecond paces the platform events, 0 to fire them as fast
+     *                        as possible.
+     */
+    public ReplayEngine(boolean background, long eventsPerSecond) {
+        this.background = background;
+        this.eventsPerSecond = eventsPerSecond;
+    }
+
+    public ReplayReport run(EventScript script) throws InterruptedException {
+        FakePlatform platform = new FakePlatform();
+        HandlerThread thread = null;
+        Handler workHandler = null;
+        if (background) {
+            thread = new HandlerThread("NetMonitor-replay");
+            thread.start();
+            workHandler = new Handler(thread.getLooper());
+        }
+        Recorder recorder = new Recorder();
+        NetMonitor monitor = new NetMonitor(recorder, platform.context, workHandler,
+                new ConnectivityManagerDelegate(platform.context), new WifiManagerDelegate(platform.context));
+        monitor.addDegradationListener(recorder);
+        Map<Integer, Network> networks = new HashMap<>();
+        Map<Integer, Integer> generations = new HashMap<>();
+        long intervalNs = eventsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / eventsPerSecond : 0;
+        long start = System.nanoTime();
+        int fired = 0;
+        try {
+            for (EventScript.Step step : script.getSteps()) {
+                if (step.command.equals(EventScript.SLEEP)) {
+                    Thread.sleep(step.argument);
+                    continue;
+                }
+                if (intervalNs > 0) {
+                    long due = start + fired * intervalNs;
+                    long now;
+                    while ((now = System.nanoTime()) < due) {
+                        LockSupport.parkNanos(due - now);
+                    }
+                }
+                if (workHandler != null && step.command.equals(EventScript.LOST)) {
+                    idle(workHandler);
+                }
+                recorder.lastEventNs = System.nanoTime();
+                fire(platform, networks, generations, step);
+                fired++;
+            }
+            if (workHandler != null) {
+                idle(workHandler);
+            }
+        } finally {
+            monitor.destroy();
+            if (thread != null) {
+                thread.quitSafely();
+            }
+        }
+        return new ReplayReport(fired, System.nanoTime() - start, recorder.deliveries);
+    }
+
+    /**
+     * Waits for the work thread to process everything queued so far.
+     */
+    private static void idle(Handler workHandler) throws InterruptedException {
+        final CountDownLatch idle = new CountDownLatch(1);
+        workHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                idle.countDown();
+            }
+        });
+        idle.await();
+    }
+
+    private static void fire(FakePlatform platform, Map<Integer, Network> networks,
+                             Map<Integer, Integer> generations, EventScript.Step step) {
+        int netId = step.argument;
+        Network network = networks.get(netId);
+        boolean connect = step.command.equals(EventScript.WIFI) || step.command.equals(EventScript.CELL)
+                || step.command.equals(EventScript.VPN);
+        if (connect == (network != null)) {
+            throw new IllegalStateException("Line " + step.line + ": network " + netId
+                    + (connect ? " already connected" : " not connected"));
+        }
+        switch (step.command) {
+            case EventScript.WIFI:
+                network = platform.connectWifi(netId, 2);
+                break;
+            case EventScript.CELL:
+                boolean hasDefault = platform.connectivityManager.getActiveNetwork() != null;
+                network = platform.connectCellular(netId, 2);
+                if (!hasDefault) {
+                    platform.connectivityManager.setActiveNetwork(network);
+                }
+                break;
+            case EventScript.VPN:
+                network = platform.connectVpn(netId, 2);
+                break;
+            case EventScript.DEFAULT:
+                platform.fireDefaultChanged(network);
+                return;
+            case EventScript.CAPS:
+                platform.fireCapabilitiesChanged(network);
+                return;
+            case EventScript.LINK:
+                Integer generation = generations.get(netId);
+                // The fake platform keeps 8 bits of it: 0 would bring back the
+                // addresses the network connected with.
+                generation = generation == null ? 1 : generation % 255 + 1;
+                generations.put(netId, generation);
+                platform.renumber(network, generation, 2);
+                platform.fireLinkPropertiesChanged(network);
+                return;
+            case EventScript.VALIDATE:
+                platform.validate(network);
+                platform.fireCapabilitiesChanged(network);
+                return;
+            case EventScript.LOSING:
+                platform.fireLosing(network, LINGER_MS);
+                return;
+            case EventScript.LOST:
+                networks.remove(netId);
+                platform.fireLost(network);
+                return;
+            default:
+                throw new AssertionError(step.command);
+        }
+        networks.put(netId, network);
+        platform.fireAvailable(network);
+    }
+
+    /**
+     * Records the calls of the monitor, on the thread delivering them.
+     */
+    private static final class Recorder implements NetCallback, NetMonitor.DegradationListener {
+        final List<ReplayReport.Delivery> deliveries = new ArrayList<>();
+        volatile long lastEventNs;
+
+        @Override
+        public void onNetChanged(NetType newNetType) {
+            record("onNetChanged " + newNetType);
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+            record("onNetConnect " + toNetId(netInfo.handle) + " " + netInfo.type);
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+            record("onNetDisconnect " + toNetId(networkHandle));
+        }
+
+        @Override
+        public void onNetworkDegrading(NetDegradation degradation) {
+            record("onNetworkDegrading " + toNetId(degradation.handle) + " fallback "
+                    + (degradation.fallbackHandle == NetMonitor.INVALID_NET_ID ? "none"
+                    : toNetId(degradation.fallbackHandle) + (degradation.isFallbackReady() ? " ready" : "")));
+        }
+
+        private void record(String call) {
+            long now = System.nanoTime();
+            synchronized (deliveries) {
+                deliveries.add(new ReplayReport.Delivery(call, now - lastEventNs));
+            }
+        }
+
+        // The fake platform munges the netId into the high bits of the handle.
+        private static long toNetId(long handle) {
+            return handle >>> 32;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.u2tzjtne.netmonitor.benchmark.replay;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays event scripts and fails when a transcript differs from the
+ * expectations of its script.
+ * <p>
+ * Usage: {@code ReplayMain [--background] [--rate <events/s>] [--transcript] <script>...}.
+ * Each script is replayed once and its report printed; the exit code is 1 if
+ * any script has expectations its transcript doesn't meet. With
+ * {@code --transcript} the calls are printed as expect lines, to record the
+ * expectations of a new script.
+ */
+public final class ReplayMain {
+
+    private ReplayMain() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean background = false;
+        boolean transcript = false;
+        long rate = 0;
+        List<File> scripts = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--background")) {
+                background = true;
+            } else if (args[i].equals("--transcript")) {
+                transcript = true;
+            } else if (args[i].equals("--rate") && i + 1 < args.length) {
+                rate = Long.parseLong(args[++i]);
+            } else {
+                scripts.add(new File(args[i]));
+            }
+        }
+        if (scripts.isEmpty()) {
+            System.err.println("Usage: ReplayMain [--background] [--rate <events/s>] [--transcript] <script>...");
+            System.exit(2);
+        }
+        ReplayEngine engine = new ReplayEngine(background, rate);
+        int failures = 0;
+        for (File file : scripts) {
+            EventScript script;
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
+                script = EventScript.parse(reader);
+            }
+            ReplayReport report = engine.run(script);
+            String diff = script.getExpected().isEmpty() ? null : report.diff(script.getExpected());
+            if (diff != null) {
+                failures++;
+            }
+            System.out.println(String.format("%-6s %s: %s", diff == null ? "OK" : "FAILED", file.getName(), report));
+            if (diff != null) {
+                System.out.println("       " + diff);
+            }
+            if (transcript) {
+                for (String call : report.getTranscript()) {
+                    System.out.println("expect " + call);
+                }
+            }
+        }
+        if (failures > 0) {
+            System.out.println(failures + " script(s) failed");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.u2tzjtne.netmonitor.benchmark.replay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * What a subscriber received during a replay, in order.
+ */
+public final class ReplayReport {
+    private final int platformEvents;
+    private final long durationNs;
+    private final List<Delivery> deliveries;
+    // Sorted.
+    private final long[] latenciesNs;
+
+    ReplayReport(int platformEvents, long durationNs, List<Delivery> deliveries) {
+        this.platformEvents = platformEvents;
+        this.durationNs = durationNs;
+        this.deliveries = Collections.unmodifiableList(new ArrayList<>(deliveries));
+        latenciesNs = new long[deliveries.size()];
+        for (int i = 0; i < latenciesNs.length; i++) {
+            latenciesNs[i] = deliveries.get(i).latencyNs;
+        }
+        Arrays.sort(latenciesNs);
+    }
+
+    public int getPlatformEvents() {
+        return platformEvents;
+    }
+
+    public long getDurationNs() {
+        return durationNs;
+    }
+
+    public List<Delivery> getDeliveries() {
+        return deliveries;
+    }
+
+    /**
+     * Returns the calls received, one per line, e.g. "onNetConnect 100 NET_WIFI".
+     */
+    public List<String> getTranscript() {
+        List<String> transcript = new ArrayList<>(deliveries.size());
+        for (Delivery delivery : deliveries) {
+            transcript.add(delivery.call);
+        }
+        return transcript;
+    }
+
+    /**
+     * Returns the latency at {@code percentile}, between 0 and 100, or 0 if
+     * nothing was delivered.
+     */
+    public long getLatencyNs(double percentile) {
+        if (latenciesNs.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * latenciesNs.length) - 1;
+        return latenciesNs[Math.max(0, Math.min(index, latenciesNs.length - 1))];
+    }
+
+    /**
+     * Returns null if the transcript matches {@code expected}, otherwise a
+     * description of the first difference.
+     */
+    public String diff(List<String> expected) {
+        List<String> actual = getTranscript();
+        for (int i = 0; i < Math.max(actual.size(), expected.size()); i++) {
+            String want = i < expected.size() ? expected.get(i) : "<nothing>";
+            String got = i < actual.size() ? actual.get(i) : "<nothing>";
+            if (!want.equals(got)) {
+                return "Call " + (i + 1) + ": expected " + want + ", got " + got;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        double seconds = durationNs / 1e9;
+        return String.format(Locale.US,
+                "%d platform events, %d calls in %.1f ms (%.0f events/s), latency p50 %.1f us,"
+                        + " p99 %.1f us, max %.1f us",
+                platformEvents, deliveries.size(), durationNs / 1e6, platformEvents / seconds,
+                getLatencyNs(50) / 1e3, getLatencyNs(99) / 1e3, getLatencyNs(100) / 1e3);
+    }
+
+    /**
+     * One call received by the subscriber.
+     */
+    public static final class Delivery {
+        public final String call;
+        // Since the last platform event fired before it.
+        public final long latencyNs;
+
+        Delivery(String call, long latencyNs) {
+            this.call = call;
+            this.latencyNs = latencyNs;
+        }
+
+        @Override
+        public String toString() {
+            return call;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.u2tzjtne.netmonitor.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a {@code <SubscriberClass>_NetDispatcher} for every class declaring
+ * {@code @OnNetChanged}, {@code @OnNetConnect} or {@code @OnNetDisconnect}
+ * methods. The generated dispatcher calls the annotated methods directly, so
+ * NetMonitor never needs reflection to deliver an event.
+ * <p>
+ * A dispatcher also calls the annotated methods its class inherits, except the
+ * ones it overrides, so NetMonitor only uses the most derived dispatcher and
+ * an overridden, re-annotated method is called once. Inherited methods must
+ * be public unless the superclass is in the same package.
+ * <p>
+ * Accepted signatures, on non-private, non-static methods of a class:
+ * <ul>
+ * <li>{@code @OnNetChanged void m()} or {@code void m(NetType)}</li>
+ * <li>{@code @OnNetConnect void m()} or {@code void m(NetInfo)}</li>
+ * <li>{@code @OnNetDisconnect void m()} or {@code void m(long)}</li>
+ * </ul>
+ */
+public class NetMonitorProcessor extends AbstractProcessor {
+    private static final String ANNOTATION_PACKAGE = "com.u2tzjtne.netmonitor.annotation.";
+    private static final String ON_NET_CHANGED = ANNOTATION_PACKAGE + "OnNetChanged";
+    private static final String ON_NET_CONNECT = ANNOTATION_PACKAGE + "OnNetConnect";
+    private static final String ON_NET_DISCONNECT = ANNOTATION_PACKAGE + "OnNetDisconnect";
+    private static final String NET_DISPATCHER = "com.u2tzjtne.netmonitor.core.NetDispatcher";
+    private static final String NET_TYPE = "com.u2tzjtne.netmonitor.entity.NetType";
+    private static final String NET_INFO = "com.u2tzjtne.netmonitor.entity.NetInfo";
+    // Must match SubscriberRegistry.DISPATCHER_SUFFIX.
+    private static final String DISPATCHER_SUFFIX = "_NetDispatcher";
+
+    private Filer filer;
+    private Messager messager;
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        filer = processingEnv.getFiler();
+        messager = processingEnv.getMessager();
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new LinkedHashSet<>(Arrays.asList(ON_NET_CHANGED, ON_NET_CONNECT, ON_NET_DISCONNECT));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<TypeElement, Subscriber> subscribers = new LinkedHashMap<>();
+        for (TypeElement annotation : annotations) {
+            String annotationName = annotation.getQualifiedName().toString();
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                ExecutableElement method = (ExecutableElement) element;
+                if (!isValid(method, annotationName)) {
+                    continue;
+                }
+                TypeElement enclosing = (TypeElement) method.getEnclosingElement();
+                Subscriber subscriber = subscribers.get(enclosing);
+                if (subscriber == null) {
+                    subscriber = new Subscriber(enclosing);
+                    subscribers.put(enclosing, subscriber);
+                }
+                subscriber.add(annotationName, method);
+            }
+        }
+        for (Subscriber subscriber : subscribers.values()) {
+            addInherited(subscriber);
+            write(subscriber);
+        }
+        return true;
+    }
+
+    private void addInherited(Subscriber subscriber) {
+        TypeElement type = subscriber.type;
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        TypeMirror superType = type.getSuperclass();
+        while (superType.getKind() == TypeKind.DECLARED) {
+            TypeElement superElement = (TypeElement) types.asElement(superType);
+            for (Element member : superElement.getEnclosedElements()) {
+                if (member.getKind() != ElementKind.METHOD) {
+                    continue;
+                }
+                ExecutableElement method = (ExecutableElement) member;
+                List<String> annotationNames = annotationsOf(method);
+                if (annotationNames.isEmpty() || subscriber.overrides(method, elements)) {
+                    continue;
+                }
+                Set<Modifier> modifiers = method.getModifiers();
+                if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+                    continue;
+                }
+                boolean samePackage = packageName.equals(
+                        elements.getPackageOf(superElement).getQualifiedName().toString());
+                if (!modifiers.contains(Modifier.PUBLIC) && !samePackage) {
+                    error(type, type.getSimpleName() + " inherits " + superElement.getSimpleName() + "."
+                            + method.getSimpleName() + "(), which must be public to be called from "
+                            + "another package.");
+                    continue;
+                }
+                for (String annotationName : annotationNames) {
+                    subscriber.add(annotationName, method);
+                }
+            }
+            superType = superElement.getSuperclass();
+        }
+    }
+
+    private static List<String> annotationsOf(ExecutableElement method) {
+        List<String> names = new ArrayList<>();
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            String name = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+            if (name.equals(ON_NET_CHANGED) || name.equals(ON_NET_CONNECT) || name.equals(ON_NET_DISCONNECT)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private boolean isValid(ExecutableElement method, String annotationName) {
+        Element enclosing = method.getEnclosingElement();
+        String name = "@" + annotationName.substring(ANNOTATION_PACKAGE.length());
+        if (enclosing.getKind() != ElementKind.CLASS) {
+            error(method, name + " methods must be declared in a class.");
+            return false;
+        }
+        if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+            error(method, name + " methods can't be declared in a private class.");
+            return false;
+        }
+        if (method.getModifiers().contains(Modifier.PRIVATE)
+                || method.getModifiers().contains(Modifier.STATIC)) {
+            error(method, name + " methods must not be private or static.");
+            return false;
+        }
+        List<? extends VariableElement> parameters = method.getParameters();
+        if (parameters.isEmpty()) {
+            return true;
+        }
+        if (parameters.size() == 1) {
+            TypeMirror type = parameters.get(0).asType();
+            switch (annotationName) {
+                case ON_NET_CHANGED:
+                    if (isType(type, NET_TYPE)) return true;
+                    break;
+                case ON_NET_CONNECT:
+                    if (isType(type, NET_INFO)) return true;
+                    break;
+                case ON_NET_DISCONNECT:
+                    if (type.getKind() == TypeKind.LONG) return true;
+                    break;
+            }
+        }
+        error(method, name + " method has an unsupported parameter list, expected ("
+                + expectedParameter(annotationName) + ") or ().");
+        return false;
+    }
+
+    private boolean isType(TypeMirror type, String qualifiedName) {
+        TypeElement expected = elements.getTypeElement(qualifiedName);
+        return expected != null && types.isSameType(type, expected.asType());
+    }
+
+    private static String expectedParameter(String annotationName) {
+        switch (annotationName) {
+            case ON_NET_CHANGED:
+                return "NetType";
+            case ON_NET_CONNECT:
+                return "NetInfo";
+            default:
+                return "long";
+        }
+    }
+
+    private void write(Subscriber subscriber) {
+        TypeElement type = subscriber.type;
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(type).toString();
+        String simpleName = (packageName.isEmpty()
+                ? binaryName : binaryName.substring(packageName.length() + 1)) + DISPATCHER_SUFFIX;
+        String targetName = types.erasure(type.asType()).toString();
+
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated code from NetMonitor. Do not modify!\n");
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("public final class ").append(simpleName)
+                .append(" implements ").append(NET_DISPATCHER).append('<').append(targetName).append("> {\n");
+        writeMethod(source, "onNetChanged", targetName, NET_TYPE + " newNetType", "newNetType",
+                subscriber.get(ON_NET_CHANGED));
+        source.append('\n');
+        writeMethod(source, "onNetConnect", targetName, NET_INFO + " netInfo", "netInfo",
+                subscriber.get(ON_NET_CONNECT));
+        source.append('\n');
+        writeMethod(source, "onNetDisconnect", targetName, "long networkHandle", "networkHandle",
+                subscriber.get(ON_NET_DISCONNECT));
+        source.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try {
+            JavaFileObject file = filer.createSourceFile(qualifiedName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+        } catch (IOException e) {
+            error(type, "Unable to write dispatcher for " + targetName + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeMethod(StringBuilder source, String name, String targetName,
+                                    String parameter, String argument, List<ExecutableElement> methods) {
+        source.append("    @Override\n")
+                .append("    public void ").append(name).append('(')
+                .append(targetName).append(" subscriber, ").append(parameter).append(") {\n");
+        for (ExecutableElement method : methods) {
+            source.append("        subscriber.").append(method.getSimpleName()).append('(')
+                    .append(method.getParameters().isEmpty() ? "" : argument).append(");\n");
+        }
+        source.append("    }\n");
+    }
+
+    private void error(Element element, String message) {
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * The annotated methods of one subscriber class, in declaration order, then
+     * the ones it inherits.
+     */
+    private static final class Subscriber {
+        final TypeElement type;
+        private final Map<String, List<ExecutableElement>> methods = new LinkedHashMap<>();
+
+        Subscriber(TypeElement type) {
+            this.type = type;
+        }
+
+        void add(String annotationName, ExecutableElement method) {
+            List<ExecutableElement> list = methods.get(annotationName);
+            if (list == null) {
+                list = new ArrayList<>();
+                methods.put(annotationName, list);
+            }
+            list.add(method);
+        }
+
+        /**
+         * Returns true if a method added so far overrides {@code method}.
+         */
+        boolean overrides(ExecutableElement method, Elements elements) {
+            for (List<ExecutableElement> list : methods.values()) {
+                for (ExecutableElement added : list) {
+                    if (elements.overrides(added, method, type)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        List<ExecutableElement> get(String annotationName) {
+            List<ExecutableElement> list = methods.get(annotationName);
+            return list != null ? list : new ArrayList<ExecutableElement>();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.u2tzjtne.netmonitor.reactive;
+
+/**
+ * What a {@link NetPublisher} subscription keeps while its subscriber has not
+ * requested more events.
+ * <p>
+ * The default network type is state: whatever the policy, only the latest
+ * CHANGED event is kept.
+ */
+public enum NetBackpressure {
+    /**
+     * Keeps the latest event per network: a network that connected, changed
+     * and disconnected while the subscriber was busy is seen once, as
+     * disconnected. Never overflows, at most one event per known network is
+     * pending.
+     */
+    LATEST,
+    /**
+     * Keeps every CONNECT and DISCONNECT in order, up to the capacity of the
+     * publisher. A subscriber falling further behind gets an
+     * {@link IllegalStateException} through onError and is cancelled.
+     */
+    BUFFER
+}
@@ -0,0 +1,79 @@
+package com.u2tzjtne.netmonitor.reactive;
+
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+
+/**
+ * One NetCallback event, as emitted by a {@link NetPublisher}.
+ */
+public final class NetEvent {
+    public enum Kind {
+        // The default network changed, see NetCallback#onNetChanged.
+        CHANGED,
+        // A network connected or its NetInfo changed.
+        CONNECT,
+        // A network disconnected.
+        DISCONNECT
+    }
+
+    public final Kind kind;
+    // The default network type, CHANGED only.
+    public final NetType netType;
+    // CONNECT only.
+    public final NetInfo netInfo;
+    // The network of a CONNECT or DISCONNECT, INVALID_NET_ID for CHANGED.
+    public final long handle;
+    // True if the event was built from the snapshot when subscribing, rather
+    // than delivered by the monitor.
+    public final boolean replayed;
+
+    private NetEvent(Kind kind, NetType netType, NetInfo netInfo, long handle, boolean replayed) {
+        this.kind = kind;
+        this.netType = netType;
+        this.netInfo = netInfo;
+        this.handle = handle;
+        this.replayed = replayed;
+    }
+
+    public static NetEvent changed(NetType netType, boolean replayed) {
+        return new NetEvent(Kind.CHANGED, netType, null, NetMonitor.INVALID_NET_ID, replayed);
+    }
+
+    public static NetEvent connect(NetInfo netInfo, boolean replayed) {
+        return new NetEvent(Kind.CONNECT, null, netInfo, netInfo.handle, replayed);
+    }
+
+    public static NetEvent disconnect(long handle) {
+        return new NetEvent(Kind.DISCONNECT, null, null, handle, false);
+    }
+
+    /**
+     * Returns true if {@code other} describes the same piece of state, so that
+     * keeping only the latest of the two loses nothing: the default network, or
+     * the same network handle.
+     */
+    boolean supersedes(NetEvent other) {
+        if (kind == Kind.CHANGED || other.kind == Kind.CHANGED) {
+            return kind == other.kind;
+        }
+        return handle == other.handle;
+    }
+
+    @Override
+    public String toString() {
+        String value;
+        switch (kind) {
+            case CHANGED:
+                value = "CHANGED " + netType;
+                break;
+            case CONNECT:
+                value = "CONNECT " + handle + " " + netInfo.type;
+                break;
+            default:
+                value = "DISCONNECT " + handle;
+                break;
+        }
+        return replayed ? value + " (replayed)" : value;
+    }
+}
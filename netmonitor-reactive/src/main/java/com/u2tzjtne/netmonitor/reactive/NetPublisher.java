@@ -0,0 +1,296 @@
+package com.u2tzjtne.netmonitor.reactive;
+
+import android.content.Context;
+
+import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.core.NetExecutors;
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.core.SharedNetMonitor;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetSnapshot;
+import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.util.NetUtils;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the events of a NetMonitor as a Reactive Streams
+ * {@link Publisher}, for RxJava ({@code Flowable.fromPublisher}), Kotlin
+ * coroutines ({@code Publisher.asFlow()}) or {@code java.util.concurrent.Flow}
+ * ({@code FlowAdapters.toFlowPublisher}).
+ * <p>
+ * Each subscriber first receives the current state of the monitor, a CHANGED
+ * event and a CONNECT per connected network flagged as
+ * {@link NetEvent#replayed}, then the live events. Unless the monitor has not
+ * queried the platform yet, in which case there is nothing to replay. Events
+ * are queued per subscription according to its {@link NetBackpressure} and
+ * emitted on the Executor of the publisher, so a slow subscriber never holds
+ * the thread delivering the NetMonitor events. The stream never completes.
+ * <p>
+ * A publisher built on a Context subscribes through {@link SharedNetMonitor}:
+ * the platform registrations live exactly as long as there are subscriptions,
+ * or other handles on the shared monitor. A publisher built on a NetMonitor
+ * only registers with it, the monitor stays owned by the caller.
+ */
+public final class NetPublisher implements Publisher<NetEvent> {
+    public static final int DEFAULT_CAPACITY = 128;
+
+    private final Context context;
+    private final NetMonitor monitor;
+    private final NetBackpressure backpressure;
+    private final int capacity;
+    private final Executor executor;
+
+    /**
+     * Keeps the latest event per network and emits on
+     * {@link NetExecutors#background()}.
+     */
+    public NetPublisher(Context context) {
+        this(context, NetBackpressure.LATEST, DEFAULT_CAPACITY, NetExecutors.background());
+    }
+
+    public NetPublisher(Context context, NetBackpressure backpressure, int capacity, Executor executor) {
+        this(context.getApplicationContext(), null, backpressure, capacity, executor);
+    }
+
+    public NetPublisher(NetMonitor monitor) {
+        this(monitor, NetBackpressure.LATEST, DEFAULT_CAPACITY, NetExecutors.background());
+    }
+
+    public NetPublisher(NetMonitor monitor, NetBackpressure backpressure, int capacity, Executor executor) {
+        this(null, monitor, backpressure, capacity, executor);
+    }
+
+    private NetPublisher(Context context, NetMonitor monitor, NetBackpressure backpressure,
+                         int capacity, Executor executor) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        this.context = context;
+        this.monitor = monitor;
+        this.backpressure = backpressure;
+        this.capacity = capacity;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super NetEvent> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber == null");
+        }
+        final NetSubscription subscription = new NetSubscription(subscriber);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                subscription.start();
+            }
+        });
+    }
+
+    /**
+     * Registered with the monitor for as long as it is not cancelled. Signals
+     * are serialized by a work-in-progress counter: whoever increments it from
+     * 0 drains the queue on the Executor, until no more work was signaled.
+     */
+    private final class NetSubscription implements Subscription, NetCallback, Runnable {
+        private final Subscriber<? super NetEvent> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        // Held by start() until the subscriber got onSubscribe.
+        private final AtomicInteger wip = new AtomicInteger(1);
+        // Guarded by itself.
+        private final ArrayDeque<NetEvent> queue = new ArrayDeque<>();
+        private volatile boolean cancelled;
+        private volatile boolean overflowed;
+        private volatile boolean invalidRequest;
+        // Guarded by this.
+        private SharedNetMonitor.Handle handle;
+        private boolean attached;
+
+        NetSubscription(Subscriber<? super NetEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            subscriber.onSubscribe(this);
+            if (attach()) {
+                replay();
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = true;
+            } else {
+                long current;
+                long updated;
+                do {
+                    current = requested.get();
+                    if (current == Long.MAX_VALUE) {
+                        break;
+                    }
+                    updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, updated));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            detach();
+            synchronized (queue) {
+                queue.clear();
+            }
+        }
+
+        @Override
+        public void onNetChanged(NetType newNetType) {
+            offer(NetEvent.changed(newNetType, false));
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+            offer(NetEvent.connect(netInfo, false));
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+            offer(NetEvent.disconnect(networkHandle));
+        }
+
+        @Override
+        public void run() {
+            drain();
+        }
+
+        private synchronized boolean attach() {
+            if (cancelled) {
+                return false;
+            }
+            attached = true;
+            // Called synchronously: offer() only queues.
+            if (monitor != null) {
+                monitor.register(this, null);
+            } else {
+                handle = SharedNetMonitor.attach(context, this, null);
+            }
+            return true;
+        }
+
+        // Null once detached.
+        private synchronized NetSnapshot getSnapshot() {
+            if (!attached) {
+                return null;
+            }
+            return monitor != null ? monitor.getSnapshot() : handle.getSnapshot();
+        }
+
+        private synchronized void detach() {
+            if (!attached) {
+                return;
+            }
+            attached = false;
+            if (monitor != null) {
+                monitor.unregister(this);
+            } else {
+                handle.destroy();
+                handle = null;
+            }
+        }
+
+        private void replay() {
+            synchronized (queue) {
+                // The snapshot is updated before the monitor delivers an event:
+                // read under the queue lock, it contains whatever was queued
+                // since attach(), and later events are queued behind the replay.
+                NetSnapshot snapshot = getSnapshot();
+                if (snapshot == null || snapshot.getSequence() == 0) {
+                    return;
+                }
+                queue.clear();
+                queue.add(NetEvent.changed(NetUtils.getConnectionType(snapshot.getDefaultState()), true));
+                for (NetInfo netInfo : snapshot.getNetworks()) {
+                    queue.add(NetEvent.connect(netInfo, true));
+                }
+            }
+        }
+
+        private void offer(NetEvent event) {
+            if (cancelled) {
+                return;
+            }
+            synchronized (queue) {
+                if (backpressure == NetBackpressure.LATEST || event.kind == NetEvent.Kind.CHANGED) {
+                    for (Iterator<NetEvent> it = queue.iterator(); it.hasNext(); ) {
+                        if (event.supersedes(it.next())) {
+                            it.remove();
+                            break;
+                        }
+                    }
+                } else if (queue.size() >= capacity) {
+                    overflowed = true;
+                    queue.clear();
+                    return;
+                }
+                queue.add(event);
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            while (true) {
+                if (cancelled) {
+                    // Leaves wip set: nothing gets scheduled anymore.
+                    return;
+                }
+                if (overflowed || invalidRequest) {
+                    cancel();
+                    subscriber.onError(overflowed
+                            ? new IllegalStateException("More than " + capacity + " pending network events")
+                            : new IllegalArgumentException("Rule 3.9: request must be positive"));
+                    return;
+                }
+                long limit = requested.get();
+                long emitted = 0;
+                while (emitted != limit && !cancelled) {
+                    NetEvent event;
+                    synchronized (queue) {
+                        event = queue.poll();
+                    }
+                    if (event == null) {
+                        break;
+                    }
+                    subscriber.onNext(event);
+                    emitted++;
+                }
+                if (emitted != 0 && limit != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+# Dispatchers generated by netmonitor-compiler are looked up by name.
+-keep class **_NetDispatcher { <init>(); }
+-keepnames class * {
+    @com.u2tzjtne.netmonitor.annotation.OnNetChanged <methods>;
+}
+-keepnames class * {
+    @com.u2tzjtne.netmonitor.annotation.OnNetConnect <methods>;
+}
+-keepnames class * {
+    @com.u2tzjtne.netmonitor.annotation.OnNetDisconnect <methods>;
+}
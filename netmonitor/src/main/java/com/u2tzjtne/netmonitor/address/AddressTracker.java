@@ -0,0 +1,209 @@
+package com.u2tzjtne.netmonitor.address;
+
+import android.util.LongSparseArray;
+
+import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.entity.AddressChange;
+import com.u2tzjtne.netmonitor.entity.IPAddress;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps the addresses of each network reported by a NetMonitor, and tells
+ * which ones were added or removed when they change.
+ * <p>
+ * NetMonitor re-emits a whole NetInfo on any change of a network, its type or
+ * its link properties. The tracker diffs its addresses with the previous ones
+ * of the same handle and only notifies when the set actually changed, so a
+ * subscriber can rebind just the sockets whose local address is gone. A
+ * network's first addresses are all reported as added, and all removed when it
+ * is lost.
+ */
+public class AddressTracker {
+    private static final IPAddress[] NONE = new IPAddress[0];
+
+    /**
+     * Notified on the thread delivering the NetMonitor callbacks, in order.
+     */
+    public interface Listener {
+        void onAddressesChanged(AddressChange change);
+    }
+
+    private final NetMonitor monitor;
+    // Guarded by itself.
+    private final LongSparseArray<IPAddress[]> addresses = new LongSparseArray<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final NetCallback netCallback = new NetCallback() {
+        @Override
+        public void onNetChanged(NetType newNetType) {
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+            update(netInfo.handle, netInfo.ipAddresses);
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+            update(networkHandle, null);
+        }
+    };
+
+    /**
+     * Starts from the addresses of the networks already connected, without
+     * notifying them.
+     */
+    public AddressTracker(NetMonitor monitor) {
+        this.monitor = monitor;
+        monitor.register(netCallback);
+        synchronized (addresses) {
+            // Under the lock, the list holds every event delivered before, and
+            // the ones delivered after wait for the seeding.
+            List<NetInfo> connected = monitor.getActiveNetworkList();
+            if (connected != null) {
+                for (NetInfo netInfo : connected) {
+                    if (addresses.get(netInfo.handle) == null) {
+                        addresses.put(netInfo.handle, netInfo.ipAddresses);
+                    }
+                }
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the current addresses of the network with {@code handle}, empty if
+     * it is not connected.
+     */
+    public IPAddress[] getAddresses(long handle) {
+        synchronized (addresses) {
+            IPAddress[] current = addresses.get(handle);
+            return current != null ? current.clone() : NONE;
+        }
+    }
+
+    public void destroy() {
+        monitor.unregister(netCallback);
+        synchronized (addresses) {
+            addresses.clear();
+        }
+    }
+
+    private void update(long handle, IPAddress[] current) {
+        IPAddress[] previous;
+        synchronized (addresses) {
+            previous = addresses.get(handle);
+            if (current != null) {
+                addresses.put(handle, current);
+            } else {
+                addresses.remove(handle);
+            }
+        }
+        AddressChange change = diff(handle, previous != null ? previous : NONE,
+                current != null ? current : NONE);
+        if (change == null) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            listener.onAddressesChanged(change);
+        }
+    }
+
+    /**
+     * Returns what changed from {@code previous} to {@code current}, or null if
+     * they hold the same addresses, in any order and whatever their prefix
+     * lengths. Linear: the previous addresses
+     * are indexed by a 64-bit key in an open-addressing table, and only
+     * addresses with equal keys are compared.
+     */
+    static AddressChange diff(long handle, IPAddress[] previous, IPAddress[] current) {
+        if (previous == current) {
+            // NetMonitor reuses the addresses of a NetInfo when they are unchanged.
+            return null;
+        }
+        int mask = Integer.highestOneBit(Math.max(previous.length, 1) * 2) * 2 - 1;
+        long[] keys = new long[mask + 1];
+        // Index in previous plus one, 0 for an empty slot.
+        int[] slots = new int[mask + 1];
+        for (int i = 0; i < previous.length; i++) {
+            long key = key(previous[i]);
+            int slot = mix(key) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            slots[slot] = i + 1;
+        }
+        boolean[] kept = new boolean[previous.length];
+        IPAddress[] added = new IPAddress[current.length];
+        int addedCount = 0;
+        int keptCount = 0;
+        for (IPAddress address : current) {
+            long key = key(address);
+            int slot = mix(key) & mask;
+            int found = -1;
+            for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+                int index = slots[slot] - 1;
+                if (keys[slot] == key && !kept[index] && previous[index].sameAddress(address)) {
+                    found = index;
+                    break;
+                }
+            }
+            if (found >= 0) {
+                kept[found] = true;
+                keptCount++;
+            } else {
+                added[addedCount++] = address;
+            }
+        }
+        if (addedCount == 0 && keptCount == previous.length) {
+            return null;
+        }
+        IPAddress[] removed = new IPAddress[previous.length - keptCount];
+        for (int i = 0, j = 0; i < previous.length; i++) {
+            if (!kept[i]) {
+                removed[j++] = previous[i];
+            }
+        }
+        IPAddress[] addedTrimmed = new IPAddress[addedCount];
+        System.arraycopy(added, 0, addedTrimmed, 0, addedCount);
+        return new AddressChange(handle, addedTrimmed, removed, current);
+    }
+
+    /**
+     * Returns an IPv4 address itself, tagged so it can't equal an IPv6 key, or
+     * the two halves of an IPv6 address folded together. Equal addresses have
+     * equal keys.
+     */
+    private static long key(IPAddress ipAddress) {
+        byte[] address = ipAddress.address;
+        if (address.length == 4) {
+            return 1L << 32 | (readInt(address, 0) & 0xffffffffL);
+        }
+        long high = (long) readInt(address, 0) << 32 | (readInt(address, 4) & 0xffffffffL);
+        long low = (long) readInt(address, 8) << 32 | (readInt(address, 12) & 0xffffffffL);
+        // Most addresses of a network share their high half.
+        return low * 0x9e3779b97f4a7c15L ^ high;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+                | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ h >>> 32);
+    }
+}
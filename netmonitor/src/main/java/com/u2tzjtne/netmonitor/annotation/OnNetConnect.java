@@ -10,7 +10,7 @@ import java.lang.annotation.Target;
  * 网络已连接
  * */
 @Target(ElementType.METHOD)
-@Retention(RetentionPolicy.RUNTIME)
+@Retention(RetentionPolicy.CLASS)
 public @interface OnNetConnect {
 
 }
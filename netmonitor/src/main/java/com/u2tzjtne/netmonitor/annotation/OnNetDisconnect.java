@@ -10,6 +10,6 @@ import java.lang.annotation.Target;
  * 网络断开
  * */
 @Target(ElementType.METHOD)
-@Retention(RetentionPolicy.RUNTIME)
+@Retention(RetentionPolicy.CLASS)
 public @interface OnNetDisconnect {
 }
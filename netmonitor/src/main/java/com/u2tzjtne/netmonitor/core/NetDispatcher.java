@@ -0,0 +1,23 @@
+package com.u2tzjtne.netmonitor.core;
+
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+
+/**
+ * Forwards network events to the annotated methods of a subscriber.
+ * <p>
+ * Implementations are generated at compile time by the netmonitor-compiler
+ * annotation processor, one per class declaring {@code @OnNetChanged},
+ * {@code @OnNetConnect} or {@code @OnNetDisconnect} methods, and are named
+ * {@code <SubscriberClass>_NetDispatcher}. A dispatcher also calls the
+ * annotated methods its class inherits, so only the most derived one is used.
+ * They are stateless, so a single instance is shared by every subscriber of
+ * the same class.
+ */
+public interface NetDispatcher<T> {
+    void onNetChanged(T subscriber, NetType newNetType);
+
+    void onNetConnect(T subscriber, NetInfo netInfo);
+
+    void onNetDisconnect(T subscriber, long networkHandle);
+}
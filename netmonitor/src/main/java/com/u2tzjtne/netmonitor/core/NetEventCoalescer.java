@@ -0,0 +1,161 @@
+package com.u2tzjtne.netmonitor.core;
+
+import android.annotation.SuppressLint;
+import android.net.Network;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import com.u2tzjtne.netmonitor.core.delegate.ConnectivityManagerDelegate;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.util.NetLog;
+
+import static com.u2tzjtne.netmonitor.core.NetMonitor.TAG;
+import static com.u2tzjtne.netmonitor.core.NetMonitor.networkToNetId;
+
+/**
+ * Collapses bursts of NetworkCallback events into single onNetConnect calls.
+ * <p>
+ * A handover typically produces onAvailable, several onCapabilitiesChanged and
+ * onLinkPropertiesChanged within a few milliseconds. Events are keyed by network
+ * handle: each one restarts a quiet window for its network, and the NetInfo is
+ * built once the window elapses without further events (or after
+ * {@link #MAX_DELAY_FACTOR} windows for a network that never settles). A NetInfo
+ * equal to the last one delivered for the same network is dropped, whether or
+ * not a window is configured. The last NetInfo is handed back to the
+ * {@link NetInfoSource}, e.g. {@link ConnectivityManagerDelegate#networkToInfo(Network, NetInfo)},
+ * so an unchanged network allocates nothing on this path.
+ * <p>
+ * Not thread-safe: all calls must come from the thread {@code handler} runs on,
+ * or from the NetworkCallback thread when there is no handler, except
+ * {@link #close()}. Without a handler events are only deduplicated, never
+ * delayed.
+ */
+@SuppressLint("NewApi")
+final class NetEventCoalescer {
+    // A network whose events keep arriving is flushed after this many windows.
+    static final int MAX_DELAY_FACTOR = 4;
+
+    /**
+     * Builds the NetInfo of a network, returning {@code previous} itself if it
+     * is unchanged, or null if the network can't be described yet.
+     */
+    interface NetInfoSource {
+        NetInfo networkToInfo(Network network, NetInfo previous);
+    }
+
+    private final NetInfoSource netInfoSource;
+    private final Handler handler;
+    private final NetCallback target;
+    // Keyed by network handle, without boxing.
+    private final LongSparseArray<Flush> pending = new LongSparseArray<>();
+    private final LongSparseArray<NetInfo> delivered = new LongSparseArray<>();
+    private volatile long quietWindowMs;
+    // Set by close(), from any thread.
+    private volatile boolean closed;
+
+    NetEventCoalescer(NetInfoSource netInfoSource, Handler handler, NetCallback target) {
+        this.netInfoSource = netInfoSource;
+        this.handler = handler;
+        this.target = target;
+    }
+
+    /**
+     * Sets the quiet window, 0 to deliver every event immediately. Has no effect
+     * without a handler.
+     */
+    void setQuietWindow(long quietWindowMs) {
+        this.quietWindowMs = Math.max(0, quietWindowMs);
+    }
+
+    void onNetworkChanged(Network network) {
+        if (closed) {
+            return;
+        }
+        long handle = networkToNetId(network);
+        long window = quietWindowMs;
+        if (handler == null || window == 0) {
+            deliver(handle, network);
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        Flush flush = pending.get(handle);
+        if (flush == null) {
+            flush = new Flush(handle, now);
+            pending.put(handle, flush);
+        } else {
+            handler.removeCallbacks(flush);
+        }
+        flush.network = network;
+        handler.postAtTime(flush, Math.min(now + window, flush.firstEventTime + window * MAX_DELAY_FACTOR));
+    }
+
+    void onNetworkLost(long handle) {
+        if (closed) {
+            return;
+        }
+        Flush flush = pending.get(handle);
+        if (flush != null) {
+            pending.remove(handle);
+            handler.removeCallbacks(flush);
+        }
+        delivered.remove(handle);
+        target.onNetDisconnect(handle);
+    }
+
+    /**
+     * Stops delivering events for good, including the pending ones. May be
+     * called from any thread; {@link #clear()} then releases them.
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Drops pending events.
+     */
+    void clear() {
+        for (int i = 0; i < pending.size(); i++) {
+            handler.removeCallbacks(pending.valueAt(i));
+        }
+        pending.clear();
+        delivered.clear();
+    }
+
+    private void deliver(long handle, Network network) {
+        if (closed) {
+            return;
+        }
+        NetInfo previous = delivered.get(handle);
+        NetInfo netInfo = netInfoSource.networkToInfo(network, previous);
+        if (netInfo == null) {
+            return;
+        }
+        if (netInfo == previous || netInfo.equals(previous)) {
+            if (NetLog.isDebugEnabled()) {
+                Log.d(TAG, "Network " + handle + " is unchanged");
+            }
+            return;
+        }
+        delivered.put(handle, netInfo);
+        target.onNetConnect(netInfo);
+    }
+
+    private final class Flush implements Runnable {
+        final long handle;
+        final long firstEventTime;
+        Network network;
+
+        Flush(long handle, long firstEventTime) {
+            this.handle = handle;
+            this.firstEventTime = firstEventTime;
+        }
+
+        @Override
+        public void run() {
+            pending.remove(handle);
+            deliver(handle, network);
+        }
+    }
+}
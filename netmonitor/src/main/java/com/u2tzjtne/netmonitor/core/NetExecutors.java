@@ -0,0 +1,93 @@
+package com.u2tzjtne.netmonitor.core;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads used by NetMonitor to query the platform and deliver events.
+ * <p>
+ * {@link #workHandler()} is the thread on which a NetMonitor constructed in
+ * background mode runs its binder queries and builds NetInfos. Subscribers pick
+ * the thread they are called on when registering: {@link #main()},
+ * {@link #background()} or any caller-supplied Executor.
+ */
+public final class NetExecutors {
+
+    private NetExecutors() {
+    }
+
+    /**
+     * Delivers on the main thread.
+     */
+    public static Executor main() {
+        return MainHolder.EXECUTOR;
+    }
+
+    /**
+     * Delivers on a single background thread shared by all subscribers, in
+     * event order. It is not the work thread, so a slow subscriber does not
+     * delay the platform queries.
+     */
+    public static Executor background() {
+        return BackgroundHolder.EXECUTOR;
+    }
+
+    /**
+     * The Handler of the thread running platform queries in background mode,
+     * see {@link NetMonitor#NetMonitor(NetCallback, android.content.Context, Handler)}.
+     */
+    public static Handler workHandler() {
+        return WorkHolder.HANDLER;
+    }
+
+    private static final class MainHolder {
+        static final Executor EXECUTOR = new HandlerExecutor(new Handler(Looper.getMainLooper()));
+    }
+
+    private static final class BackgroundHolder {
+        static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "NetMonitor-dispatch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static final class WorkHolder {
+        static final Handler HANDLER;
+
+        static {
+            HandlerThread thread = new HandlerThread("NetMonitor-work", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            HANDLER = new Handler(thread.getLooper());
+        }
+    }
+
+    /**
+     * Executor posting to a Handler.
+     */
+    static final class HandlerExecutor implements Executor {
+        private final Handler handler;
+
+        HandlerExecutor(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (!handler.post(command)) {
+                throw new RejectedExecutionException(handler + " is shutting down");
+            }
+        }
+    }
+}
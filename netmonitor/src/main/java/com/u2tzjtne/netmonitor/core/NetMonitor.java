@@ -11,16 +11,37 @@ import android.net.LinkProperties;
 import android.net.Network;
 import android.net.NetworkCapabilities;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.LongSparseArray;
 
 import com.u2tzjtne.netmonitor.core.delegate.ConnectivityManagerDelegate;
+import com.u2tzjtne.netmonitor.core.delegate.TelephonyManagerDelegate;
 import com.u2tzjtne.netmonitor.core.delegate.WifiManagerDelegate;
+import com.u2tzjtne.netmonitor.entity.CellSignal;
+import com.u2tzjtne.netmonitor.entity.NetDegradation;
 import com.u2tzjtne.netmonitor.entity.NetType;
 import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetSnapshot;
 import com.u2tzjtne.netmonitor.entity.NetState;
+import com.u2tzjtne.netmonitor.entity.RadioTech;
+import com.u2tzjtne.netmonitor.entity.WifiDetails;
+import com.u2tzjtne.netmonitor.metrics.NetMetrics;
+import com.u2tzjtne.netmonitor.util.NetLog;
 import com.u2tzjtne.netmonitor.util.NetUtils;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static android.net.NetworkCapabilities.NET_CAPABILITY_VALIDATED;
+import static android.net.NetworkCapabilities.TRANSPORT_CELLULAR;
+import static android.net.NetworkCapabilities.TRANSPORT_VPN;
 
 /**
  * Borrowed from Chromium's
@@ -29,45 +50,246 @@ import java.util.List;
  * Used by the NetworkMonitor to listen to platform changes in connectivity.
  * Note that use of this class requires that the app have the platform
  * ACCESS_NETWORK_STATE permission.
+ * <p>
+ * On Oreo and newer releases the default network is tracked with
+ * registerDefaultNetworkCallback, and types, subtypes, SSIDs and NetInfos are
+ * derived from the NetworkCapabilities and LinkProperties the platform pushes,
+ * without NetworkInfo queries or the CONNECTIVITY_ACTION broadcast. Older
+ * releases keep the broadcast and NetworkInfo based implementation.
+ * <p>
+ * All state lives in immutable objects swapped with a CAS: the default
+ * network and the NetInfos in a {@link NetSnapshot}, the platform Networks,
+ * capabilities and link properties in a NetworkTable. Getters never lock, and
+ * a snapshot is published before the subscribers are notified of it. After
+ * {@link #destroy()} platform events are dropped.
  */
 public class NetMonitor extends BroadcastReceiver {
 
     public static final long INVALID_NET_ID = -1;
     public static final String TAG = "NetMonitor";
-    // NetCallback for the connection type change.
-    private final NetCallback netCallback;
+
+    /**
+     * Notified of every NetworkCapabilities the platform pushes, including the
+     * changes that leave the NetInfo as is (validation, metered...), on the
+     * thread handling NetworkCallback events.
+     */
+    public interface CapabilitiesListener {
+        void onCapabilitiesChanged(long handle, NetworkCapabilities capabilities);
+    }
+
+    /**
+     * Notified when the platform announces a network will be lost, on the
+     * thread handling NetworkCallback events, so connections can move before
+     * onNetDisconnect instead of stalling until their sockets time out. Called
+     * again for the same network if the fallback becomes ready before the
+     * deadline.
+     */
+    public interface DegradationListener {
+        void onNetworkDegrading(NetDegradation degradation);
+    }
+
+    /**
+     * Notified when a connected network changes its VPN, metered, roaming,
+     * underlying network or proxy attributes, after the subscribers got its
+     * onNetConnect, so they don't have to query the platform on every event.
+     */
+    public interface AttributesListener {
+        /**
+         * @param changed the NetInfo.CHANGED_XXX bits of the attributes changed.
+         */
+        void onAttributesChanged(NetInfo netInfo, int changed);
+    }
+
+    // Subscribers notified of the connection type change.
+    private final SubscriberRegistry subscribers = new SubscriberRegistry();
+    private final CopyOnWriteArrayList<AttributesListener> attributesListeners =
+            new CopyOnWriteArrayList<>();
+    // Snapshot of the known networks, updated before the subscribers are notified.
+    private final NetSnapshotStore snapshotStore = new NetSnapshotStore(subscribers, attributesListeners);
+    // Null when the default network is tracked with defaultNetworkCallback.
     private final IntentFilter intentFilter;
     private final Context context;
-    // Used to request mobile network. It does not do anything except for keeping
-    // the callback for releasing the request.
+    // Used to request mobile network. Holding the request keeps cellular up as
+    // the fallback of a losing network; the callback tracks it.
     private final NetworkCallback mobileNetworkCallback;
     // Used to receive updates on all networks.
     private final NetworkCallback allNetworkCallback;
-    // connectivityManagerDelegate and wifiManagerDelegate are only non-final for testing.
-    private ConnectivityManagerDelegate connectivityManagerDelegate;
-    private WifiManagerDelegate wifiManagerDelegate;
-    private boolean isRegistered;
-    private NetType netType;
-    private String wifiSSID;
+    // Used to track the default network instead of the broadcast, null if unsupported.
+    private final NetworkCallback defaultNetworkCallback;
+    // Thread running platform queries and building NetInfos, null to run them
+    // on the thread the platform calls us on.
+    private final Handler workHandler;
+    // Networks reported by the NetworkCallback with their last capabilities and
+    // link properties, swapped on every change.
+    private final AtomicReference<NetworkTable> networkTable = new AtomicReference<>(NetworkTable.EMPTY);
+    private final CopyOnWriteArrayList<CapabilitiesListener> capabilitiesListeners =
+            new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<DegradationListener> degradationListeners =
+            new CopyOnWriteArrayList<>();
+    // Networks announced as losing, until lost or their deadline. Guarded by itself.
+    private final LongSparseArray<NetDegradation> degrading = new LongSparseArray<>();
+    // The network brought up by the mobile request, and whether it is validated.
+    private volatile long fallbackNetId = INVALID_NET_ID;
+    private volatile boolean fallbackValidated;
+    // Collapses bursts of NetworkCallback events into single onNetConnect calls.
+    private final NetEventCoalescer coalescer;
+    // Platform queries, replaceable through the constructor.
+    private final ConnectivityManagerDelegate connectivityManagerDelegate;
+    private final WifiManagerDelegate wifiManagerDelegate;
+    // The Wi-Fi connection as pushed by the platform, so SSIDs are read
+    // without a binder call.
+    private final WifiInfoProvider wifiInfoProvider;
+    // The radio technology refining the cellular NetTypes, and the cell signal.
+    private final RadioInfoProvider radioInfoProvider;
+    // Set once by destroy(), platform events are dropped from then on.
+    private final AtomicBoolean destroyed = new AtomicBoolean();
+
+    /**
+     * Constructs a NetMonitor without subscribers, use {@link #register(Object)}
+     * to add them. Should only be called on UI thread.
+     */
+    public NetMonitor(Context context) {
+        this(null, context);
+    }
 
     /**
      * Constructs a NetMonitor. Should only be called on UI thread.
      */
-    @SuppressLint("NewApi")
     public NetMonitor(NetCallback netCallback, Context context) {
-        this.netCallback = netCallback;
+        this(netCallback, context, null);
+    }
+
+    /**
+     * Constructs a NetMonitor in background mode without subscribers.
+     */
+    public NetMonitor(Context context, Handler workHandler) {
+        this(null, context, workHandler);
+    }
+
+    /**
+     * Constructs a NetMonitor whose state queries, SSID lookups and NetInfo
+     * construction run on {@code workHandler}, e.g. {@link NetExecutors#workHandler()},
+     * instead of the main thread and the ConnectivityManager thread. Subscribers
+     * registered without an Executor are then called on that thread too. Passing
+     * a null {@code workHandler} keeps the platform threads.
+     */
+    public NetMonitor(NetCallback netCallback, Context context, Handler workHandler) {
+        this(netCallback, context, workHandler,
+                new ConnectivityManagerDelegate(context), new WifiManagerDelegate(context));
+    }
+
+    /**
+     * Constructs a NetMonitor querying the platform through the given delegates
+     * instead of the system services of {@code context}, e.g. subclasses
+     * serving scripted or recorded state off-device. {@code context} is still
+     * used to register the CONNECTIVITY_ACTION receiver before Oreo.
+     */
+    public NetMonitor(NetCallback netCallback, Context context, Handler workHandler,
+                      ConnectivityManagerDelegate connectivityManagerDelegate,
+                      WifiManagerDelegate wifiManagerDelegate) {
+        this(netCallback, context, workHandler, connectivityManagerDelegate, wifiManagerDelegate,
+                new TelephonyManagerDelegate(context));
+    }
+
+    /**
+     * Same as above, also listening to the radio through {@code telephonyManagerDelegate}.
+     */
+    @SuppressLint("NewApi")
+    public NetMonitor(NetCallback netCallback, Context context, Handler workHandler,
+                      ConnectivityManagerDelegate connectivityManagerDelegate,
+                      WifiManagerDelegate wifiManagerDelegate,
+                      TelephonyManagerDelegate telephonyManagerDelegate) {
+        if (netCallback != null) {
+            subscribers.register(netCallback, null);
+        }
         this.context = context;
-        connectivityManagerDelegate = new ConnectivityManagerDelegate(context);
-        wifiManagerDelegate = new WifiManagerDelegate(context);
-        final NetState netState = connectivityManagerDelegate.getNetworkState();
-        netType = NetUtils.getConnectionType(netState);
-        wifiSSID = getWifiSSID(netState);
-        intentFilter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
-        registerReceiver();
+        this.workHandler = workHandler;
+        this.connectivityManagerDelegate = connectivityManagerDelegate;
+        this.wifiManagerDelegate = wifiManagerDelegate;
+        wifiInfoProvider = new WifiInfoProvider(wifiManagerDelegate, workHandler);
+        wifiInfoProvider.addListener(new WifiInfoProvider.Listener() {
+            @Override
+            public void onWifiChanged(WifiDetails details) {
+                wifiChanged(details);
+            }
+
+            @Override
+            public void onRoamed(WifiDetails from, WifiDetails to) {
+            }
+
+            @Override
+            public void onSignalLevelChanged(WifiDetails details, int level) {
+            }
+        });
+        wifiInfoProvider.start();
+        radioInfoProvider = new RadioInfoProvider(telephonyManagerDelegate, workHandler);
+        radioInfoProvider.addListener(new RadioInfoProvider.Listener() {
+            @Override
+            public void onRadioTechChanged(RadioTech tech) {
+                radioTechChanged();
+            }
+
+            @Override
+            public void onSignalChanged(CellSignal signal) {
+            }
+        });
+        radioInfoProvider.start();
+        final boolean pushedState = connectivityManagerDelegate.supportDefaultNetworkCallback();
+        coalescer = new NetEventCoalescer(new NetEventCoalescer.NetInfoSource() {
+            @Override
+            public NetInfo networkToInfo(Network network, NetInfo previous) {
+                long handle = networkToNetId(network);
+                NetworkTable table = networkTable.get();
+                NetworkCapabilities networkCapabilities = table.getCapabilities(handle);
+                long underlying = networkCapabilities != null && networkCapabilities.hasTransport(TRANSPORT_VPN)
+                        ? table.findUnderlying(handle) : INVALID_NET_ID;
+                Network underlyingNetwork = table.getNetwork(underlying);
+                NetworkCapabilities underlyingCapabilities = table.getCapabilities(underlying);
+                if (!pushedState) {
+                    return connectivityManagerDelegate.networkToInfo(network, underlyingNetwork,
+                            underlyingCapabilities, previous);
+                }
+                LinkProperties properties = table.getLinkProperties(handle);
+                // Both always follow onAvailable on Oreo, wait for them.
+                if (properties == null || networkCapabilities == null) {
+                    return null;
+                }
+                return connectivityManagerDelegate.networkToInfo(network, properties,
+                        networkCapabilities, underlyingNetwork, underlyingCapabilities, previous);
+            }
+        }, workHandler, snapshotStore);
+        if (pushedState) {
+            // The default network callback reports the initial state.
+            intentFilter = null;
+        } else {
+            if (workHandler == null) {
+                initNetworkState();
+            } else {
+                workHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        initNetworkState();
+                    }
+                });
+            }
+            intentFilter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+            registerReceiver();
+        }
+        // Since Android 12 the WifiInfo in the capabilities pushed to a callback
+        // has its SSID and BSSID redacted unless the callback asks for them.
+        boolean includeLocationInfo = wifiManagerDelegate.supportTransportInfo();
+        if (pushedState) {
+            defaultNetworkCallback = includeLocationInfo
+                    ? new DefaultNetworkCallback(NetworkCallback.FLAG_INCLUDE_LOCATION_INFO)
+                    : new DefaultNetworkCallback();
+            connectivityManagerDelegate.registerDefaultNetworkCallback(defaultNetworkCallback, workHandler);
+        } else {
+            defaultNetworkCallback = null;
+        }
         if (connectivityManagerDelegate.supportNetworkCallback()) {
             // On Android 6.0.0, the WRITE_SETTINGS permission is necessary for
             // requestNetwork, so it will fail. This was fixed in Android 6.0.1.
-            NetworkCallback tempNetworkCallback = new NetworkCallback();
+            NetworkCallback tempNetworkCallback = new MobileNetworkCallback();
             try {
                 connectivityManagerDelegate.requestMobileNetwork(tempNetworkCallback);
             } catch (SecurityException e) {
@@ -75,40 +297,189 @@ public class NetMonitor extends BroadcastReceiver {
                 tempNetworkCallback = null;
             }
             mobileNetworkCallback = tempNetworkCallback;
-            allNetworkCallback = new SimpleNetworkCallback();
-            connectivityManagerDelegate.registerNetworkCallback(allNetworkCallback);
+            allNetworkCallback = includeLocationInfo
+                    ? new SimpleNetworkCallback(NetworkCallback.FLAG_INCLUDE_LOCATION_INFO)
+                    : new SimpleNetworkCallback();
+            connectivityManagerDelegate.registerNetworkCallback(allNetworkCallback, workHandler);
         } else {
             mobileNetworkCallback = null;
             allNetworkCallback = null;
         }
     }
 
+    /**
+     * Registers {@code subscriber} to receive network events. It is either a
+     * {@link NetCallback} or an object declaring methods annotated with
+     * {@link com.u2tzjtne.netmonitor.annotation.OnNetChanged @OnNetChanged},
+     * {@link com.u2tzjtne.netmonitor.annotation.OnNetConnect @OnNetConnect} or
+     * {@link com.u2tzjtne.netmonitor.annotation.OnNetDisconnect @OnNetDisconnect},
+     * whose dispatcher is generated by the netmonitor-compiler annotation processor.
+     * It is called on the thread delivering the event.
+     */
+    public void register(Object subscriber) {
+        subscribers.register(subscriber, null);
+    }
+
+    /**
+     * Registers {@code subscriber}, see {@link #register(Object)}, to be called on
+     * {@code executor}, e.g. {@link NetExecutors#main()} or {@link NetExecutors#background()}.
+     */
+    public void register(Object subscriber, Executor executor) {
+        subscribers.register(subscriber, executor);
+    }
+
+    /**
+     * Stops delivering network events to {@code subscriber}.
+     */
+    public void unregister(Object subscriber) {
+        subscribers.unregister(subscriber);
+    }
+
+    public void addCapabilitiesListener(CapabilitiesListener listener) {
+        capabilitiesListeners.addIfAbsent(listener);
+    }
+
+    public void removeCapabilitiesListener(CapabilitiesListener listener) {
+        capabilitiesListeners.remove(listener);
+    }
+
+    public void addDegradationListener(DegradationListener listener) {
+        degradationListeners.addIfAbsent(listener);
+    }
+
+    public void removeDegradationListener(DegradationListener listener) {
+        degradationListeners.remove(listener);
+    }
+
+    public void addAttributesListener(AttributesListener listener) {
+        attributesListeners.addIfAbsent(listener);
+    }
+
+    public void removeAttributesListener(AttributesListener listener) {
+        attributesListeners.remove(listener);
+    }
+
+    /**
+     * Returns the handle of the cellular network held up as a fallback, or
+     * INVALID_NET_ID if it is not connected or could not be requested.
+     */
+    public long getFallbackNetId() {
+        return fallbackNetId;
+    }
+
+    /**
+     * Collapses the NetworkCallback events of a network arriving within
+     * {@code quietWindowMs} of each other into a single onNetConnect. Only
+     * effective in background mode; 0, the default, delivers events as they come.
+     * In both cases an onNetConnect whose NetInfo is identical to the last one
+     * delivered for the same network is suppressed.
+     */
+    public void setQuietWindow(long quietWindowMs) {
+        coalescer.setQuietWindow(quietWindowMs);
+    }
+
+    /**
+     * Returns the latest snapshot of the known networks. Never blocks and makes
+     * no binder call; compare {@link NetSnapshot#getSequence()} with a previous
+     * read to detect changes.
+     */
+    public NetSnapshot getSnapshot() {
+        return snapshotStore.get();
+    }
+
+    /**
+     * Returns the connected networks, or null before Lollipop. Served from the
+     * snapshot once it is initialized, so the returned list is unmodifiable.
+     */
     public List<NetInfo> getActiveNetworkList() {
-        return connectivityManagerDelegate.getActiveNetworkList();
+        if (!connectivityManagerDelegate.supportNetworkCallback()) {
+            return null;
+        }
+        NetSnapshot snapshot = snapshotStore.get();
+        if (snapshot.getSequence() == 0) {
+            return connectivityManagerDelegate.getActiveNetworkList();
+        }
+        return snapshot.getNetworks();
+    }
+
+    /**
+     * Returns the platform Network with {@code handle}, e.g. {@link NetInfo#handle},
+     * or null if it is not connected. Can be used to bind sockets or lookups to a
+     * specific network. Only available on Lollipop and newer releases.
+     */
+    public Network getNetwork(long handle) {
+        return networkTable.get().getNetwork(handle);
+    }
+
+    /**
+     * Returns the last NetworkCapabilities the platform pushed for the network
+     * with {@code handle}, or null if none was received. Makes no binder call.
+     */
+    public NetworkCapabilities getNetworkCapabilities(long handle) {
+        return networkTable.get().getCapabilities(handle);
+    }
+
+    /**
+     * Returns the last LinkProperties the platform pushed for the network with
+     * {@code handle}, or null if none was received. Makes no binder call.
+     */
+    public LinkProperties getLinkProperties(long handle) {
+        return networkTable.get().getLinkProperties(handle);
+    }
+
+    /**
+     * Returns the type and subtype of the network with {@code handle}. When the
+     * default network is tracked with callbacks, they are derived from the
+     * pushed NetworkCapabilities like its NetInfo, the subtype of a cellular
+     * network other than the default one being read from NetworkInfo until
+     * display info is known; otherwise, or before its capabilities are pushed,
+     * this makes a binder call.
+     */
+    public NetState getNetworkState(long handle) {
+        NetworkTable table = networkTable.get();
+        Network network = table.getNetwork(handle);
+        if (network == null) {
+            return new NetState(false, -1, -1);
+        }
+        NetworkCapabilities capabilities = table.getCapabilities(handle);
+        if (defaultNetworkCallback != null && capabilities != null) {
+            NetSnapshot current = snapshotStore.get();
+            return connectivityManagerDelegate.getNetworkState(network, capabilities,
+                    current.getDefaultNetId() == handle ? current.getDefaultState() : null);
+        }
+        return connectivityManagerDelegate.getNetworkState(network);
     }
 
     /**
      * Registers a BroadcastReceiver in the given context.
      */
     private void registerReceiver() {
-        if (isRegistered)
-            return;
-        isRegistered = true;
-        context.registerReceiver(this, intentFilter);
+        context.registerReceiver(this, intentFilter, null, workHandler);
     }
 
     /**
      * Unregisters the BroadcastReceiver in the given context.
      */
     private void unregisterReceiver() {
-        if (!isRegistered)
+        if (intentFilter == null)
             return;
-        isRegistered = false;
         context.unregisterReceiver(this);
     }
 
     public NetState getCurrentNetworkState() {
-        return connectivityManagerDelegate.getNetworkState();
+        NetSnapshot snapshot = snapshotStore.get();
+        if (snapshot.getSequence() == 0) {
+            return connectivityManagerDelegate.getNetworkState();
+        }
+        return snapshot.getDefaultState();
+    }
+
+    /**
+     * Returns the SSID of the default network when it is Wi-Fi, "" otherwise or
+     * before the monitor has queried the platform.
+     */
+    public String getWifiSSID() {
+        return snapshotStore.get().getWifiSSID();
     }
 
     /**
@@ -118,34 +489,146 @@ public class NetMonitor extends BroadcastReceiver {
      * when not implemented.
      */
     public long getDefaultNetId() {
-        return connectivityManagerDelegate.getDefaultNetId();
+        NetSnapshot snapshot = snapshotStore.get();
+        if (snapshot.getSequence() == 0) {
+            return connectivityManagerDelegate.getDefaultNetId();
+        }
+        return snapshot.getDefaultNetId();
     }
 
+    private void initNetworkState() {
+        final NetState netState = connectivityManagerDelegate.getNetworkState();
+        if (connectivityManagerDelegate.supportNetworkCallback()) {
+            snapshotStore.setNetworks(connectivityManagerDelegate.getActiveNetworkList());
+        }
+        snapshotStore.setDefault(netState, connectivityManagerDelegate.getDefaultNetId(),
+                NetUtils.getConnectionType(netState), getWifiSSID(netState));
+    }
+
+    /**
+     * Returns the details of the Wi-Fi connection, kept up to date from the
+     * platform events.
+     */
+    public WifiInfoProvider getWifiInfoProvider() {
+        return wifiInfoProvider;
+    }
 
+    /**
+     * Returns the radio technology and signal of the cellular data
+     * subscription, kept up to date from the platform events.
+     */
+    public RadioInfoProvider getRadioInfoProvider() {
+        return radioInfoProvider;
+    }
 
     private String getWifiSSID(NetState netState) {
         if (NetUtils.getConnectionType(netState) != NetType.NET_WIFI)
             return "";
-        return wifiManagerDelegate.getWifiSSID();
+        return wifiInfoProvider.getSSID();
+    }
+
+    /**
+     * Applies an SSID reported after the default network change, the Wi-Fi
+     * broadcasts and CONNECTIVITY_ACTION not being ordered.
+     */
+    private void wifiChanged(WifiDetails details) {
+        if (details == null || details.ssid.isEmpty() || destroyed.get()) {
+            return;
+        }
+        // Only the SSID is set, and only on the default network read here:
+        // republishing its state would revert a default network change made
+        // by the callbacks meanwhile.
+        long handle = snapshotStore.get().getDefaultNetId();
+        if (snapshotStore.setWifiSSID(handle, details.ssid) == null) {
+            return;
+        }
+        if (NetLog.isDebugEnabled()) {
+            Log.d(TAG, "Wi-Fi SSID of the default network is now known");
+        }
+        subscribers.onNetChanged(NetType.NET_WIFI);
     }
 
     // BroadcastReceiver
     @Override
     public void onReceive(Context context, Intent intent) {
-        final NetState netState = getCurrentNetworkState();
+        if (destroyed.get()) {
+            return;
+        }
+        final NetState netState = connectivityManagerDelegate.getNetworkState();
         if (ConnectivityManager.CONNECTIVITY_ACTION.equals(intent.getAction())) {
+            NetMetrics.event(NetMetrics.CONNECTIVITY_ACTION, INVALID_NET_ID);
             connectionTypeChanged(netState);
         }
     }
 
     private void connectionTypeChanged(NetState netState) {
+        defaultNetworkChanged(netState, connectivityManagerDelegate.getDefaultNetId(), getWifiSSID(netState));
+    }
+
+    /**
+     * Reclassifies the cellular networks with the radio technology, e.g. LTE
+     * becoming 5G NSA without any NetworkCallback event.
+     */
+    private void radioTechChanged() {
+        connectivityManagerDelegate.setDisplayInfo(radioInfoProvider.getDataNetworkType(),
+                radioInfoProvider.getOverrideNetworkType());
+        // The CONNECTIVITY_ACTION path reads NetworkInfo subtypes, predating the display info.
+        if (destroyed.get() || defaultNetworkCallback == null) {
+            return;
+        }
+        NetworkTable table = networkTable.get();
+        NetSnapshot current = snapshotStore.get();
+        long handle = current.getDefaultNetId();
+        NetworkCapabilities capabilities = table.getCapabilities(handle);
+        if (capabilities != null && capabilities.hasTransport(TRANSPORT_CELLULAR)) {
+            // Only the subtype changes, and only on the default network read
+            // here: the callbacks may have replaced it meanwhile.
+            NetState netState = connectivityManagerDelegate.getNetworkState(capabilities,
+                    current.getDefaultState());
+            NetSnapshot previous = snapshotStore.setDefaultState(handle, netState);
+            NetType newNetType = NetUtils.getConnectionType(netState);
+            if (previous != null && previous.getDefaultType() != newNetType) {
+                if (NetLog.isDebugEnabled()) {
+                    Log.d(TAG, "Network connectivity changed, type is: " + newNetType);
+                }
+                subscribers.onNetChanged(newNetType);
+            }
+        }
+        // The coalescer is confined to the work thread, the radio events only
+        // arrive on it in background mode: otherwise the NetInfos are updated
+        // on the next event of their network.
+        if (workHandler == null) {
+            return;
+        }
+        for (NetInfo netInfo : current.getNetworks()) {
+            Network network = table.getNetwork(netInfo.handle);
+            capabilities = table.getCapabilities(netInfo.handle);
+            if (network != null && capabilities != null && capabilities.hasTransport(TRANSPORT_CELLULAR)) {
+                coalescer.onNetworkChanged(network);
+            }
+        }
+    }
+
+    private void defaultNetworkChanged(NetState netState, long newDefaultNetId, String newWifiSSID) {
+        // The default network may change without its type changing. Capabilities
+        // are pushed often and mostly unchanged: the snapshot is kept then.
         NetType newNetType = NetUtils.getConnectionType(netState);
-        String newWifiSSID = getWifiSSID(netState);
-        if (newNetType == netType && newWifiSSID.equals(wifiSSID)) return;
-        netType = newNetType;
-        wifiSSID = newWifiSSID;
-        Log.d(TAG, "Network connectivity changed, type is: " + netType);
-        netCallback.onNetChanged(newNetType);
+        NetSnapshot previous = snapshotStore.setDefault(netState, newDefaultNetId, newNetType, newWifiSSID);
+        if (newNetType == previous.getDefaultType() && newWifiSSID.equals(previous.getWifiSSID())) return;
+        if (NetLog.isDebugEnabled()) {
+            Log.d(TAG, "Network connectivity changed, type is: " + newNetType);
+        }
+        subscribers.onNetChanged(newNetType);
+    }
+
+    private void updateNetworkTable(long handle, Network network, NetworkCapabilities networkCapabilities,
+                                    LinkProperties properties) {
+        NetworkTable current;
+        NetworkTable updated;
+        do {
+            current = networkTable.get();
+            updated = current.with(handle, network, networkCapabilities, properties);
+        } while (updated != current && !networkTable.compareAndSet(current, updated));
     }
 
     /**
@@ -170,50 +653,351 @@ public class NetMonitor extends BroadcastReceiver {
      */
     @SuppressLint("NewApi")
     private class SimpleNetworkCallback extends NetworkCallback {
+        SimpleNetworkCallback() {
+        }
+
+        // Android 12 and newer only.
+        SimpleNetworkCallback(int flags) {
+            super(flags);
+        }
+
         @Override
-        public void onAvailable(Network network) {
-            Log.d(TAG, "Network becomes available: " + network.toString());
+        public void onAvailable(final Network network) {
+            if (!isOnWorkThread()) {
+                workHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onAvailable(network);
+                    }
+                });
+                return;
+            }
+            if (destroyed.get()) {
+                return;
+            }
+            NetMetrics.event(NetMetrics.AVAILABLE, networkToNetId(network));
+            if (NetLog.isDebugEnabled()) {
+                Log.d(TAG, "Network becomes available: " + network.toString());
+            }
+            updateNetworkTable(networkToNetId(network), network, null, null);
             onNetworkChanged(network);
         }
 
         @Override
-        public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+        public void onCapabilitiesChanged(final Network network,
+                                          final NetworkCapabilities networkCapabilities) {
+            if (!isOnWorkThread()) {
+                workHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onCapabilitiesChanged(network, networkCapabilities);
+                    }
+                });
+                return;
+            }
+            if (destroyed.get()) {
+                return;
+            }
+            NetMetrics.event(NetMetrics.CAPABILITIES_CHANGED, networkToNetId(network));
             // A capabilities change may indicate the NetType has changed,
-            // so forward the new NetInfo along to the netCallback.
-            Log.d(TAG, "capabilities changed: " + networkCapabilities.toString());
+            // so forward the new NetInfo along to the subscribers.
+            if (NetLog.isDebugEnabled()) {
+                Log.d(TAG, "capabilities changed: " + networkCapabilities.toString());
+            }
+            long handle = networkToNetId(network);
+            updateNetworkTable(handle, null, networkCapabilities, null);
+            if (networkCapabilities.hasCapability(NET_CAPABILITY_VALIDATED)) {
+                synchronized (degrading) {
+                    pruneDegrading(SystemClock.elapsedRealtime());
+                }
+            }
+            wifiInfoProvider.onCapabilitiesChanged(handle, networkCapabilities);
             onNetworkChanged(network);
+            for (CapabilitiesListener listener : capabilitiesListeners) {
+                listener.onCapabilitiesChanged(handle, networkCapabilities);
+            }
         }
 
         @Override
-        public void onLinkPropertiesChanged(Network network, LinkProperties linkProperties) {
+        public void onLinkPropertiesChanged(final Network network, final LinkProperties linkProperties) {
+            if (!isOnWorkThread()) {
+                workHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLinkPropertiesChanged(network, linkProperties);
+                    }
+                });
+                return;
+            }
+            if (destroyed.get()) {
+                return;
+            }
+            NetMetrics.event(NetMetrics.LINK_PROPERTIES_CHANGED, networkToNetId(network));
             // A link property change may indicate the IP address changes.
-            // so forward the new NetInfo to the netCallback.
-            Log.d(TAG, "link properties changed: " + linkProperties.toString());
+            // so forward the new NetInfo to the subscribers.
+            if (NetLog.isDebugEnabled()) {
+                Log.d(TAG, "link properties changed: " + linkProperties.toString());
+            }
+            updateNetworkTable(networkToNetId(network), null, null, linkProperties);
             onNetworkChanged(network);
         }
 
         @Override
-        public void onLosing(Network network, int maxMsToLive) {
-            // Tell the network is going to lose in MaxMsToLive milliseconds.
-            // We may use this signal later.
-            Log.d(TAG, "Network " + network.toString() + " is about to lose in " + maxMsToLive + "ms");
+        public void onLosing(final Network network, final int maxMsToLive) {
+            if (!isOnWorkThread()) {
+                workHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLosing(network, maxMsToLive);
+                    }
+                });
+                return;
+            }
+            if (destroyed.get()) {
+                return;
+            }
+            long handle = networkToNetId(network);
+            NetMetrics.event(NetMetrics.LOSING, handle);
+            if (NetLog.isDebugEnabled()) {
+                Log.d(TAG, "Network " + network.toString() + " is about to lose in " + maxMsToLive + "ms");
+            }
+            // The fallback can't be the network it replaces.
+            long fallback = fallbackNetId != handle ? fallbackNetId : INVALID_NET_ID;
+            long now = SystemClock.elapsedRealtime();
+            NetDegradation degradation = new NetDegradation(handle, now + maxMsToLive, fallback,
+                    fallback != INVALID_NET_ID && fallbackValidated);
+            synchronized (degrading) {
+                pruneDegrading(now);
+                degrading.put(handle, degradation);
+            }
+            notifyDegrading(degradation);
         }
 
         @Override
-        public void onLost(Network network) {
-            Log.d(TAG, "Network " + network.toString() + " is disconnected");
-            netCallback.onNetDisconnect(networkToNetId(network));
+        public void onLost(final Network network) {
+            if (!isOnWorkThread()) {
+                workHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLost(network);
+                    }
+                });
+                return;
+            }
+            if (destroyed.get()) {
+                return;
+            }
+            long handle = networkToNetId(network);
+            NetMetrics.event(NetMetrics.LOST, handle);
+            if (NetLog.isDebugEnabled()) {
+                Log.d(TAG, "Network " + network.toString() + " is disconnected");
+            }
+            NetworkTable current;
+            do {
+                current = networkTable.get();
+            } while (!networkTable.compareAndSet(current, current.without(handle)));
+            synchronized (degrading) {
+                degrading.remove(handle);
+            }
+            wifiInfoProvider.onLost(handle);
+            coalescer.onNetworkLost(handle);
+            // The VPNs running over it move to another network, if any.
+            NetworkTable table = networkTable.get();
+            for (NetInfo netInfo : snapshotStore.get().getNetworks()) {
+                Network vpn = table.getNetwork(netInfo.handle);
+                if (netInfo.underlyingHandle == handle && vpn != null) {
+                    onNetworkChanged(vpn);
+                }
+            }
         }
 
         private void onNetworkChanged(Network network) {
-            NetInfo netInfo = connectivityManagerDelegate.networkToInfo(network);
-            if (netInfo != null) {
-                netCallback.onNetConnect(netInfo);
+            coalescer.onNetworkChanged(network);
+        }
+    }
+
+    /**
+     * Tracks the cellular network brought up by the mobile request, the
+     * fallback of a losing network. Once it is validated, the networks still
+     * losing are announced again with their fallback ready.
+     */
+    @SuppressLint("NewApi")
+    private class MobileNetworkCallback extends NetworkCallback {
+        @Override
+        public void onAvailable(final Network network) {
+            if (!isOnWorkThread()) {
+                workHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onAvailable(network);
+                    }
+                });
+                return;
+            }
+            fallbackValidated = false;
+            fallbackNetId = networkToNetId(network);
+        }
+
+        @Override
+        public void onCapabilitiesChanged(final Network network,
+                                          final NetworkCapabilities networkCapabilities) {
+            if (!isOnWorkThread()) {
+                workHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onCapabilitiesChanged(network, networkCapabilities);
+                    }
+                });
+                return;
+            }
+            long handle = networkToNetId(network);
+            boolean validated = networkCapabilities.hasCapability(NET_CAPABILITY_VALIDATED);
+            boolean becameReady = validated && (!fallbackValidated || fallbackNetId != handle);
+            fallbackNetId = handle;
+            fallbackValidated = validated;
+            if (!becameReady || destroyed.get()) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            List<NetDegradation> ready = new ArrayList<>();
+            synchronized (degrading) {
+                pruneDegrading(now);
+                for (int i = 0; i < degrading.size(); i++) {
+                    NetDegradation degradation = degrading.valueAt(i);
+                    if (degradation.handle != handle && !degradation.isFallbackReady()) {
+                        degradation = new NetDegradation(degradation.handle, degradation.deadlineMs,
+                                handle, true);
+                        degrading.setValueAt(i, degradation);
+                        ready.add(degradation);
+                    }
+                }
+            }
+            for (NetDegradation degradation : ready) {
+                notifyDegrading(degradation);
+            }
+        }
+
+        @Override
+        public void onLost(final Network network) {
+            if (!isOnWorkThread()) {
+                workHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLost(network);
+                    }
+                });
+                return;
+            }
+            if (fallbackNetId == networkToNetId(network)) {
+                fallbackNetId = INVALID_NET_ID;
+                fallbackValidated = false;
+            }
+        }
+    }
+
+    /**
+     * Before Oreo the callbacks can't be registered with a Handler, so in
+     * background mode each event hops to the work thread.
+     */
+    private boolean isOnWorkThread() {
+        return workHandler == null || Looper.myLooper() == workHandler.getLooper();
+    }
+
+    // Must hold degrading. Drops the networks still up past their deadline: the
+    // platform kept them after all and no onLost will come.
+    private void pruneDegrading(long now) {
+        for (int i = degrading.size() - 1; i >= 0; i--) {
+            if (degrading.valueAt(i).deadlineMs <= now) {
+                degrading.removeAt(i);
+            }
+        }
+    }
+
+    private void notifyDegrading(NetDegradation degradation) {
+        if (NetLog.isDebugEnabled()) {
+            Log.d(TAG, "Network degrading: " + degradation);
+        }
+        for (DegradationListener listener : degradationListeners) {
+            listener.onNetworkDegrading(degradation);
+        }
+    }
+
+    /**
+     * Tracks the default network from the capabilities the platform pushes,
+     * replacing the CONNECTIVITY_ACTION broadcast and NetworkInfo queries. Only
+     * registered on Oreo and newer releases, with the work Handler if any.
+     */
+    @SuppressLint("NewApi")
+    private class DefaultNetworkCallback extends NetworkCallback {
+        DefaultNetworkCallback() {
+        }
+
+        // Android 12 and newer only.
+        DefaultNetworkCallback(int flags) {
+            super(flags);
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+            if (destroyed.get()) {
+                return;
+            }
+            NetMetrics.event(NetMetrics.CONNECTIVITY_ACTION, networkToNetId(network));
+            long handle = networkToNetId(network);
+            NetSnapshot current = snapshotStore.get();
+            boolean sameNetwork = current.getDefaultNetId() == handle;
+            // A cellular subtype is only read on a default network change,
+            // capabilities updates keep it.
+            NetState netState = connectivityManagerDelegate.getNetworkState(network, networkCapabilities,
+                    sameNetwork ? current.getDefaultState() : null);
+            if (netState.getNetworkType() == ConnectivityManager.TYPE_VPN) {
+                // A VPN without the transports of its underlying network: the
+                // legacy path reports the type of the latter, so does this one.
+                NetworkTable table = networkTable.get();
+                long underlying = table.findUnderlying(handle);
+                NetworkCapabilities underlyingCapabilities = table.getCapabilities(underlying);
+                if (underlyingCapabilities != null) {
+                    netState = connectivityManagerDelegate.getNetworkState(table.getNetwork(underlying),
+                            underlyingCapabilities, sameNetwork ? current.getDefaultState() : null);
+                }
+            }
+            String ssid = "";
+            if (NetUtils.getConnectionType(netState) == NetType.NET_WIFI) {
+                ssid = wifiManagerDelegate.getWifiSSID(networkCapabilities);
+                if (ssid == null) {
+                    // Before Android 10 the capabilities don't carry the SSID.
+                    ssid = wifiInfoProvider.getSSID();
+                }
+            }
+            defaultNetworkChanged(netState, handle, ssid);
+        }
+
+        @Override
+        public void onLost(Network network) {
+            // Also called for a default network replaced by another one, after
+            // the new one's onAvailable.
+            if (destroyed.get() || networkToNetId(network) != snapshotStore.get().getDefaultNetId()) {
+                return;
             }
+            NetMetrics.event(NetMetrics.CONNECTIVITY_ACTION, INVALID_NET_ID);
+            defaultNetworkChanged(new NetState(false, -1, -1), INVALID_NET_ID, "");
         }
     }
 
+    /**
+     * Releases the platform registrations. Once it returns no subscriber is
+     * called anymore, even by platform events already in flight on other
+     * threads; only a call already running may complete. Calling it again has
+     * no effect.
+     */
     public void destroy() {
+        if (!destroyed.compareAndSet(false, true)) {
+            return;
+        }
+        subscribers.close();
+        if (defaultNetworkCallback != null) {
+            connectivityManagerDelegate.releaseCallback(defaultNetworkCallback);
+        }
         if (allNetworkCallback != null) {
             connectivityManagerDelegate.releaseCallback(allNetworkCallback);
         }
@@ -221,5 +1005,24 @@ public class NetMonitor extends BroadcastReceiver {
             connectivityManagerDelegate.releaseCallback(mobileNetworkCallback);
         }
         unregisterReceiver();
+        wifiInfoProvider.stop();
+        radioInfoProvider.stop();
+        capabilitiesListeners.clear();
+        degradationListeners.clear();
+        attributesListeners.clear();
+        synchronized (degrading) {
+            degrading.clear();
+        }
+        // Drops the flushes already posted, on either thread.
+        coalescer.close();
+        if (workHandler != null) {
+            // The coalescer is confined to the work thread.
+            workHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    coalescer.clear();
+                }
+            });
+        }
     }
 }
\ No newline at end of file
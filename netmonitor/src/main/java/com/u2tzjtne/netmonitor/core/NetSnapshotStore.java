@@ -0,0 +1,135 @@
+package com.u2tzjtne.netmonitor.core;
+
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetSnapshot;
+import com.u2tzjtne.netmonitor.entity.NetState;
+import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.util.NetUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link NetSnapshot} of a NetMonitor.
+ * <p>
+ * Sits in front of the subscribers and applies every onNetConnect and
+ * onNetDisconnect to the snapshot before forwarding it, so a subscriber
+ * querying the monitor from its callback already sees the new state. Writers
+ * may run on different platform threads and publish with a CAS; readers just
+ * read a volatile reference. Publishing happens-before the notification, so
+ * a subscriber, on any thread, sees at least the state it is notified of.
+ * A network reconnecting with other VPN, metered, roaming, underlying network
+ * or proxy attributes is also reported to the attributes listeners, after the
+ * subscribers.
+ */
+final class NetSnapshotStore implements NetCallback {
+    private final AtomicReference<NetSnapshot> snapshot = new AtomicReference<>(NetSnapshot.EMPTY);
+    private final NetCallback next;
+    private final List<NetMonitor.AttributesListener> attributesListeners;
+
+    NetSnapshotStore(NetCallback next, List<NetMonitor.AttributesListener> attributesListeners) {
+        this.next = next;
+        this.attributesListeners = attributesListeners;
+    }
+
+    NetSnapshot get() {
+        return snapshot.get();
+    }
+
+    /**
+     * Publishes the default network and returns the snapshot it replaced, the
+     * one to compare with to decide whether this is a change: concurrent
+     * writers each see their own predecessor.
+     */
+    NetSnapshot setDefault(NetState defaultState, long defaultNetId, NetType defaultType, String wifiSSID) {
+        NetSnapshot current;
+        NetSnapshot updated;
+        do {
+            current = snapshot.get();
+            updated = current.withDefault(defaultState, defaultNetId, defaultType, wifiSSID);
+        } while (updated != current && !snapshot.compareAndSet(current, updated));
+        return current;
+    }
+
+    /**
+     * Sets the SSID of the default network if it is still the Wi-Fi network
+     * with {@code defaultNetId}, keeping the rest of the snapshot as published
+     * meanwhile. Returns the snapshot it replaced, or null if the default
+     * network changed or already has this SSID.
+     */
+    NetSnapshot setWifiSSID(long defaultNetId, String wifiSSID) {
+        NetSnapshot current;
+        NetSnapshot updated;
+        do {
+            current = snapshot.get();
+            if (current.getSequence() == 0 || current.getDefaultNetId() != defaultNetId
+                    || current.getDefaultType() != NetType.NET_WIFI || wifiSSID.equals(current.getWifiSSID())) {
+                return null;
+            }
+            updated = current.withDefault(current.getDefaultState(), defaultNetId, NetType.NET_WIFI, wifiSSID);
+        } while (!snapshot.compareAndSet(current, updated));
+        return current;
+    }
+
+    /**
+     * Sets the state of the default network, e.g. a new subtype, if it is
+     * still the network with {@code defaultNetId} and of the same connection
+     * type as {@code defaultState}. Returns the snapshot it replaced, or null
+     * if the default network changed meanwhile.
+     */
+    NetSnapshot setDefaultState(long defaultNetId, NetState defaultState) {
+        NetType defaultType = NetUtils.getConnectionType(defaultState);
+        NetSnapshot current;
+        NetSnapshot updated;
+        do {
+            current = snapshot.get();
+            if (current.getSequence() == 0 || current.getDefaultNetId() != defaultNetId
+                    || current.getDefaultState().getNetworkType() != defaultState.getNetworkType()) {
+                return null;
+            }
+            updated = current.withDefault(defaultState, defaultNetId, defaultType, current.getWifiSSID());
+        } while (updated != current && !snapshot.compareAndSet(current, updated));
+        return current;
+    }
+
+    void setNetworks(List<NetInfo> networks) {
+        NetSnapshot current;
+        do {
+            current = snapshot.get();
+        } while (!snapshot.compareAndSet(current, current.withNetworks(networks)));
+    }
+
+    @Override
+    public void onNetChanged(NetType newNetType) {
+        next.onNetChanged(newNetType);
+    }
+
+    @Override
+    public void onNetConnect(NetInfo netInfo) {
+        NetSnapshot current;
+        NetSnapshot updated;
+        do {
+            current = snapshot.get();
+            updated = current.withNetwork(netInfo);
+        } while (updated != current && !snapshot.compareAndSet(current, updated));
+        next.onNetConnect(netInfo);
+        NetInfo previous = current.getNetwork(netInfo.handle);
+        int changed = previous != null ? netInfo.attributesChanged(previous) : 0;
+        if (changed != 0) {
+            for (NetMonitor.AttributesListener listener : attributesListeners) {
+                listener.onAttributesChanged(netInfo, changed);
+            }
+        }
+    }
+
+    @Override
+    public void onNetDisconnect(long networkHandle) {
+        NetSnapshot current;
+        NetSnapshot updated;
+        do {
+            current = snapshot.get();
+            updated = current.withoutNetwork(networkHandle);
+        } while (updated != current && !snapshot.compareAndSet(current, updated));
+        next.onNetDisconnect(networkHandle);
+    }
+}
@@ -0,0 +1,158 @@
+package com.u2tzjtne.netmonitor.core;
+
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+import static android.net.NetworkCapabilities.NET_CAPABILITY_INTERNET;
+import static android.net.NetworkCapabilities.NET_CAPABILITY_VALIDATED;
+import static android.net.NetworkCapabilities.TRANSPORT_BLUETOOTH;
+import static android.net.NetworkCapabilities.TRANSPORT_CELLULAR;
+import static android.net.NetworkCapabilities.TRANSPORT_ETHERNET;
+import static android.net.NetworkCapabilities.TRANSPORT_VPN;
+import static android.net.NetworkCapabilities.TRANSPORT_WIFI;
+
+/**
+ * Immutable table of the networks reported by the NetworkCallback, with the
+ * last capabilities and link properties pushed for each, keyed by handle.
+ * <p>
+ * NetMonitor swaps in a new table on every change, so lookups from any thread
+ * never lock. A device has a handful of networks: entries are scanned linearly.
+ */
+final class NetworkTable {
+    static final NetworkTable EMPTY = new NetworkTable(new Entry[0]);
+    private static final int[] UNDERLYING_TRANSPORTS = {
+            TRANSPORT_WIFI, TRANSPORT_CELLULAR, TRANSPORT_ETHERNET, TRANSPORT_BLUETOOTH};
+
+    private final Entry[] entries;
+
+    private NetworkTable(Entry[] entries) {
+        this.entries = entries;
+    }
+
+    Network getNetwork(long handle) {
+        int index = indexOf(handle);
+        return index >= 0 ? entries[index].network : null;
+    }
+
+    NetworkCapabilities getCapabilities(long handle) {
+        int index = indexOf(handle);
+        return index >= 0 ? entries[index].capabilities : null;
+    }
+
+    LinkProperties getLinkProperties(long handle) {
+        int index = indexOf(handle);
+        return index >= 0 ? entries[index].linkProperties : null;
+    }
+
+    /**
+     * Returns the handle of the network the VPN {@code vpnHandle} most likely
+     * runs over, or -1 (INVALID_NET_ID) if unknown. getUnderlyingNetworks is
+     * not public: a VPN carries the transports of its underlying networks, so
+     * this is a non-VPN internet network with one of them, validated first.
+     * For a VPN carrying none, any non-VPN internet network qualifies.
+     */
+    long findUnderlying(long vpnHandle) {
+        NetworkCapabilities vpn = getCapabilities(vpnHandle);
+        if (vpn == null) {
+            return -1;
+        }
+        // sharesTransport(vpn, vpn) is false for a VPN carrying no other transport.
+        boolean anyTransport = !sharesTransport(vpn, vpn);
+        long found = -1;
+        for (Entry entry : entries) {
+            NetworkCapabilities capabilities = entry.capabilities;
+            if (entry.handle == vpnHandle || capabilities == null || capabilities.hasTransport(TRANSPORT_VPN)
+                    || !capabilities.hasCapability(NET_CAPABILITY_INTERNET)
+                    || !(anyTransport || sharesTransport(vpn, capabilities))) {
+                continue;
+            }
+            if (capabilities.hasCapability(NET_CAPABILITY_VALIDATED)) {
+                return entry.handle;
+            }
+            if (found == -1) {
+                found = entry.handle;
+            }
+        }
+        return found;
+    }
+
+    private static boolean sharesTransport(NetworkCapabilities vpn, NetworkCapabilities capabilities) {
+        for (int transport : UNDERLYING_TRANSPORTS) {
+            if (vpn.hasTransport(transport) && capabilities.hasTransport(transport)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a table where the entry of {@code handle} has the non-null
+     * arguments, or this table if it already has them.
+     */
+    NetworkTable with(long handle, Network network, NetworkCapabilities capabilities,
+                      LinkProperties linkProperties) {
+        int index = indexOf(handle);
+        Entry current = index >= 0 ? entries[index] : null;
+        if (current != null && (network == null || network == current.network)
+                && (capabilities == null || capabilities == current.capabilities)
+                && (linkProperties == null || linkProperties == current.linkProperties)) {
+            return this;
+        }
+        Entry entry = current == null
+                ? new Entry(handle, network, capabilities, linkProperties)
+                : new Entry(handle,
+                network != null ? network : current.network,
+                capabilities != null ? capabilities : current.capabilities,
+                linkProperties != null ? linkProperties : current.linkProperties);
+        Entry[] updated;
+        if (index >= 0) {
+            updated = entries.clone();
+            updated[index] = entry;
+        } else {
+            updated = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, updated, 0, entries.length);
+            updated[entries.length] = entry;
+        }
+        return new NetworkTable(updated);
+    }
+
+    /**
+     * Returns a table without the entry of {@code handle}, or this table if it
+     * has none.
+     */
+    NetworkTable without(long handle) {
+        int index = indexOf(handle);
+        if (index < 0) {
+            return this;
+        }
+        Entry[] updated = new Entry[entries.length - 1];
+        System.arraycopy(entries, 0, updated, 0, index);
+        System.arraycopy(entries, index + 1, updated, index, entries.length - index - 1);
+        return new NetworkTable(updated);
+    }
+
+    private int indexOf(long handle) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].handle == handle) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Entry {
+        final long handle;
+        final Network network;
+        final NetworkCapabilities capabilities;
+        final LinkProperties linkProperties;
+
+        Entry(long handle, Network network, NetworkCapabilities capabilities,
+              LinkProperties linkProperties) {
+            this.handle = handle;
+            this.network = network;
+            this.capabilities = capabilities;
+            this.linkProperties = linkProperties;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.u2tzjtne.netmonitor.core;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import com.u2tzjtne.netmonitor.core.delegate.TelephonyManagerDelegate;
+import com.u2tzjtne.netmonitor.entity.CellSignal;
+import com.u2tzjtne.netmonitor.entity.RadioTech;
+import com.u2tzjtne.netmonitor.util.NetLog;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.u2tzjtne.netmonitor.core.NetMonitor.TAG;
+
+/**
+ * Keeps the radio technology and signal of the data subscription, as pushed
+ * by the TelephonyCallback on Android 12 and newer releases. Earlier releases
+ * report nothing: the technology stays UNKNOWN and the signal null.
+ * <p>
+ * The modem reports the signal every few seconds with small variations, so
+ * the signal stream is throttled: listeners are only called when the RSRP or
+ * SINR level changes, at most once per signal interval, with the latest value
+ * once the interval elapsed. Obtained from {@link NetMonitor#getRadioInfoProvider()}.
+ */
+public class RadioInfoProvider {
+    public static final long DEFAULT_SIGNAL_INTERVAL_MS = 5000;
+    // Level thresholds, the platform defaults of CarrierConfigManager.
+    private static final int[] LTE_RSRP_THRESHOLDS = {-128, -118, -108, -98};
+    private static final int[] LTE_RSSNR_THRESHOLDS = {-3, 1, 5, 13};
+    private static final int[] NR_SS_RSRP_THRESHOLDS = {-110, -90, -80, -65};
+    private static final int[] NR_SS_SINR_THRESHOLDS = {-5, 5, 15, 30};
+
+    /**
+     * Notified on the work thread, or the main thread without one.
+     */
+    public interface Listener {
+        void onRadioTechChanged(RadioTech tech);
+
+        void onSignalChanged(CellSignal signal);
+    }
+
+    private final TelephonyManagerDelegate delegate;
+    private final Handler handler;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile long signalIntervalMs = DEFAULT_SIGNAL_INTERVAL_MS;
+    // Written on the handler thread.
+    private volatile RadioTech tech = RadioTech.UNKNOWN;
+    private volatile int dataNetworkType = TelephonyManager.NETWORK_TYPE_UNKNOWN;
+    private volatile int overrideNetworkType;
+    private volatile CellSignal signal;
+    // Confined to the handler thread.
+    private CellSignal delivered;
+    private long deliveredAt;
+    private boolean flushPending;
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flushPending = false;
+            deliverSignal();
+        }
+    };
+    private final TelephonyManagerDelegate.RadioListener radioListener =
+            new TelephonyManagerDelegate.RadioListener() {
+                @Override
+                public void onDisplayInfoChanged(int networkType, int overrideNetworkType) {
+                    displayInfoChanged(networkType, overrideNetworkType);
+                }
+
+                @Override
+                public void onSignalChanged(boolean nr, int rsrpDbm, int sinrDb) {
+                    signalChanged(nr, rsrpDbm, sinrDb);
+                }
+            };
+
+    RadioInfoProvider(TelephonyManagerDelegate delegate, Handler workHandler) {
+        this.delegate = delegate;
+        this.handler = workHandler != null ? workHandler : new Handler(Looper.getMainLooper());
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets the minimum time between two signal notifications.
+     */
+    public void setSignalInterval(long signalIntervalMs) {
+        this.signalIntervalMs = Math.max(0, signalIntervalMs);
+    }
+
+    public RadioTech getRadioTech() {
+        return tech;
+    }
+
+    /**
+     * Returns the last signal reported, which may not have been notified yet,
+     * or null if none.
+     */
+    public CellSignal getSignal() {
+        return signal;
+    }
+
+    int getDataNetworkType() {
+        return dataNetworkType;
+    }
+
+    int getOverrideNetworkType() {
+        return overrideNetworkType;
+    }
+
+    void start() {
+        delegate.registerRadioListener(radioListener, new NetExecutors.HandlerExecutor(handler));
+    }
+
+    void stop() {
+        delegate.unregisterRadioListener();
+        handler.removeCallbacks(flush);
+    }
+
+    private void displayInfoChanged(int networkType, int overrideNetworkType) {
+        RadioTech classified = RadioTech.classify(networkType, overrideNetworkType);
+        this.overrideNetworkType = overrideNetworkType;
+        this.dataNetworkType = networkType;
+        if (classified == tech) {
+            return;
+        }
+        tech = classified;
+        if (NetLog.isDebugEnabled()) {
+            Log.d(TAG, "Radio technology changed: " + classified);
+        }
+        for (Listener listener : listeners) {
+            listener.onRadioTechChanged(classified);
+        }
+    }
+
+    private void signalChanged(boolean nr, int rsrpDbm, int sinrDb) {
+        CellSignal reported = new CellSignal(nr, rsrpDbm, sinrDb,
+                levelOf(rsrpDbm, nr ? NR_SS_RSRP_THRESHOLDS : LTE_RSRP_THRESHOLDS),
+                levelOf(sinrDb, nr ? NR_SS_SINR_THRESHOLDS : LTE_RSSNR_THRESHOLDS));
+        signal = reported;
+        if (flushPending || reported.sameLevels(delivered)) {
+            return;
+        }
+        long wait = delivered == null ? 0 : deliveredAt + signalIntervalMs - SystemClock.elapsedRealtime();
+        if (wait <= 0) {
+            deliverSignal();
+        } else {
+            flushPending = true;
+            handler.postDelayed(flush, wait);
+        }
+    }
+
+    private void deliverSignal() {
+        CellSignal latest = signal;
+        // Back to the delivered levels within the interval: nothing to report.
+        if (latest == null || latest.sameLevels(delivered)) {
+            return;
+        }
+        delivered = latest;
+        deliveredAt = SystemClock.elapsedRealtime();
+        for (Listener listener : listeners) {
+            listener.onSignalChanged(latest);
+        }
+    }
+
+    private static int levelOf(int value, int[] thresholds) {
+        if (value == CellSignal.UNAVAILABLE) {
+            return -1;
+        }
+        int level = 0;
+        while (level < thresholds.length && value >= thresholds[level]) {
+            level++;
+        }
+        return level;
+    }
+}
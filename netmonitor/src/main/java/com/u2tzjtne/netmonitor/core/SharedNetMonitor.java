@@ -0,0 +1,150 @@
+package com.u2tzjtne.netmonitor.core;
+
+import android.content.Context;
+
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetSnapshot;
+import com.u2tzjtne.netmonitor.entity.NetState;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Process-wide NetMonitor shared by every component of the app.
+ * <p>
+ * Each {@code new NetMonitor(...)} registers its own BroadcastReceiver, cellular
+ * request and NetworkCallback with the system. Components that attach here
+ * share a single monitor instead, so the platform sees exactly one registration
+ * per process whatever the number of consumers. The monitor is created by the
+ * first {@link #attach(Context, Object)} and its system resources are released
+ * when the last {@link Handle} is destroyed.
+ * <p>
+ * The shared monitor runs in background mode on {@link NetExecutors#workHandler()}.
+ */
+public final class SharedNetMonitor {
+    private static final Object LOCK = new Object();
+    // Handles per attached subscriber, guarded by LOCK: one attached through
+    // several handles stays registered until the last of them is destroyed.
+    private static final Map<Object, Integer> SUBSCRIBER_COUNTS = new IdentityHashMap<>();
+    // Guarded by LOCK.
+    private static NetMonitor monitor;
+    private static int handleCount;
+
+    private SharedNetMonitor() {
+    }
+
+    /**
+     * Returns a handle on the shared monitor without subscribing to events,
+     * e.g. to query the current network.
+     */
+    public static Handle attach(Context context) {
+        return attach(context, null);
+    }
+
+    /**
+     * Returns a handle on the shared monitor and registers {@code subscriber},
+     * a {@link NetCallback} or an annotated subscriber, see
+     * {@link NetMonitor#register(Object)}, to be called on the main thread.
+     * {@code subscriber} may be null.
+     */
+    public static Handle attach(Context context, Object subscriber) {
+        return attach(context, subscriber, NetExecutors.main());
+    }
+
+    /**
+     * Same as {@link #attach(Context, Object)}, calling {@code subscriber} on
+     * {@code executor}. A subscriber already attached keeps its first executor.
+     */
+    public static Handle attach(Context context, Object subscriber, Executor executor) {
+        synchronized (LOCK) {
+            if (monitor == null) {
+                monitor = new NetMonitor(context.getApplicationContext(), NetExecutors.workHandler());
+            }
+            if (subscriber != null) {
+                Integer count = SUBSCRIBER_COUNTS.get(subscriber);
+                if (count == null) {
+                    monitor.register(subscriber, executor);
+                }
+                SUBSCRIBER_COUNTS.put(subscriber, count == null ? 1 : count + 1);
+            }
+            handleCount++;
+            return new Handle(monitor, subscriber);
+        }
+    }
+
+    /**
+     * Returns the number of live handles, mainly for debugging leaks.
+     */
+    public static int getHandleCount() {
+        synchronized (LOCK) {
+            return handleCount;
+        }
+    }
+
+    private static void detach(Handle handle) {
+        synchronized (LOCK) {
+            if (handle.subscriber != null) {
+                int count = SUBSCRIBER_COUNTS.get(handle.subscriber);
+                if (count == 1) {
+                    SUBSCRIBER_COUNTS.remove(handle.subscriber);
+                    handle.monitor.unregister(handle.subscriber);
+                } else {
+                    SUBSCRIBER_COUNTS.put(handle.subscriber, count - 1);
+                }
+            }
+            if (--handleCount == 0) {
+                monitor.destroy();
+                monitor = null;
+            }
+        }
+    }
+
+    /**
+     * A lightweight reference on the shared monitor. Must be destroyed when the
+     * owning component goes away.
+     */
+    public static final class Handle {
+        private final NetMonitor monitor;
+        private final Object subscriber;
+        // Guarded by LOCK.
+        private boolean destroyed;
+
+        private Handle(NetMonitor monitor, Object subscriber) {
+            this.monitor = monitor;
+            this.subscriber = subscriber;
+        }
+
+        public NetSnapshot getSnapshot() {
+            return monitor.getSnapshot();
+        }
+
+        public List<NetInfo> getActiveNetworkList() {
+            return monitor.getActiveNetworkList();
+        }
+
+        public NetState getCurrentNetworkState() {
+            return monitor.getCurrentNetworkState();
+        }
+
+        public long getDefaultNetId() {
+            return monitor.getDefaultNetId();
+        }
+
+        /**
+         * Unregisters the subscriber of this handle unless another live handle
+         * attached it too, and releases the system registrations if it was the
+         * last handle. Calling it twice has no effect.
+         */
+        public void destroy() {
+            synchronized (LOCK) {
+                if (destroyed) {
+                    return;
+                }
+                destroyed = true;
+                detach(this);
+            }
+        }
+    }
+}
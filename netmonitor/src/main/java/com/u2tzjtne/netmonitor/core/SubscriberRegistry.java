@@ -0,0 +1,313 @@
+package com.u2tzjtne.netmonitor.core;
+
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.metrics.NetMetrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the set of NetCallbacks notified by a NetMonitor.
+ * <p>
+ * Annotated subscribers are bound to their generated {@link NetDispatcher}s
+ * when they are registered, so delivering an event is a plain loop over an
+ * array snapshot: no reflection, no iterator and no lock on the event path.
+ * Registration is rare and copies the array under a lock.
+ * <p>
+ * Subscribers registered with an Executor are called on it; the others are
+ * called synchronously on the thread delivering the event.
+ */
+final class SubscriberRegistry implements NetCallback {
+    static final String DISPATCHER_SUFFIX = "_NetDispatcher";
+
+    private static final Subscription[] EMPTY = new Subscription[0];
+    // The dispatcher resolved per subscriber class: the one generated for the
+    // class itself or its closest annotated superclass, which also calls the
+    // methods it inherits. Looked up once per class, never per event.
+    private static final Map<Class<?>, NetDispatcher<Object>> DISPATCHERS = new HashMap<>();
+
+    private final Object lock = new Object();
+    private volatile Subscription[] subscriptions = EMPTY;
+    // Guarded by lock.
+    private boolean closed;
+
+    /**
+     * Adds {@code subscriber}, called on {@code executor}, or synchronously if
+     * {@code executor} is null. A {@link NetCallback} is registered as is, any
+     * other object must declare at least one {@code @OnNet*} method. Registering
+     * the same subscriber twice has no effect, as well as registering after
+     * {@link #close()}.
+     */
+    void register(Object subscriber, Executor executor) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber == null");
+        }
+        synchronized (lock) {
+            if (closed || indexOf(subscriptions, subscriber) >= 0) {
+                return;
+            }
+            NetCallback callback = subscriber instanceof NetCallback
+                    ? (NetCallback) subscriber
+                    : new AnnotatedSubscriber(subscriber, findDispatcher(subscriber.getClass()));
+            Subscription[] current = subscriptions;
+            Subscription[] updated = new Subscription[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = executor == null
+                    ? new Subscription(subscriber, callback)
+                    : new ExecutorSubscription(subscriber, callback, executor);
+            subscriptions = updated;
+        }
+    }
+
+    /**
+     * Removes {@code subscriber}, returns false if it was not registered.
+     */
+    boolean unregister(Object subscriber) {
+        synchronized (lock) {
+            Subscription[] current = subscriptions;
+            int index = indexOf(current, subscriber);
+            if (index < 0) {
+                return false;
+            }
+            // Events already queued on its executor are dropped.
+            current[index].active = false;
+            if (current.length == 1) {
+                subscriptions = EMPTY;
+                return true;
+            }
+            Subscription[] updated = new Subscription[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            subscriptions = updated;
+            return true;
+        }
+    }
+
+    /**
+     * Removes every subscriber for good. Events delivered from then on, or
+     * already queued on an Executor, are dropped.
+     */
+    void close() {
+        synchronized (lock) {
+            closed = true;
+            for (Subscription subscription : subscriptions) {
+                subscription.active = false;
+            }
+            subscriptions = EMPTY;
+        }
+    }
+
+    boolean isEmpty() {
+        return subscriptions.length == 0;
+    }
+
+    @Override
+    public void onNetChanged(NetType newNetType) {
+        NetMetrics.event(NetMetrics.NET_CHANGED, NetMonitor.INVALID_NET_ID);
+        for (Subscription subscription : subscriptions) {
+            subscription.onNetChanged(newNetType);
+        }
+    }
+
+    @Override
+    public void onNetConnect(NetInfo netInfo) {
+        NetMetrics.event(NetMetrics.NET_CONNECT, netInfo.handle);
+        for (Subscription subscription : subscriptions) {
+            subscription.onNetConnect(netInfo);
+        }
+    }
+
+    @Override
+    public void onNetDisconnect(long networkHandle) {
+        NetMetrics.event(NetMetrics.NET_DISCONNECT, networkHandle);
+        for (Subscription subscription : subscriptions) {
+            subscription.onNetDisconnect(networkHandle);
+        }
+    }
+
+    private static int indexOf(Subscription[] subscriptions, Object subscriber) {
+        for (int i = 0; i < subscriptions.length; i++) {
+            if (subscriptions[i].subscriber == subscriber) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static NetDispatcher<Object> findDispatcher(Class<?> subscriberClass) {
+        synchronized (DISPATCHERS) {
+            NetDispatcher<Object> dispatcher = DISPATCHERS.get(subscriberClass);
+            // Stop at the most derived dispatcher: walking further would call
+            // an overridden and re-annotated method once per level.
+            for (Class<?> cls = subscriberClass; dispatcher == null && cls != null && !isFrameworkClass(cls);
+                 cls = cls.getSuperclass()) {
+                dispatcher = loadDispatcher(cls);
+            }
+            if (dispatcher == null) {
+                throw new IllegalArgumentException(subscriberClass.getName()
+                        + " has no @OnNetChanged, @OnNetConnect or @OnNetDisconnect methods."
+                        + " Is the netmonitor-compiler annotation processor configured?");
+            }
+            DISPATCHERS.put(subscriberClass, dispatcher);
+            return dispatcher;
+        }
+    }
+
+    // Generated dispatchers are typed with their subscriber class, which the
+    // registry only has at runtime.
+    @SuppressWarnings("unchecked")
+    private static NetDispatcher<Object> loadDispatcher(Class<?> cls) {
+        try {
+            Class<?> dispatcherClass = Class.forName(
+                    cls.getName() + DISPATCHER_SUFFIX, true, cls.getClassLoader());
+            return (NetDispatcher<Object>) dispatcherClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create dispatcher for " + cls.getName(), e);
+        }
+    }
+
+    private static boolean isFrameworkClass(Class<?> cls) {
+        String name = cls.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("android.");
+    }
+
+    /**
+     * Binds an annotated subscriber to the dispatcher of its class.
+     */
+    private static final class AnnotatedSubscriber implements NetCallback {
+        private final Object target;
+        private final NetDispatcher<Object> dispatcher;
+
+        AnnotatedSubscriber(Object target, NetDispatcher<Object> dispatcher) {
+            this.target = target;
+            this.dispatcher = dispatcher;
+        }
+
+        @Override
+        public void onNetChanged(NetType newNetType) {
+            dispatcher.onNetChanged(target, newNetType);
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+            dispatcher.onNetConnect(target, netInfo);
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+            dispatcher.onNetDisconnect(target, networkHandle);
+        }
+    }
+
+    /**
+     * A registered subscriber, called synchronously.
+     */
+    private static class Subscription implements NetCallback {
+        final Object subscriber;
+        final NetCallback callback;
+        volatile boolean active = true;
+
+        Subscription(Object subscriber, NetCallback callback) {
+            this.subscriber = subscriber;
+            this.callback = callback;
+        }
+
+        // An event may reach a subscription from an array read before it was
+        // unregistered: check it is still active.
+        @Override
+        public void onNetChanged(NetType newNetType) {
+            if (active) {
+                deliverNetChanged(newNetType, 0);
+            }
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+            if (active) {
+                deliverNetConnect(netInfo, 0);
+            }
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+            if (active) {
+                deliverNetDisconnect(networkHandle, 0);
+            }
+        }
+
+        // postedNs is the time the event was posted to the Executor, 0 if none.
+        final void deliverNetChanged(NetType newNetType, long postedNs) {
+            long start = NetMetrics.startTimer();
+            callback.onNetChanged(newNetType);
+            NetMetrics.subscriberCall(subscriber, NetMetrics.NET_CHANGED, postedNs, start);
+        }
+
+        final void deliverNetConnect(NetInfo netInfo, long postedNs) {
+            long start = NetMetrics.startTimer();
+            callback.onNetConnect(netInfo);
+            NetMetrics.subscriberCall(subscriber, NetMetrics.NET_CONNECT, postedNs, start);
+        }
+
+        final void deliverNetDisconnect(long networkHandle, long postedNs) {
+            long start = NetMetrics.startTimer();
+            callback.onNetDisconnect(networkHandle);
+            NetMetrics.subscriberCall(subscriber, NetMetrics.NET_DISCONNECT, postedNs, start);
+        }
+    }
+
+    /**
+     * A registered subscriber called on its own Executor. Events posted before
+     * it is unregistered but not run yet are dropped.
+     */
+    private static final class ExecutorSubscription extends Subscription {
+        private final Executor executor;
+
+        ExecutorSubscription(Object subscriber, NetCallback callback, Executor executor) {
+            super(subscriber, callback);
+            this.executor = executor;
+        }
+
+        @Override
+        public void onNetChanged(final NetType newNetType) {
+            final long posted = NetMetrics.startTimer();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (active) {
+                        deliverNetChanged(newNetType, posted);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onNetConnect(final NetInfo netInfo) {
+            final long posted = NetMetrics.startTimer();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (active) {
+                        deliverNetConnect(netInfo, posted);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onNetDisconnect(final long networkHandle) {
+            final long posted = NetMetrics.startTimer();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (active) {
+                        deliverNetDisconnect(networkHandle, posted);
+                    }
+                }
+            });
+        }
+    }
+}
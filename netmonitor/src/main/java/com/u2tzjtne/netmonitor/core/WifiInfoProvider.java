@@ -0,0 +1,221 @@
+package com.u2tzjtne.netmonitor.core;
+
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.NetworkCapabilities;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.util.Log;
+
+import com.u2tzjtne.netmonitor.core.delegate.WifiManagerDelegate;
+import com.u2tzjtne.netmonitor.entity.WifiDetails;
+import com.u2tzjtne.netmonitor.util.NetLog;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static android.net.NetworkCapabilities.TRANSPORT_WIFI;
+import static com.u2tzjtne.netmonitor.core.NetMonitor.INVALID_NET_ID;
+import static com.u2tzjtne.netmonitor.core.NetMonitor.TAG;
+
+/**
+ * Keeps the details of the Wi-Fi connection from what the platform pushes:
+ * the WifiInfo carried by the NetworkCapabilities of Wi-Fi networks since
+ * Android 12, the Wi-Fi connection and RSSI broadcasts before. Reading them
+ * makes no binder call.
+ * <p>
+ * Listeners are only called on actual changes. The RSSI moves with every
+ * beacon, so it is reported as a signal level, which only changes once the
+ * RSSI is {@link #HYSTERESIS_DB} past the boundary. Obtained from
+ * {@link NetMonitor#getWifiInfoProvider()}.
+ */
+public class WifiInfoProvider {
+    public static final int SIGNAL_LEVELS = 5;
+    // Lowest RSSI of the levels above 0, the WifiManager.calculateSignalLevel ones.
+    private static final int[] LEVEL_THRESHOLDS = {-88, -77, -66, -55};
+    static final int HYSTERESIS_DB = 3;
+
+    /**
+     * Notified on the thread handling the platform events.
+     */
+    public interface Listener {
+        /**
+         * Called on connection, on disconnection with null, and when anything
+         * but the RSSI changes.
+         */
+        void onWifiChanged(WifiDetails details);
+
+        /**
+         * Called after onWifiChanged when the device moved to another access
+         * point of the same network.
+         */
+        void onRoamed(WifiDetails from, WifiDetails to);
+
+        /**
+         * Called with a level from 0 to {@link #SIGNAL_LEVELS} - 1.
+         */
+        void onSignalLevelChanged(WifiDetails details, int level);
+    }
+
+    private final WifiManagerDelegate delegate;
+    private final Handler workHandler;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Null when the capabilities report the connection.
+    private final BroadcastReceiver receiver;
+    // Guarded by this, details is also read without it.
+    private volatile WifiDetails details;
+    private int level = -1;
+    // The Wi-Fi network the capabilities reported details for.
+    private long handle = INVALID_NET_ID;
+
+    WifiInfoProvider(WifiManagerDelegate delegate, Handler workHandler) {
+        this.delegate = delegate;
+        this.workHandler = workHandler;
+        if (delegate.supportTransportInfo()) {
+            receiver = null;
+        } else {
+            receiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    onWifiBroadcast(intent);
+                }
+            };
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the Wi-Fi connection, null if none.
+     */
+    public WifiDetails getDetails() {
+        return details;
+    }
+
+    /**
+     * Returns the SSID of the Wi-Fi connection, "" if none or hidden.
+     */
+    public String getSSID() {
+        WifiDetails current = details;
+        return current != null ? current.ssid : "";
+    }
+
+    /**
+     * Returns the signal level of the Wi-Fi connection, -1 if none.
+     */
+    public synchronized int getSignalLevel() {
+        return level;
+    }
+
+    void start() {
+        if (receiver == null) {
+            return;
+        }
+        // The connection broadcast is sticky: the current one comes back.
+        Intent sticky = delegate.registerWifiReceiver(receiver, workHandler);
+        if (sticky != null) {
+            onWifiBroadcast(sticky);
+        }
+    }
+
+    void stop() {
+        if (receiver != null) {
+            delegate.unregisterWifiReceiver(receiver);
+        }
+    }
+
+    @SuppressLint("NewApi")
+    void onCapabilitiesChanged(long handle, NetworkCapabilities capabilities) {
+        if (receiver != null || !capabilities.hasTransport(TRANSPORT_WIFI)) {
+            return;
+        }
+        WifiDetails reported = delegate.getWifiDetails(capabilities);
+        if (reported != null) {
+            update(handle, reported);
+        }
+    }
+
+    void onLost(long handle) {
+        boolean current;
+        synchronized (this) {
+            current = receiver == null && handle == this.handle;
+        }
+        if (current) {
+            update(INVALID_NET_ID, null);
+        }
+    }
+
+    private void onWifiBroadcast(Intent intent) {
+        if (WifiManager.RSSI_CHANGED_ACTION.equals(intent.getAction())) {
+            WifiDetails current = details;
+            if (current != null) {
+                update(INVALID_NET_ID, new WifiDetails(current.ssid, current.bssid,
+                        intent.getIntExtra(WifiManager.EXTRA_NEW_RSSI, current.rssi),
+                        current.linkSpeedMbps, current.frequencyMhz));
+            }
+        } else {
+            // Only connected states carry a WifiInfo.
+            update(INVALID_NET_ID, delegate.getWifiDetails(intent));
+        }
+    }
+
+    private void update(long newHandle, WifiDetails updated) {
+        WifiDetails previous;
+        boolean linkChanged;
+        boolean levelChanged;
+        int newLevel;
+        synchronized (this) {
+            previous = details;
+            if (updated == null ? previous == null : updated.equals(previous)) {
+                return;
+            }
+            linkChanged = updated == null || !updated.sameLink(previous);
+            if (updated == null) {
+                newLevel = -1;
+            } else if (linkChanged) {
+                newLevel = levelOf(updated.rssi);
+            } else if (updated.rssi > previous.rssi) {
+                newLevel = Math.max(level, levelOf(updated.rssi - HYSTERESIS_DB));
+            } else {
+                newLevel = Math.min(level, levelOf(updated.rssi + HYSTERESIS_DB));
+            }
+            levelChanged = newLevel != level;
+            details = updated;
+            level = newLevel;
+            handle = newHandle;
+        }
+        if (NetLog.isDebugEnabled() && linkChanged) {
+            Log.d(TAG, "Wi-Fi changed: " + updated);
+        }
+        if (linkChanged) {
+            for (Listener listener : listeners) {
+                listener.onWifiChanged(updated);
+            }
+        }
+        if (updated != null && updated.isRoamFrom(previous)) {
+            for (Listener listener : listeners) {
+                listener.onRoamed(previous, updated);
+            }
+        }
+        if (levelChanged && updated != null) {
+            for (Listener listener : listeners) {
+                listener.onSignalLevelChanged(updated, newLevel);
+            }
+        }
+    }
+
+    private static int levelOf(int rssi) {
+        int level = 0;
+        while (level < LEVEL_THRESHOLDS.length && rssi >= LEVEL_THRESHOLDS[level]) {
+            level++;
+        }
+        return level;
+    }
+}
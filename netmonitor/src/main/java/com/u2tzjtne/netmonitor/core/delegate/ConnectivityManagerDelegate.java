@@ -8,26 +8,45 @@ import android.net.LinkProperties;
 import android.net.Network;
 import android.net.NetworkCapabilities;
 import android.net.NetworkRequest;
+import android.net.ProxyInfo;
+import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.telephony.TelephonyManager;
 import android.util.Log;
 
+import com.u2tzjtne.netmonitor.entity.HttpProxy;
 import com.u2tzjtne.netmonitor.entity.NetInfo;
 import com.u2tzjtne.netmonitor.entity.NetType;
 import com.u2tzjtne.netmonitor.entity.IPAddress;
 import com.u2tzjtne.netmonitor.entity.NetState;
+import com.u2tzjtne.netmonitor.metrics.NetMetrics;
+import com.u2tzjtne.netmonitor.util.NetLog;
 import com.u2tzjtne.netmonitor.util.NetUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static android.net.NetworkCapabilities.NET_CAPABILITY_INTERNET;
+import static android.net.NetworkCapabilities.NET_CAPABILITY_NOT_METERED;
+import static android.net.NetworkCapabilities.NET_CAPABILITY_NOT_ROAMING;
+import static android.net.NetworkCapabilities.NET_CAPABILITY_NOT_VPN;
+import static android.net.NetworkCapabilities.NET_CAPABILITY_TEMPORARILY_NOT_METERED;
+import static android.net.NetworkCapabilities.TRANSPORT_BLUETOOTH;
 import static android.net.NetworkCapabilities.TRANSPORT_CELLULAR;
+import static android.net.NetworkCapabilities.TRANSPORT_ETHERNET;
+import static android.net.NetworkCapabilities.TRANSPORT_VPN;
+import static android.net.NetworkCapabilities.TRANSPORT_WIFI;
 import static com.u2tzjtne.netmonitor.core.NetMonitor.INVALID_NET_ID;
 import static com.u2tzjtne.netmonitor.core.NetMonitor.TAG;
 import static com.u2tzjtne.netmonitor.core.NetMonitor.networkToNetId;
 
 /**
  * Queries the ConnectivityManager for information about the current connection.
+ * <p>
+ * NetMonitor makes all its connectivity queries through this class: a subclass
+ * passed to its constructor replaces the platform, e.g. on a plain JVM.
  */
 public class ConnectivityManagerDelegate {
     /**
@@ -35,6 +54,10 @@ public class ConnectivityManagerDelegate {
      * gracefully below.
      */
     private final ConnectivityManager connectivityManager;
+    // The data network type and its override reported by TelephonyDisplayInfo,
+    // applied to the cellular networks pushed by the platform.
+    private volatile int dataNetworkType = TelephonyManager.NETWORK_TYPE_UNKNOWN;
+    private volatile int overrideNetworkType;
 
     public ConnectivityManagerDelegate(Context context) {
         connectivityManager =
@@ -49,7 +72,7 @@ public class ConnectivityManagerDelegate {
         if (connectivityManager == null) {
             return new NetState(false, -1, -1);
         }
-        return getNetworkState(connectivityManager.getActiveNetworkInfo());
+        return getNetworkState(getActiveNetworkInfo());
     }
 
     /**
@@ -61,7 +84,86 @@ public class ConnectivityManagerDelegate {
         if (connectivityManager == null) {
             return new NetState(false, -1, -1);
         }
-        return getNetworkState(connectivityManager.getNetworkInfo(network));
+        return getNetworkState(getNetworkInfo(network));
+    }
+
+    /**
+     * Returns connection type and status information derived from the
+     * capabilities the platform pushed for a network, without any binder call.
+     * The type matches what NetworkInfo reports; the cellular subtype is the
+     * one set with {@link #setDisplayInfo(int, int)}, or else NETWORK_TYPE_UNKNOWN.
+     */
+    @SuppressLint("NewApi")
+    public NetState getNetworkState(NetworkCapabilities capabilities) {
+        return getNetworkState(capabilities, null);
+    }
+
+    /**
+     * Same as {@link #getNetworkState(NetworkCapabilities)}, returning
+     * {@code previous} itself if the state is unchanged. Without display info
+     * a cellular network keeps the subtype of {@code previous}: the bandwidth
+     * in the capabilities is a live estimate, not the radio technology.
+     */
+    @SuppressLint("NewApi")
+    public NetState getNetworkState(NetworkCapabilities capabilities, NetState previous) {
+        if (capabilities == null) {
+            return new NetState(false, -1, -1);
+        }
+        int type;
+        int subtype = 0;
+        int overrideSubtype = 0;
+        // A VPN also carries the transports of its underlying networks: report
+        // their type, as getActiveNetworkInfo() does, TYPE_VPN if it has none.
+        if (capabilities.hasTransport(TRANSPORT_WIFI)) {
+            type = ConnectivityManager.TYPE_WIFI;
+        } else if (capabilities.hasTransport(TRANSPORT_ETHERNET)) {
+            type = ConnectivityManager.TYPE_ETHERNET;
+        } else if (capabilities.hasTransport(TRANSPORT_BLUETOOTH)) {
+            type = ConnectivityManager.TYPE_BLUETOOTH;
+        } else if (capabilities.hasTransport(TRANSPORT_CELLULAR)) {
+            type = ConnectivityManager.TYPE_MOBILE;
+            subtype = dataNetworkType;
+            if (subtype != TelephonyManager.NETWORK_TYPE_UNKNOWN) {
+                overrideSubtype = overrideNetworkType;
+            } else if (previous != null && previous.isConnected()
+                    && previous.getNetworkType() == ConnectivityManager.TYPE_MOBILE) {
+                return previous;
+            }
+        } else if (capabilities.hasTransport(TRANSPORT_VPN)) {
+            type = ConnectivityManager.TYPE_VPN;
+        } else {
+            type = -1;
+        }
+        if (previous != null && previous.isConnected() && previous.getNetworkType() == type
+                && previous.getNetworkSubType() == subtype
+                && previous.getOverrideNetworkSubType() == overrideSubtype) {
+            return previous;
+        }
+        return new NetState(true, type, subtype, overrideSubtype);
+    }
+
+    /**
+     * Same as {@link #getNetworkState(NetworkCapabilities, NetState)}, reading
+     * the subtype of a cellular {@code network} from its NetworkInfo, a binder
+     * call, when neither the display info nor {@code previous} has it. Meant
+     * to be called with a null {@code previous} once per default network change.
+     */
+    public NetState getNetworkState(Network network, NetworkCapabilities capabilities, NetState previous) {
+        NetState netState = getNetworkState(capabilities, previous);
+        if (netState != previous && isUnclassifiedMobile(netState)) {
+            return new NetState(true, ConnectivityManager.TYPE_MOBILE, getMobileSubtype(network));
+        }
+        return netState;
+    }
+
+    /**
+     * Sets the data network type and TelephonyDisplayInfo override type of the
+     * data subscription, used for the cellular networks from then on.
+     * With NETWORK_TYPE_UNKNOWN they keep the subtype they had.
+     */
+    public void setDisplayInfo(int networkType, int overrideNetworkType) {
+        this.overrideNetworkType = overrideNetworkType;
+        this.dataNetworkType = networkType;
     }
 
     /**
@@ -83,7 +185,10 @@ public class ConnectivityManagerDelegate {
         if (connectivityManager == null) {
             return new Network[0];
         }
-        return connectivityManager.getAllNetworks();
+        long start = NetMetrics.startTimer();
+        Network[] networks = connectivityManager.getAllNetworks();
+        NetMetrics.platformCall(NetMetrics.GET_ALL_NETWORKS, start);
+        return networks;
     }
 
     public List<NetInfo> getActiveNetworkList() {
@@ -114,7 +219,7 @@ public class ConnectivityManagerDelegate {
         // API to return the NetInfo for the default network. To
         // determine the default network one can find the network with
         // type matching that of the default network.
-        final android.net.NetworkInfo defaultNetworkInfo = connectivityManager.getActiveNetworkInfo();
+        final android.net.NetworkInfo defaultNetworkInfo = getActiveNetworkInfo();
         if (defaultNetworkInfo == null) {
             return INVALID_NET_ID;
         }
@@ -124,7 +229,7 @@ public class ConnectivityManagerDelegate {
             if (!hasInternetCapability(network)) {
                 continue;
             }
-            final android.net.NetworkInfo networkInfo = connectivityManager.getNetworkInfo(network);
+            final android.net.NetworkInfo networkInfo = getNetworkInfo(network);
             if (networkInfo != null && networkInfo.getType() == defaultNetworkInfo.getType()) {
                 // There should not be multiple connected networks of the
                 // same type. At least as of Android Marshmallow this is
@@ -140,9 +245,30 @@ public class ConnectivityManagerDelegate {
         return defaultNetId;
     }
 
-    @SuppressLint("NewApi")
     public NetInfo networkToInfo(Network network) {
+        return networkToInfo(network, null);
+    }
+
+    /**
+     * Same as {@link #networkToInfo(Network)}, but returns {@code previous} itself
+     * when the network still has the same interface name, type and addresses, so
+     * an unchanged network costs no NetInfo, array or address copy.
+     */
+    public NetInfo networkToInfo(Network network, NetInfo previous) {
+        return networkToInfo(network, (Network) null, null, previous);
+    }
+
+    /**
+     * Same as {@link #networkToInfo(Network, NetInfo)}, with the network a VPN
+     * runs over and its capabilities, which the platform doesn't tell apps. A
+     * VPN gets the type of that network, as with getActiveNetworkInfo().
+     */
+    @SuppressLint("NewApi")
+    public NetInfo networkToInfo(Network network, Network underlying,
+                                 NetworkCapabilities underlyingCapabilities, NetInfo previous) {
+        long start = NetMetrics.startTimer();
         LinkProperties linkProperties = connectivityManager.getLinkProperties(network);
+        NetMetrics.platformCall(NetMetrics.GET_LINK_PROPERTIES, start);
         // getLinkProperties will return null if the network is unknown.
         if (linkProperties == null) {
             Log.w(TAG, "Detected unknown network: " + network.toString());
@@ -152,24 +278,185 @@ public class ConnectivityManagerDelegate {
             Log.w(TAG, "Null interface name for network " + network.toString());
             return null;
         }
-        NetState netState = getNetworkState(network);
+        android.net.NetworkInfo networkInfo = getNetworkInfo(network);
+        start = NetMetrics.startTimer();
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        NetMetrics.platformCall(NetMetrics.GET_NETWORK_CAPABILITIES, start);
+        boolean roaming = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                ? isRoaming(capabilities) : networkInfo != null && networkInfo.isRoaming();
+        return buildNetInfo(network, linkProperties, getNetworkState(networkInfo), capabilities,
+                roaming, underlying, underlyingCapabilities, previous);
+    }
+
+    /**
+     * Same as {@link #networkToInfo(Network, NetInfo)}, from the LinkProperties
+     * and NetworkCapabilities the platform pushed for {@code network} instead of
+     * querying them.
+     */
+    public NetInfo networkToInfo(Network network, LinkProperties linkProperties,
+                                 NetworkCapabilities capabilities, NetInfo previous) {
+        return networkToInfo(network, linkProperties, capabilities, null, null, previous);
+    }
+
+    /**
+     * Same as above, with the network a VPN runs over and its capabilities.
+     */
+    @SuppressLint("NewApi")
+    public NetInfo networkToInfo(Network network, LinkProperties linkProperties,
+                                 NetworkCapabilities capabilities, Network underlying,
+                                 NetworkCapabilities underlyingCapabilities, NetInfo previous) {
+        if (linkProperties.getInterfaceName() == null) {
+            Log.w(TAG, "Null interface name for network " + network.toString());
+            return null;
+        }
+        return buildNetInfo(network, linkProperties, getNetworkState(capabilities), capabilities,
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && isRoaming(capabilities),
+                underlying, underlyingCapabilities, previous);
+    }
+
+    @SuppressLint("NewApi")
+    private NetInfo buildNetInfo(Network network, LinkProperties linkProperties, NetState netState,
+                                 NetworkCapabilities capabilities, boolean roaming, Network underlying,
+                                 NetworkCapabilities underlyingCapabilities, NetInfo previous) {
+        String interfaceName = linkProperties.getInterfaceName();
+        Network cellular = network;
+        if (netState.getNetworkType() == ConnectivityManager.TYPE_VPN && underlyingCapabilities != null) {
+            // A VPN without the transports of its underlying network.
+            netState = getNetworkState(underlyingCapabilities);
+            cellular = underlying;
+        }
         NetType netType = NetUtils.getConnectionType(netState);
+        if (isUnclassifiedMobile(netState)) {
+            // Derived from capabilities without display info: keep the generation
+            // the network had, read it from NetworkInfo the first time.
+            netType = previous != null && NetUtils.isCellular(previous.type) ? previous.type
+                    : NetUtils.getConnectionType(new NetState(true, ConnectivityManager.TYPE_MOBILE,
+                    getMobileSubtype(cellular)));
+        }
         if (netType == NetType.NET_NONE) {
             // This may not be an error. The OS may signal a network event with connection type
             // NONE when the network disconnects.
-            Log.d(TAG, "Network " + network.toString() + " is disconnected");
+            if (NetLog.isDebugEnabled()) {
+                Log.d(TAG, "Network " + network.toString() + " is disconnected");
+            }
             return null;
         }
+        boolean vpn = capabilities != null ? capabilities.hasTransport(TRANSPORT_VPN)
+                : netState.getNetworkType() == ConnectivityManager.TYPE_VPN;
+        boolean metered = isMetered(capabilities);
+        long underlyingHandle = vpn && underlying != null ? networkToNetId(underlying) : INVALID_NET_ID;
+        ProxyInfo proxyInfo = linkProperties.getHttpProxy();
+        if (previous != null && previous.type == netType && previous.name.equals(interfaceName)
+                && sameAddresses(previous.ipAddresses, linkProperties.getLinkAddresses())
+                && previous.vpn == vpn && previous.metered == metered && previous.roaming == roaming
+                && previous.underlyingHandle == underlyingHandle
+                && sameProxy(previous.httpProxy, proxyInfo)) {
+            return previous;
+        }
         // Some android device may return a NET_UNKNOWN_CELLULAR or NET_UNKNOWN type,
         // which appears to be usable. Just log them here.
-        if (netType == NetType.NET_UNKNOWN
-                || netType == NetType.NET_UNKNOWN_CELLULAR) {
+        if ((netType == NetType.NET_UNKNOWN || netType == NetType.NET_UNKNOWN_CELLULAR)
+                && NetLog.isDebugEnabled()) {
             Log.d(TAG, "Network " + network.toString() + " connection type is " + netType
                     + " because it has type " + netState.getNetworkType() + " and subtype "
                     + netState.getNetworkSubType());
         }
-        return new NetInfo(linkProperties.getInterfaceName(), netType,
-                networkToNetId(network), getIPAddresses(linkProperties));
+        // Interface names are a handful of values (wlan0, rmnet_data0...), share them
+        // instead of keeping a copy per NetInfo.
+        return new NetInfo(interfaceName.intern(), netType,
+                networkToNetId(network), getIPAddresses(linkProperties),
+                vpn, metered, roaming, underlyingHandle, toHttpProxy(proxyInfo));
+    }
+
+    private static boolean isUnclassifiedMobile(NetState netState) {
+        return netState.isConnected() && netState.getNetworkType() == ConnectivityManager.TYPE_MOBILE
+                && netState.getNetworkSubType() == TelephonyManager.NETWORK_TYPE_UNKNOWN;
+    }
+
+    /**
+     * Returns the subtype NetworkInfo reports for a cellular {@code network},
+     * NETWORK_TYPE_UNKNOWN if it has none.
+     */
+    private int getMobileSubtype(Network network) {
+        android.net.NetworkInfo networkInfo = network != null && connectivityManager != null
+                ? getNetworkInfo(network) : null;
+        return networkInfo != null && networkInfo.getType() == ConnectivityManager.TYPE_MOBILE
+                ? networkInfo.getSubtype() : TelephonyManager.NETWORK_TYPE_UNKNOWN;
+    }
+
+    @SuppressLint("NewApi")
+    private static boolean isMetered(NetworkCapabilities capabilities) {
+        if (capabilities == null) {
+            return false;
+        }
+        // Unmetered plans on a metered network (e.g. 5G) are reported apart since R.
+        return !capabilities.hasCapability(NET_CAPABILITY_NOT_METERED)
+                && !(Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                && capabilities.hasCapability(NET_CAPABILITY_TEMPORARILY_NOT_METERED));
+    }
+
+    /**
+     * Only meaningful since Pie, which added NET_CAPABILITY_NOT_ROAMING.
+     */
+    private static boolean isRoaming(NetworkCapabilities capabilities) {
+        return capabilities != null && !capabilities.hasCapability(NET_CAPABILITY_NOT_ROAMING);
+    }
+
+    @SuppressLint("NewApi")
+    private static boolean sameProxy(HttpProxy httpProxy, ProxyInfo proxyInfo) {
+        if (httpProxy == null || proxyInfo == null) {
+            return httpProxy == null && proxyInfo == null;
+        }
+        String pacFileUrl = getPacFileUrl(proxyInfo);
+        return httpProxy.port == proxyInfo.getPort()
+                && (httpProxy.host == null ? proxyInfo.getHost() == null : httpProxy.host.equals(proxyInfo.getHost()))
+                && (httpProxy.pacFileUrl == null ? pacFileUrl == null : httpProxy.pacFileUrl.equals(pacFileUrl))
+                && Arrays.equals(httpProxy.exclusionList, proxyInfo.getExclusionList());
+    }
+
+    @SuppressLint("NewApi")
+    private static HttpProxy toHttpProxy(ProxyInfo proxyInfo) {
+        if (proxyInfo == null) {
+            return null;
+        }
+        return new HttpProxy(proxyInfo.getHost(), proxyInfo.getPort(), getPacFileUrl(proxyInfo),
+                proxyInfo.getExclusionList());
+    }
+
+    @SuppressLint("NewApi")
+    private static String getPacFileUrl(ProxyInfo proxyInfo) {
+        Uri pacFileUrl = proxyInfo.getPacFileUrl();
+        return pacFileUrl == null || Uri.EMPTY.equals(pacFileUrl) ? null : pacFileUrl.toString();
+    }
+
+    private android.net.NetworkInfo getActiveNetworkInfo() {
+        long start = NetMetrics.startTimer();
+        android.net.NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        NetMetrics.platformCall(NetMetrics.GET_ACTIVE_NETWORK_INFO, start);
+        return networkInfo;
+    }
+
+    @SuppressLint("NewApi")
+    private android.net.NetworkInfo getNetworkInfo(Network network) {
+        long start = NetMetrics.startTimer();
+        android.net.NetworkInfo networkInfo = connectivityManager.getNetworkInfo(network);
+        NetMetrics.platformCall(NetMetrics.GET_NETWORK_INFO, start);
+        return networkInfo;
+    }
+
+    @SuppressLint("NewApi")
+    private static boolean sameAddresses(IPAddress[] ipAddresses, List<LinkAddress> linkAddresses) {
+        if (ipAddresses.length != linkAddresses.size()) {
+            return false;
+        }
+        for (int i = 0; i < ipAddresses.length; i++) {
+            LinkAddress linkAddress = linkAddresses.get(i);
+            if (!ipAddresses[i].sameAddress(linkAddress.getAddress())
+                    || ipAddresses[i].prefixLength != linkAddress.getPrefixLength()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -181,7 +468,9 @@ public class ConnectivityManagerDelegate {
         if (connectivityManager == null) {
             return false;
         }
+        long start = NetMetrics.startTimer();
         final NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        NetMetrics.platformCall(NetMetrics.GET_NETWORK_CAPABILITIES, start);
         return capabilities != null && capabilities.hasCapability(NET_CAPABILITY_INTERNET);
     }
 
@@ -190,9 +479,39 @@ public class ConnectivityManagerDelegate {
      */
     @SuppressLint("NewApi")
     public void registerNetworkCallback(ConnectivityManager.NetworkCallback networkCallback) {
-        connectivityManager.registerNetworkCallback(
-                new NetworkRequest.Builder().addCapability(NET_CAPABILITY_INTERNET).build(),
-                networkCallback);
+        registerNetworkCallback(networkCallback, null);
+    }
+
+    /**
+     * Registers {@code networkCallback} to be called on {@code handler}. The Handler
+     * is only honoured on Oreo and newer releases, older releases call back on the
+     * ConnectivityManager thread. Only callable on Lollipop and newer releases.
+     */
+    @SuppressLint("NewApi")
+    public void registerNetworkCallback(ConnectivityManager.NetworkCallback networkCallback,
+                                        Handler handler) {
+        // Requests exclude VPNs by default.
+        NetworkRequest request = new NetworkRequest.Builder().addCapability(NET_CAPABILITY_INTERNET)
+                .removeCapability(NET_CAPABILITY_NOT_VPN).build();
+        if (handler != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            connectivityManager.registerNetworkCallback(request, networkCallback, handler);
+        } else {
+            connectivityManager.registerNetworkCallback(request, networkCallback);
+        }
+    }
+
+    /**
+     * Registers {@code networkCallback} to track the default network, called on
+     * {@code handler}. Only callable when {@link #supportDefaultNetworkCallback()}.
+     */
+    @SuppressLint("NewApi")
+    public void registerDefaultNetworkCallback(ConnectivityManager.NetworkCallback networkCallback,
+                                               Handler handler) {
+        if (handler != null) {
+            connectivityManager.registerDefaultNetworkCallback(networkCallback, handler);
+        } else {
+            connectivityManager.registerDefaultNetworkCallback(networkCallback);
+        }
     }
 
     /**
@@ -207,11 +526,11 @@ public class ConnectivityManagerDelegate {
 
     @SuppressLint("NewApi")
     public IPAddress[] getIPAddresses(LinkProperties linkProperties) {
-        IPAddress[] ipAddresses = new IPAddress[linkProperties.getLinkAddresses().size()];
-        int i = 0;
-        for (LinkAddress linkAddress : linkProperties.getLinkAddresses()) {
-            ipAddresses[i] = new IPAddress(linkAddress.getAddress().getAddress());
-            ++i;
+        List<LinkAddress> linkAddresses = linkProperties.getLinkAddresses();
+        IPAddress[] ipAddresses = new IPAddress[linkAddresses.size()];
+        for (int i = 0; i < ipAddresses.length; i++) {
+            LinkAddress linkAddress = linkAddresses.get(i);
+            ipAddresses[i] = new IPAddress(linkAddress.getAddress(), linkAddress.getPrefixLength());
         }
         return ipAddresses;
     }
@@ -227,4 +546,14 @@ public class ConnectivityManagerDelegate {
     public boolean supportNetworkCallback() {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && connectivityManager != null;
     }
+
+    /**
+     * Returns true if the default network can be tracked with
+     * registerDefaultNetworkCallback alone. Requires Oreo, where it accepts a
+     * Handler and onAvailable is always followed by onCapabilitiesChanged and
+     * onLinkPropertiesChanged.
+     */
+    public boolean supportDefaultNetworkCallback() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && connectivityManager != null;
+    }
 }
@@ -0,0 +1,116 @@
+package com.u2tzjtne.netmonitor.core.delegate;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Build;
+import android.telephony.CellSignalStrength;
+import android.telephony.CellSignalStrengthLte;
+import android.telephony.CellSignalStrengthNr;
+import android.telephony.SignalStrength;
+import android.telephony.TelephonyCallback;
+import android.telephony.TelephonyDisplayInfo;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import com.u2tzjtne.netmonitor.entity.CellSignal;
+
+import java.util.concurrent.Executor;
+
+import static com.u2tzjtne.netmonitor.core.NetMonitor.TAG;
+
+/**
+ * Listens to the TelephonyManager for the radio technology and signal of the
+ * data subscription. May be subclassed to fake it, see
+ * {@link ConnectivityManagerDelegate}.
+ */
+public class TelephonyManagerDelegate {
+    /**
+     * Called on the Executor passed to {@link #registerRadioListener}.
+     */
+    public interface RadioListener {
+        /**
+         * @param networkType         a TelephonyManager.NETWORK_TYPE_XXX.
+         * @param overrideNetworkType a TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_XXX.
+         */
+        void onDisplayInfoChanged(int networkType, int overrideNetworkType);
+
+        /**
+         * Called with {@link CellSignal#UNAVAILABLE} for the values not reported.
+         */
+        void onSignalChanged(boolean nr, int rsrpDbm, int sinrDb);
+    }
+
+    // Null in some rare Android systems, see ConnectivityManagerDelegate.
+    private final TelephonyManager telephonyManager;
+    // A RadioCallback, only loaded on Android 12 and newer releases.
+    private Object callback;
+
+    public TelephonyManagerDelegate(Context context) {
+        telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+    }
+
+    /**
+     * Returns true if the display info and signal can be listened to: since
+     * Android 12, whose TelephonyCallback reports them without permission.
+     */
+    public boolean supportRadioListener() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && telephonyManager != null;
+    }
+
+    @SuppressLint("NewApi")
+    public void registerRadioListener(RadioListener listener, Executor executor) {
+        if (!supportRadioListener() || callback != null) {
+            return;
+        }
+        RadioCallback radioCallback = new RadioCallback(listener);
+        try {
+            telephonyManager.registerTelephonyCallback(executor, radioCallback);
+            callback = radioCallback;
+        } catch (SecurityException e) {
+            Log.w(TAG, "Unable to listen to the radio technology.");
+        }
+    }
+
+    @SuppressLint("NewApi")
+    public void unregisterRadioListener() {
+        if (callback != null) {
+            telephonyManager.unregisterTelephonyCallback((TelephonyCallback) callback);
+            callback = null;
+        }
+    }
+
+    @SuppressLint("NewApi")
+    private static class RadioCallback extends TelephonyCallback
+            implements TelephonyCallback.DisplayInfoListener, TelephonyCallback.SignalStrengthsListener {
+        private final RadioListener listener;
+
+        RadioCallback(RadioListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onDisplayInfoChanged(TelephonyDisplayInfo telephonyDisplayInfo) {
+            listener.onDisplayInfoChanged(telephonyDisplayInfo.getNetworkType(),
+                    telephonyDisplayInfo.getOverrideNetworkType());
+        }
+
+        @Override
+        public void onSignalStrengthsChanged(SignalStrength signalStrength) {
+            // A 5G NSA connection reports its LTE anchor too: NR comes first.
+            CellSignalStrengthLte lte = null;
+            for (CellSignalStrength cellSignalStrength : signalStrength.getCellSignalStrengths()) {
+                if (cellSignalStrength instanceof CellSignalStrengthNr) {
+                    CellSignalStrengthNr nr = (CellSignalStrengthNr) cellSignalStrength;
+                    listener.onSignalChanged(true, nr.getSsRsrp(), nr.getSsSinr());
+                    return;
+                }
+                if (cellSignalStrength instanceof CellSignalStrengthLte) {
+                    lte = (CellSignalStrengthLte) cellSignalStrength;
+                }
+            }
+            if (lte != null) {
+                listener.onSignalChanged(false, lte.getRsrp(), lte.getRssnr());
+            }
+        }
+    }
+}
@@ -1,24 +1,117 @@
 package com.u2tzjtne.netmonitor.core.delegate;
 
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.net.NetworkCapabilities;
+import android.net.TransportInfo;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.Handler;
+
+import com.u2tzjtne.netmonitor.entity.WifiDetails;
+import com.u2tzjtne.netmonitor.metrics.NetMetrics;
 
 /**
- * Queries the WifiManager for SSID of the current Wifi connection.
+ * Queries the WifiManager for SSID of the current Wifi connection. May be
+ * subclassed to fake it, see {@link ConnectivityManagerDelegate}.
  */
 public class WifiManagerDelegate {
+    // WifiManager.UNKNOWN_SSID, reported when the SSID is hidden from the app.
+    public static final String UNKNOWN_SSID = "<unknown ssid>";
+    // WifiInfo.DEFAULT_MAC_ADDRESS, reported when the BSSID is hidden from the app.
+    private static final String DEFAULT_BSSID = "02:00:00:00:00:00";
+
     private final Context context;
 
     public WifiManagerDelegate(Context context) {
         this.context = context;
     }
 
+    /**
+     * Returns the SSID carried by the NetworkCapabilities of a Wi-Fi network, or
+     * null if they don't carry it: before Android 12, where WifiInfo became a
+     * TransportInfo, or when the app may not see it (the platform then reports
+     * {@link #UNKNOWN_SSID}). NetMonitor registers its callbacks with
+     * FLAG_INCLUDE_LOCATION_INFO, so the app only needs the location permission.
+     */
+    @SuppressLint("NewApi")
+    public String getWifiSSID(NetworkCapabilities capabilities) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || capabilities == null) {
+            return null;
+        }
+        TransportInfo transportInfo = capabilities.getTransportInfo();
+        if (transportInfo instanceof WifiInfo) {
+            String ssid = ((WifiInfo) transportInfo).getSSID();
+            if (ssid != null && !UNKNOWN_SSID.equals(ssid)) {
+                return ssid;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the NetworkCapabilities of Wi-Fi networks carry their
+     * WifiInfo, updated as the connection changes. It is the case since
+     * Android 12; before, the Wi-Fi broadcasts report it.
+     */
+    public boolean supportTransportInfo() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S;
+    }
+
+    /**
+     * Returns the connection carried by the NetworkCapabilities of a Wi-Fi
+     * network, or null if they don't carry it.
+     */
+    @SuppressLint("NewApi")
+    public WifiDetails getWifiDetails(NetworkCapabilities capabilities) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || capabilities == null) {
+            return null;
+        }
+        TransportInfo transportInfo = capabilities.getTransportInfo();
+        return transportInfo instanceof WifiInfo ? toWifiDetails((WifiInfo) transportInfo) : null;
+    }
+
+    /**
+     * Returns the connection reported by a NETWORK_STATE_CHANGED_ACTION
+     * broadcast, or null if it reports none.
+     */
+    public WifiDetails getWifiDetails(Intent intent) {
+        WifiInfo wifiInfo = intent.getParcelableExtra(WifiManager.EXTRA_WIFI_INFO);
+        return wifiInfo != null ? toWifiDetails(wifiInfo) : null;
+    }
+
+    /**
+     * Registers {@code receiver} for the Wi-Fi connection and RSSI broadcasts,
+     * called on {@code handler} if not null. Returns the last connection
+     * broadcast, if any.
+     */
+    public Intent registerWifiReceiver(BroadcastReceiver receiver, Handler handler) {
+        IntentFilter filter = new IntentFilter(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+        filter.addAction(WifiManager.RSSI_CHANGED_ACTION);
+        long start = NetMetrics.startTimer();
+        Intent intent = context.registerReceiver(receiver, filter, null, handler);
+        NetMetrics.platformCall(NetMetrics.GET_WIFI_INFO, start);
+        return intent;
+    }
+
+    public void unregisterWifiReceiver(BroadcastReceiver receiver) {
+        context.unregisterReceiver(receiver);
+    }
+
+    /**
+     * Queries the SSID with a sticky broadcast registration, a binder call.
+     * NetMonitor reads it from its {@link com.u2tzjtne.netmonitor.core.WifiInfoProvider}
+     * instead.
+     */
     public String getWifiSSID() {
+        long start = NetMetrics.startTimer();
         final Intent intent = context.registerReceiver(
                 null, new IntentFilter(WifiManager.NETWORK_STATE_CHANGED_ACTION));
+        NetMetrics.platformCall(NetMetrics.GET_WIFI_INFO, start);
         if (intent != null) {
             final WifiInfo wifiInfo = intent.getParcelableExtra(WifiManager.EXTRA_WIFI_INFO);
             if (wifiInfo != null) {
@@ -30,4 +123,12 @@ public class WifiManagerDelegate {
         }
         return "";
     }
+
+    private static WifiDetails toWifiDetails(WifiInfo wifiInfo) {
+        String ssid = wifiInfo.getSSID();
+        String bssid = wifiInfo.getBSSID();
+        return new WifiDetails(ssid != null && !UNKNOWN_SSID.equals(ssid) ? ssid : "",
+                DEFAULT_BSSID.equals(bssid) ? null : bssid,
+                wifiInfo.getRssi(), wifiInfo.getLinkSpeed(), wifiInfo.getFrequency());
+    }
 }
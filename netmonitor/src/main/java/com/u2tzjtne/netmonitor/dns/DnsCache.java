@@ -0,0 +1,248 @@
+package com.u2tzjtne.netmonitor.dns;
+
+import android.annotation.SuppressLint;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.os.SystemClock;
+import android.util.LongSparseArray;
+
+import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.u2tzjtne.netmonitor.core.NetMonitor.INVALID_NET_ID;
+
+/**
+ * Caches host name resolutions per network, so a network change doesn't
+ * flush what was resolved on the other networks.
+ * <p>
+ * Each network handle has its own LRU partition, filled through a
+ * {@link DnsResolver} bound to that network. Entries expire after a TTL: the
+ * platform resolver doesn't expose record TTLs, so it is the same for all. A
+ * partition is only cleared when the DNS servers or addresses in the
+ * LinkProperties of its network change, not on every callback. When a network
+ * is lost its partition is parked, and adopted by the next network with the
+ * same interface and DNS servers, e.g. the same Wi-Fi coming back, so its first
+ * requests don't wait for DNS.
+ */
+@SuppressLint("NewApi")
+public class DnsCache {
+    public static final long DEFAULT_TTL_MS = 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 128;
+    // Partitions of lost networks kept for their return.
+    static final int MAX_PARKED = 4;
+
+    private final NetMonitor monitor;
+    private final DnsResolver resolver;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final Object lock = new Object();
+    // Guarded by lock.
+    private final LongSparseArray<Partition> partitions = new LongSparseArray<>();
+    // Partitions of lost networks by identity, the least recently lost first.
+    private final LinkedHashMap<String, Partition> parked = new LinkedHashMap<String, Partition>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Partition> eldest) {
+            return size() > MAX_PARKED;
+        }
+    };
+    private final NetCallback netCallback = new NetCallback() {
+        @Override
+        public void onNetChanged(NetType newNetType) {
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+            // Link changes are checked on lookup: a DNS server change alone
+            // doesn't change the NetInfo.
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+            synchronized (lock) {
+                Partition partition = partitions.get(networkHandle);
+                partitions.remove(networkHandle);
+                if (partition != null && partition.identity != null && !partition.entries.isEmpty()) {
+                    parked.put(partition.identity, partition);
+                }
+            }
+        }
+    };
+
+    public DnsCache(NetMonitor monitor) {
+        this(monitor, new NetworkDnsResolver(), DEFAULT_TTL_MS, DEFAULT_MAX_ENTRIES);
+    }
+
+    public DnsCache(NetMonitor monitor, DnsResolver resolver, long ttlMs, int maxEntriesPerNetwork) {
+        if (maxEntriesPerNetwork <= 0) {
+            throw new IllegalArgumentException("maxEntriesPerNetwork must be positive");
+        }
+        this.monitor = monitor;
+        this.resolver = resolver;
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntriesPerNetwork;
+        monitor.register(netCallback);
+    }
+
+    /**
+     * Resolves {@code host} on the default network, without caching it while
+     * the default network is not tracked yet.
+     */
+    public InetAddress[] lookup(String host) throws UnknownHostException {
+        long handle = monitor.getDefaultNetId();
+        if (handle != INVALID_NET_ID && monitor.getNetwork(handle) == null) {
+            return resolver.resolve(null, host);
+        }
+        return lookup(handle, host);
+    }
+
+    /**
+     * Resolves {@code host} on the network with {@code handle}, from the cache
+     * if it has a fresh entry. Blocks while resolving. Without a network the
+     * default one is used and nothing is cached.
+     *
+     * @throws UnknownHostException also if the network with {@code handle} is
+     *                              not connected: resolving on the default
+     *                              network instead would hand out addresses
+     *                              the caller can't reach on its network.
+     */
+    public InetAddress[] lookup(long handle, String host) throws UnknownHostException {
+        if (handle == INVALID_NET_ID) {
+            return resolver.resolve(null, host);
+        }
+        Network network = monitor.getNetwork(handle);
+        LinkProperties linkProperties = monitor.getLinkProperties(handle);
+        long now = SystemClock.elapsedRealtime();
+        Partition partition;
+        synchronized (lock) {
+            // Checked under lock: a network dropped from the NetMonitor after
+            // this still gets its onNetDisconnect, which removes the partition,
+            // whereas one created for a network already gone would stay.
+            if (network == null || monitor.getNetwork(handle) == null) {
+                throw new UnknownHostException(host + ": network " + handle + " is not connected");
+            }
+            partition = getPartition(handle, linkProperties);
+            CacheEntry entry = partition.entries.get(host);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    return entry.addresses.clone();
+                }
+                partition.entries.remove(host);
+            }
+        }
+        InetAddress[] addresses = resolver.resolve(network, host);
+        synchronized (lock) {
+            // Dropped if the network was lost or its partition cleared meanwhile.
+            if (partitions.get(handle) == partition && partition.linkProperties == linkProperties) {
+                partition.entries.put(host, new CacheEntry(addresses.clone(), now + ttlMs));
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Drops the entries of the network with {@code handle}.
+     */
+    public void invalidate(long handle) {
+        synchronized (lock) {
+            Partition partition = partitions.get(handle);
+            if (partition != null) {
+                partition.entries.clear();
+            }
+        }
+    }
+
+    public void destroy() {
+        monitor.unregister(netCallback);
+        synchronized (lock) {
+            partitions.clear();
+            parked.clear();
+        }
+    }
+
+    /**
+     * Returns the partition of {@code handle}, created, adopted from a parked
+     * one or cleared as its link properties require. Must hold lock.
+     */
+    private Partition getPartition(long handle, LinkProperties linkProperties) {
+        Partition partition = partitions.get(handle);
+        if (partition != null && partition.linkProperties == linkProperties) {
+            return partition;
+        }
+        String identity = identity(linkProperties);
+        String fingerprint = identity != null ? identity + addresses(linkProperties) : null;
+        if (partition == null) {
+            partition = identity != null ? parked.remove(identity) : null;
+            if (partition == null) {
+                partition = new Partition(maxEntries);
+            }
+            partitions.put(handle, partition);
+        } else if (fingerprint == null || !fingerprint.equals(partition.fingerprint)) {
+            partition.entries.clear();
+        }
+        partition.linkProperties = linkProperties;
+        partition.identity = identity;
+        partition.fingerprint = fingerprint;
+        return partition;
+    }
+
+    /**
+     * Returns the interface and DNS servers of a network, or null if unknown.
+     */
+    private static String identity(LinkProperties linkProperties) {
+        if (linkProperties == null || linkProperties.getDnsServers().isEmpty()) {
+            return null;
+        }
+        StringBuilder identity = new StringBuilder();
+        identity.append(linkProperties.getInterfaceName());
+        for (InetAddress server : linkProperties.getDnsServers()) {
+            identity.append(' ').append(server.getHostAddress());
+        }
+        return identity.toString();
+    }
+
+    private static String addresses(LinkProperties linkProperties) {
+        StringBuilder addresses = new StringBuilder();
+        for (LinkAddress address : linkProperties.getLinkAddresses()) {
+            addresses.append(' ').append(address.getAddress().getHostAddress());
+        }
+        return addresses.toString();
+    }
+
+    /**
+     * The entries of one network, least recently used first.
+     */
+    private static final class Partition {
+        final LinkedHashMap<String, CacheEntry> entries;
+        // The link properties the entries were resolved with.
+        LinkProperties linkProperties;
+        String identity;
+        String fingerprint;
+
+        Partition(final int maxEntries) {
+            entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+    }
+
+    private static final class CacheEntry {
+        final InetAddress[] addresses;
+        final long expiresAt;
+
+        CacheEntry(InetAddress[] addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.u2tzjtne.netmonitor.dns;
+
+import android.net.Network;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Resolves host names on a given network, for a {@link DnsCache}. Tests can
+ * stand in a local table for {@link NetworkDnsResolver}.
+ */
+public interface DnsResolver {
+    /**
+     * @param network the network to resolve on, null for the default one.
+     */
+    InetAddress[] resolve(Network network, String host) throws UnknownHostException;
+}
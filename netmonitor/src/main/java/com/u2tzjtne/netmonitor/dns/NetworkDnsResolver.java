@@ -0,0 +1,22 @@
+package com.u2tzjtne.netmonitor.dns;
+
+import android.annotation.SuppressLint;
+import android.net.Network;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Resolves with the platform resolver, through the DNS servers of the given
+ * network.
+ */
+public class NetworkDnsResolver implements DnsResolver {
+    @SuppressLint("NewApi")
+    @Override
+    public InetAddress[] resolve(Network network, String host) throws UnknownHostException {
+        if (network == null) {
+            return InetAddress.getAllByName(host);
+        }
+        return network.getAllByName(host);
+    }
+}
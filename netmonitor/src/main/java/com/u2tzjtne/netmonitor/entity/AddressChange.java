@@ -0,0 +1,57 @@
+package com.u2tzjtne.netmonitor.entity;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+/**
+ * Addresses a network gained and lost since the previous change, as reported
+ * by an AddressTracker.
+ */
+public class AddressChange {
+    public final long handle;
+    public final IPAddress[] added;
+    public final IPAddress[] removed;
+    // Empty once the network is lost.
+    public final IPAddress[] addresses;
+
+    public AddressChange(long handle, IPAddress[] added, IPAddress[] removed, IPAddress[] addresses) {
+        this.handle = handle;
+        this.added = added;
+        this.removed = removed;
+        this.addresses = addresses;
+    }
+
+    /**
+     * Returns true if a socket bound to {@code localAddress} must be rebound,
+     * its address being gone.
+     */
+    public boolean affects(InetAddress localAddress) {
+        for (IPAddress address : removed) {
+            if (address.sameAddress(localAddress)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the network gained or lost an address of {@code kind}.
+     */
+    public boolean changed(IPAddress.Kind kind) {
+        return contains(added, kind) || contains(removed, kind);
+    }
+
+    private static boolean contains(IPAddress[] addresses, IPAddress.Kind kind) {
+        for (IPAddress address : addresses) {
+            if (address.getKind() == kind) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "+" + Arrays.toString(added) + " -" + Arrays.toString(removed);
+    }
+}
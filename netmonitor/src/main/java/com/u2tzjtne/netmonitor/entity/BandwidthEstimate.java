@@ -0,0 +1,29 @@
+package com.u2tzjtne.netmonitor.entity;
+
+/**
+ * Smoothed bandwidth and RTT of one network. Values are -1 when unknown.
+ */
+public class BandwidthEstimate {
+    public final long handle;
+    public final long downKbps;
+    public final long upKbps;
+    public final long rttMs;
+    public final NetQuality quality;
+    // False while the estimate only comes from platform hints, before any sample.
+    public final boolean observed;
+
+    public BandwidthEstimate(long handle, long downKbps, long upKbps, long rttMs,
+                             NetQuality quality, boolean observed) {
+        this.handle = handle;
+        this.downKbps = downKbps;
+        this.upKbps = upKbps;
+        this.rttMs = rttMs;
+        this.quality = quality;
+        this.observed = observed;
+    }
+
+    @Override
+    public String toString() {
+        return quality + " down=" + downKbps + "kbps up=" + upKbps + "kbps rtt=" + rttMs + "ms";
+    }
+}
@@ -0,0 +1,40 @@
+package com.u2tzjtne.netmonitor.entity;
+
+/**
+ * The signal of the serving cell of the data subscription, with its levels.
+ */
+public class CellSignal {
+    // CellInfo.UNAVAILABLE, for a value the modem doesn't report.
+    public static final int UNAVAILABLE = Integer.MAX_VALUE;
+
+    // True for an NR cell (SS-RSRP, SS-SINR), false for LTE (RSRP, RSSNR).
+    public final boolean nr;
+    public final int rsrpDbm;
+    public final int sinrDb;
+    // From 0 to 4 with the platform's default thresholds, -1 if unavailable.
+    public final int rsrpLevel;
+    public final int sinrLevel;
+
+    public CellSignal(boolean nr, int rsrpDbm, int sinrDb, int rsrpLevel, int sinrLevel) {
+        this.nr = nr;
+        this.rsrpDbm = rsrpDbm;
+        this.sinrDb = sinrDb;
+        this.rsrpLevel = rsrpLevel;
+        this.sinrLevel = sinrLevel;
+    }
+
+    /**
+     * Returns true if {@code other} is in the same levels.
+     */
+    public boolean sameLevels(CellSignal other) {
+        return other != null && nr == other.nr && rsrpLevel == other.rsrpLevel
+                && sinrLevel == other.sinrLevel;
+    }
+
+    @Override
+    public String toString() {
+        return (nr ? "NR" : "LTE") + " rsrp " + (rsrpDbm != UNAVAILABLE ? rsrpDbm + "dBm" : "?")
+                + " (" + rsrpLevel + ") sinr " + (sinrDb != UNAVAILABLE ? sinrDb + "dB" : "?")
+                + " (" + sinrLevel + ")";
+    }
+}
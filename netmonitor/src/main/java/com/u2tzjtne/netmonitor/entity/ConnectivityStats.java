@@ -0,0 +1,47 @@
+package com.u2tzjtne.netmonitor.entity;
+
+/**
+ * Connectivity of the device over a period, computed from a journal.
+ */
+public class ConnectivityStats {
+    public final long startMs;
+    public final long endMs;
+    // Time the default network was connected, whatever its type.
+    public final long onlineMs;
+    // Changes of the default network closer than the flap window to the previous one.
+    public final int flapCount;
+    private final long[] timeOnTypeMs;
+
+    public ConnectivityStats(long startMs, long endMs, long onlineMs, int flapCount, long[] timeOnTypeMs) {
+        this.startMs = startMs;
+        this.endMs = endMs;
+        this.onlineMs = onlineMs;
+        this.flapCount = flapCount;
+        this.timeOnTypeMs = timeOnTypeMs;
+    }
+
+    public long getDurationMs() {
+        return endMs - startMs;
+    }
+
+    /**
+     * Returns the time the default network was of {@code type}; NET_NONE is the
+     * time offline.
+     */
+    public long getTimeOnType(NetType type) {
+        return timeOnTypeMs[type.ordinal()];
+    }
+
+    /**
+     * Returns the online time over the duration, 0 to 1.
+     */
+    public double getUptimeRatio() {
+        long duration = getDurationMs();
+        return duration <= 0 ? 0 : (double) onlineMs / duration;
+    }
+
+    @Override
+    public String toString() {
+        return "online " + onlineMs + "/" + getDurationMs() + "ms, " + flapCount + " flaps";
+    }
+}
@@ -0,0 +1,47 @@
+package com.u2tzjtne.netmonitor.entity;
+
+import java.util.Arrays;
+
+/**
+ * The HTTP proxy configured on a network, from its LinkProperties.
+ */
+public class HttpProxy {
+    public final String host;
+    public final int port;
+    // The PAC file the proxy is configured with, null if set explicitly.
+    public final String pacFileUrl;
+    // Hosts connected to directly, e.g. "*.example.com".
+    public final String[] exclusionList;
+
+    public HttpProxy(String host, int port, String pacFileUrl, String[] exclusionList) {
+        this.host = host;
+        this.port = port;
+        this.pacFileUrl = pacFileUrl;
+        this.exclusionList = exclusionList != null ? exclusionList : new String[0];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HttpProxy)) return false;
+        HttpProxy other = (HttpProxy) o;
+        return port == other.port
+                && (host == null ? other.host == null : host.equals(other.host))
+                && (pacFileUrl == null ? other.pacFileUrl == null : pacFileUrl.equals(other.pacFileUrl))
+                && Arrays.equals(exclusionList, other.exclusionList);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = host != null ? host.hashCode() : 0;
+        result = 31 * result + port;
+        result = 31 * result + (pacFileUrl != null ? pacFileUrl.hashCode() : 0);
+        result = 31 * result + Arrays.hashCode(exclusionList);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return pacFileUrl != null ? "PAC " + pacFileUrl : host + ":" + port;
+    }
+}
@@ -1,9 +1,143 @@
 package com.u2tzjtne.netmonitor.entity;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
 public class IPAddress {
+    /**
+     * What an address can be used for, from its prefix.
+     */
+    public enum Kind {
+        // Routable IPv4, including private ranges: NAT is invisible from here.
+        IPV4,
+        // 2000::/3.
+        IPV6_GLOBAL,
+        // 169.254.0.0/16 or fe80::/10, only reaches the link.
+        LINK_LOCAL,
+        // fc00::/7, unique local, not routed on the Internet.
+        IPV6_ULA,
+        // 64:ff9b::/96 or 64:ff9b:1::/48, an IPv4 host behind a NAT64.
+        IPV6_NAT64,
+        // Loopback, multicast, unspecified, deprecated ranges.
+        OTHER
+    }
+
     public final byte[] address;
+    // -1 if unknown.
+    public final int prefixLength;
+    // The platform address this was built from, if any. Kept to compare it with
+    // the addresses of later LinkProperties without copying their bytes.
+    private final InetAddress inetAddress;
 
     public IPAddress(byte[] address) {
         this.address = address;
+        this.prefixLength = -1;
+        this.inetAddress = null;
+    }
+
+    public IPAddress(InetAddress inetAddress) {
+        this(inetAddress, -1);
+    }
+
+    public IPAddress(InetAddress inetAddress, int prefixLength) {
+        this.address = inetAddress.getAddress();
+        this.prefixLength = prefixLength;
+        this.inetAddress = inetAddress;
+    }
+
+    public boolean isIPv4() {
+        return address.length == 4;
+    }
+
+    public Kind getKind() {
+        int b0 = address[0] & 0xff;
+        int b1 = address[1] & 0xff;
+        if (isIPv4()) {
+            if (b0 == 169 && b1 == 254) {
+                return Kind.LINK_LOCAL;
+            }
+            if (b0 == 0 || b0 == 127 || b0 >= 224) {
+                return Kind.OTHER;
+            }
+            return Kind.IPV4;
+        }
+        if (b0 == 0xfe && (b1 & 0xc0) == 0x80) {
+            return Kind.LINK_LOCAL;
+        }
+        if ((b0 & 0xfe) == 0xfc) {
+            return Kind.IPV6_ULA;
+        }
+        if (b0 == 0x00 && b1 == 0x64 && (address[2] & 0xff) == 0xff && (address[3] & 0xff) == 0x9b) {
+            // The well-known prefix has zeros up to /96, the local-use one is a /48.
+            boolean wellKnown = true;
+            for (int i = 4; i < 12; i++) {
+                wellKnown &= address[i] == 0;
+            }
+            boolean localUse = address[4] == 0 && address[5] == 1;
+            return wellKnown || localUse ? Kind.IPV6_NAT64 : Kind.OTHER;
+        }
+        if ((b0 & 0xe0) == 0x20) {
+            return Kind.IPV6_GLOBAL;
+        }
+        return Kind.OTHER;
+    }
+
+    /**
+     * Returns the platform address this was built from, or a new one.
+     */
+    public InetAddress toInetAddress() {
+        if (inetAddress != null) {
+            return inetAddress;
+        }
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            // Only thrown for an illegal length.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns true if this is {@code other}. Does not allocate when this was
+     * built from an InetAddress.
+     */
+    public boolean sameAddress(InetAddress other) {
+        if (inetAddress != null) {
+            return inetAddress.equals(other);
+        }
+        return Arrays.equals(address, other.getAddress());
+    }
+
+    /**
+     * Returns true if this and {@code other} are the same address, whatever
+     * their prefix lengths: a socket bound to one stays valid when its prefix
+     * length changes.
+     */
+    public boolean sameAddress(IPAddress other) {
+        return Arrays.equals(address, other.address);
+    }
+
+    /**
+     * Compares the addresses and prefix lengths, as NetInfo is rebuilt when
+     * either changes. Use {@link #sameAddress(IPAddress)} for the address only.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IPAddress)) return false;
+        IPAddress other = (IPAddress) o;
+        return prefixLength == other.prefixLength && Arrays.equals(address, other.address);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(address) + prefixLength;
+    }
+
+    @Override
+    public String toString() {
+        String host = toInetAddress().getHostAddress();
+        return prefixLength >= 0 ? host + "/" + prefixLength : host;
     }
 }
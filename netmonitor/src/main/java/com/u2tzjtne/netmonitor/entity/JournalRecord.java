@@ -0,0 +1,44 @@
+package com.u2tzjtne.netmonitor.entity;
+
+/**
+ * One event read back from a connectivity journal.
+ */
+public class JournalRecord {
+    public enum Event {
+        // The journal was opened by a new process; type is the default network then.
+        SESSION_START,
+        // onNetChanged: type is the new type of the default network.
+        NET_CHANGED,
+        // onNetConnect of the network with handle.
+        NET_CONNECT,
+        // onNetDisconnect of the network with handle.
+        NET_DISCONNECT
+    }
+
+    public final long timestampMs;
+    public final int sessionId;
+    public final Event event;
+    public final long handle;
+    // Null for NET_DISCONNECT.
+    public final NetType type;
+    // String.hashCode() of the SSID, 0 when not on Wi-Fi or unknown.
+    public final int ssidHash;
+    // At most the first two addresses of the network.
+    public final IPAddress[] ipAddresses;
+
+    public JournalRecord(long timestampMs, int sessionId, Event event, long handle,
+                         NetType type, int ssidHash, IPAddress[] ipAddresses) {
+        this.timestampMs = timestampMs;
+        this.sessionId = sessionId;
+        this.event = event;
+        this.handle = handle;
+        this.type = type;
+        this.ssidHash = ssidHash;
+        this.ipAddresses = ipAddresses;
+    }
+
+    @Override
+    public String toString() {
+        return timestampMs + " #" + sessionId + " " + event + " " + handle + " " + type;
+    }
+}
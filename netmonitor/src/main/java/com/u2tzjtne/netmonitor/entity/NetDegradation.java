@@ -0,0 +1,45 @@
+package com.u2tzjtne.netmonitor.entity;
+
+import android.os.SystemClock;
+
+/**
+ * A network the platform is about to lose, and the network to move its
+ * connections to.
+ */
+public class NetDegradation {
+    public final long handle;
+    // SystemClock.elapsedRealtime() by which the network will be lost.
+    public final long deadlineMs;
+    // The cellular network held by NetMonitor, -1 (INVALID_NET_ID) if it is not up.
+    public final long fallbackHandle;
+    // True if the platform validated the fallback.
+    public final boolean fallbackValidated;
+
+    public NetDegradation(long handle, long deadlineMs, long fallbackHandle, boolean fallbackValidated) {
+        this.handle = handle;
+        this.deadlineMs = deadlineMs;
+        this.fallbackHandle = fallbackHandle;
+        this.fallbackValidated = fallbackValidated;
+    }
+
+    /**
+     * Returns true if connections can be moved to the fallback now.
+     */
+    public boolean isFallbackReady() {
+        return fallbackHandle != -1 && fallbackValidated;
+    }
+
+    /**
+     * Returns the time left before the loss, 0 once the deadline passed.
+     */
+    public long getRemainingMs() {
+        return Math.max(0, deadlineMs - SystemClock.elapsedRealtime());
+    }
+
+    @Override
+    public String toString() {
+        return handle + " lost in " + getRemainingMs() + "ms, fallback "
+                + (fallbackHandle != -1
+                ? fallbackHandle + (fallbackValidated ? " validated" : "") : "none");
+    }
+}
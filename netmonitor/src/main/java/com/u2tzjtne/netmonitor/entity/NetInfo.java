@@ -1,19 +1,97 @@
 package com.u2tzjtne.netmonitor.entity;
 
+import java.util.Arrays;
+
 /**
  * Java version of NetworkMonitor.NetInfo
  */
 public class NetInfo {
+    // Bits of attributesChanged().
+    public static final int CHANGED_VPN = 1;
+    public static final int CHANGED_METERED = 1 << 1;
+    public static final int CHANGED_ROAMING = 1 << 2;
+    public static final int CHANGED_UNDERLYING = 1 << 3;
+    public static final int CHANGED_PROXY = 1 << 4;
+
     public final String name;
     public final NetType type;
     public final long handle;
     public final IPAddress[] ipAddresses;
+    // From the network capabilities, false when unknown.
+    public final boolean vpn;
+    public final boolean metered;
+    public final boolean roaming;
+    // The network a VPN runs over, -1 (INVALID_NET_ID) if none or unknown.
+    public final long underlyingHandle;
+    // The HTTP proxy of the network, null if none.
+    public final HttpProxy httpProxy;
 
     public NetInfo(
             String name, NetType type, long handle, IPAddress[] addresses) {
+        this(name, type, handle, addresses, false, false, false, -1, null);
+    }
+
+    public NetInfo(
+            String name, NetType type, long handle, IPAddress[] addresses,
+            boolean vpn, boolean metered, boolean roaming, long underlyingHandle, HttpProxy httpProxy) {
         this.name = name;
         this.type = type;
         this.handle = handle;
         this.ipAddresses = addresses;
+        this.vpn = vpn;
+        this.metered = metered;
+        this.roaming = roaming;
+        this.underlyingHandle = underlyingHandle;
+        this.httpProxy = httpProxy;
+    }
+
+    /**
+     * Returns the CHANGED_XXX bits of the attributes differing from
+     * {@code previous}, 0 if none.
+     */
+    public int attributesChanged(NetInfo previous) {
+        int changed = 0;
+        if (vpn != previous.vpn) {
+            changed |= CHANGED_VPN;
+        }
+        if (metered != previous.metered) {
+            changed |= CHANGED_METERED;
+        }
+        if (roaming != previous.roaming) {
+            changed |= CHANGED_ROAMING;
+        }
+        if (underlyingHandle != previous.underlyingHandle) {
+            changed |= CHANGED_UNDERLYING;
+        }
+        if (httpProxy == null ? previous.httpProxy != null : !httpProxy.equals(previous.httpProxy)) {
+            changed |= CHANGED_PROXY;
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NetInfo)) return false;
+        NetInfo other = (NetInfo) o;
+        return handle == other.handle
+                && type == other.type
+                && (name == null ? other.name == null : name.equals(other.name))
+                && Arrays.equals(ipAddresses, other.ipAddresses)
+                && attributesChanged(other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = name != null ? name.hashCode() : 0;
+        result = 31 * result + (type != null ? type.hashCode() : 0);
+        result = 31 * result + (int) (handle ^ (handle >>> 32));
+        result = 31 * result + Arrays.hashCode(ipAddresses);
+        result = 31 * result + (vpn ? 1 : 0);
+        result = 31 * result + (metered ? 1 : 0);
+        result = 31 * result + (roaming ? 1 : 0);
+        result = 31 * result + (int) (underlyingHandle ^ (underlyingHandle >>> 32));
+        result = 31 * result + (httpProxy != null ? httpProxy.hashCode() : 0);
+        return result;
     }
 }
@@ -0,0 +1,12 @@
+package com.u2tzjtne.netmonitor.entity;
+
+/**
+ * Coarse quality of a network, from its estimated downstream bandwidth.
+ */
+public enum NetQuality {
+    UNKNOWN,
+    POOR,
+    MODERATE,
+    GOOD,
+    EXCELLENT
+}
@@ -0,0 +1,148 @@
+package com.u2tzjtne.netmonitor.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable view of every network known to a NetMonitor.
+ * <p>
+ * A new snapshot with a higher sequence number is published whenever the
+ * default network or one of the networks changes, so comparing
+ * {@link #getSequence()} with a previously read value is enough to tell
+ * whether anything changed since.
+ */
+public final class NetSnapshot {
+    public static final NetSnapshot EMPTY = new NetSnapshot(0, new NetState(false, -1, -1), null, "",
+            -1 /* INVALID_NET_ID */, new NetInfo[0]);
+
+    private final long sequence;
+    private final NetState defaultState;
+    private final NetType defaultType;
+    private final String wifiSSID;
+    private final long defaultNetId;
+    private final NetInfo[] networks;
+    private final List<NetInfo> networkList;
+
+    private NetSnapshot(long sequence, NetState defaultState, NetType defaultType, String wifiSSID,
+                        long defaultNetId, NetInfo[] networks) {
+        this.sequence = sequence;
+        this.defaultState = defaultState;
+        this.defaultType = defaultType;
+        this.wifiSSID = wifiSSID;
+        this.defaultNetId = defaultNetId;
+        this.networks = networks;
+        List<NetInfo> list = new ArrayList<>(networks.length);
+        Collections.addAll(list, networks);
+        this.networkList = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the version of this snapshot, 0 until the monitor has queried the
+     * platform once.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public NetState getDefaultState() {
+        return defaultState;
+    }
+
+    /**
+     * Returns the type of the default network, the one last reported by
+     * onNetChanged, or null before the monitor has queried the platform.
+     */
+    public NetType getDefaultType() {
+        return defaultType;
+    }
+
+    /**
+     * Returns the SSID of the default network when it is Wi-Fi, "" otherwise.
+     */
+    public String getWifiSSID() {
+        return wifiSSID;
+    }
+
+    public long getDefaultNetId() {
+        return defaultNetId;
+    }
+
+    /**
+     * Returns the connected networks, unmodifiable.
+     */
+    public List<NetInfo> getNetworks() {
+        return networkList;
+    }
+
+    /**
+     * Returns the network with {@code handle}, or null if it isn't connected.
+     */
+    public NetInfo getNetwork(long handle) {
+        int index = indexOf(handle);
+        return index >= 0 ? networks[index] : null;
+    }
+
+    /**
+     * Returns a snapshot with the given default network, or this snapshot if it
+     * already has it.
+     */
+    public NetSnapshot withDefault(NetState defaultState, long defaultNetId, NetType defaultType,
+                                   String wifiSSID) {
+        if (defaultState == this.defaultState && defaultNetId == this.defaultNetId
+                && defaultType == this.defaultType && wifiSSID.equals(this.wifiSSID)) {
+            return this;
+        }
+        return new NetSnapshot(sequence + 1, defaultState, defaultType, wifiSSID, defaultNetId, networks);
+    }
+
+    public NetSnapshot withNetworks(List<NetInfo> networks) {
+        return new NetSnapshot(sequence + 1, defaultState, defaultType, wifiSSID, defaultNetId,
+                networks.toArray(new NetInfo[0]));
+    }
+
+    /**
+     * Returns a snapshot where {@code netInfo} is added or replaces the network
+     * with the same handle, or this snapshot if it is already there.
+     */
+    public NetSnapshot withNetwork(NetInfo netInfo) {
+        int index = indexOf(netInfo.handle);
+        if (index >= 0 && networks[index].equals(netInfo)) {
+            return this;
+        }
+        NetInfo[] updated;
+        if (index >= 0) {
+            updated = networks.clone();
+            updated[index] = netInfo;
+        } else {
+            updated = new NetInfo[networks.length + 1];
+            System.arraycopy(networks, 0, updated, 0, networks.length);
+            updated[networks.length] = netInfo;
+        }
+        return new NetSnapshot(sequence + 1, defaultState, defaultType, wifiSSID, defaultNetId, updated);
+    }
+
+    /**
+     * Returns a snapshot without the network with {@code handle}, or this
+     * snapshot if it is not there.
+     */
+    public NetSnapshot withoutNetwork(long handle) {
+        int index = indexOf(handle);
+        if (index < 0) {
+            return this;
+        }
+        NetInfo[] updated = new NetInfo[networks.length - 1];
+        System.arraycopy(networks, 0, updated, 0, index);
+        System.arraycopy(networks, index + 1, updated, index, networks.length - index - 1);
+        return new NetSnapshot(sequence + 1, defaultState, defaultType, wifiSSID, defaultNetId, updated);
+    }
+
+    private int indexOf(long handle) {
+        for (int i = 0; i < networks.length; i++) {
+            if (networks[i].handle == handle) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
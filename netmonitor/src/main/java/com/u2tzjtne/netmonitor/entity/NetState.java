@@ -8,11 +8,18 @@ public class NetState {
     // Defined from NetInfo.subtype, which is one of the TelephonyManager.NETWORK_TYPE_XXXs.
     // Will be useful to find the maximum bandwidth.
     private final int subtype;
+    // TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_XXX of a mobile subtype, 0 if none or unknown.
+    private final int overrideSubtype;
 
     public NetState(boolean connected, int type, int subtype) {
+        this(connected, type, subtype, 0);
+    }
+
+    public NetState(boolean connected, int type, int subtype, int overrideSubtype) {
         this.connected = connected;
         this.type = type;
         this.subtype = subtype;
+        this.overrideSubtype = overrideSubtype;
     }
 
     public boolean isConnected() {
@@ -26,4 +33,8 @@ public class NetState {
     public int getNetworkSubType() {
         return subtype;
     }
+
+    public int getOverrideNetworkSubType() {
+        return overrideSubtype;
+    }
 }
@@ -9,5 +9,7 @@ public enum NetType {
     NET_2G,
     NET_UNKNOWN_CELLULAR,
     NET_BLUETOOTH,
-    NET_NONE
+    NET_NONE,
+    // Appended: the ordinals are stored by ConnectivityJournal.
+    NET_5G
 }
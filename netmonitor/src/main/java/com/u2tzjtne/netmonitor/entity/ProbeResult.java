@@ -0,0 +1,37 @@
+package com.u2tzjtne.netmonitor.entity;
+
+/**
+ * Outcome of an active connectivity probe on one network.
+ */
+public class ProbeResult {
+    public enum Status {
+        // The probe endpoint answered as expected: the network reaches the Internet.
+        VALIDATED,
+        // Something answered in place of the endpoint, typically a captive portal.
+        CAPTIVE_PORTAL,
+        // The endpoint could not be reached in time.
+        FAILED
+    }
+
+    public final Status status;
+    // Time to establish the probe connection, -1 if it failed.
+    public final long rttMs;
+
+    public ProbeResult(Status status, long rttMs) {
+        this.status = status;
+        this.rttMs = rttMs;
+    }
+
+    public static ProbeResult failed() {
+        return new ProbeResult(Status.FAILED, -1);
+    }
+
+    public boolean isValidated() {
+        return status == Status.VALIDATED;
+    }
+
+    @Override
+    public String toString() {
+        return status + (rttMs >= 0 ? " (" + rttMs + "ms)" : "");
+    }
+}
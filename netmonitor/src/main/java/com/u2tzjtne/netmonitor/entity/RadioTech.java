@@ -0,0 +1,83 @@
+package com.u2tzjtne.netmonitor.entity;
+
+/**
+ * The radio technology of a cellular network, finer than its NetType.
+ * <p>
+ * Classified from the data network type (TelephonyManager.NETWORK_TYPE_XXX)
+ * and, since Android 11, the override network type of TelephonyDisplayInfo:
+ * a 5G non-standalone connection reports NETWORK_TYPE_LTE with an NR_NSA
+ * override, LTE carrier aggregation an LTE_CA one. Both are plain lookups in
+ * the tables below, without any platform call.
+ */
+public enum RadioTech {
+    UNKNOWN(NetType.NET_UNKNOWN_CELLULAR),
+    GEN_2G(NetType.NET_2G),
+    GEN_3G(NetType.NET_3G),
+    LTE(NetType.NET_4G),
+    // LTE with carrier aggregation, or LTE Advanced Pro.
+    LTE_CA(NetType.NET_4G),
+    // 5G anchored on LTE.
+    NR_NSA(NetType.NET_5G),
+    // 5G anchored on LTE with mmWave or NR Advanced.
+    NR_NSA_MMWAVE(NetType.NET_5G),
+    NR_SA(NetType.NET_5G),
+    // Cellular data tunnelled over Wi-Fi through the carrier's ePDG, e.g.
+    // for Wi-Fi calling: its capacity is the Wi-Fi's, not a radio's.
+    IWLAN(NetType.NET_UNKNOWN_CELLULAR);
+
+    // Indexed by TelephonyManager.NETWORK_TYPE_XXX.
+    private static final RadioTech[] BY_NETWORK_TYPE = {
+            UNKNOWN,    // 0 UNKNOWN
+            GEN_2G,     // 1 GPRS
+            GEN_2G,     // 2 EDGE
+            GEN_3G,     // 3 UMTS
+            GEN_2G,     // 4 CDMA
+            GEN_3G,     // 5 EVDO_0
+            GEN_3G,     // 6 EVDO_A
+            GEN_2G,     // 7 1xRTT
+            GEN_3G,     // 8 HSDPA
+            GEN_3G,     // 9 HSUPA
+            GEN_3G,     // 10 HSPA
+            GEN_2G,     // 11 IDEN
+            GEN_3G,     // 12 EVDO_B
+            LTE,        // 13 LTE
+            GEN_3G,     // 14 EHRPD
+            GEN_3G,     // 15 HSPAP
+            GEN_2G,     // 16 GSM
+            GEN_3G,     // 17 TD_SCDMA
+            IWLAN,      // 18 IWLAN
+            LTE_CA,     // 19 LTE_CA, hidden
+            NR_SA,      // 20 NR
+    };
+    // Indexed by TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_XXX, applied to LTE.
+    private static final RadioTech[] BY_OVERRIDE_TYPE = {
+            null,           // 0 NONE
+            LTE_CA,         // 1 LTE_CA
+            LTE_CA,         // 2 LTE_ADVANCED_PRO
+            NR_NSA,         // 3 NR_NSA
+            NR_NSA_MMWAVE,  // 4 NR_NSA_MMWAVE
+            NR_NSA_MMWAVE,  // 5 NR_ADVANCED
+    };
+
+    public final NetType netType;
+
+    RadioTech(NetType netType) {
+        this.netType = netType;
+    }
+
+    /**
+     * Classifies a data network type, refined by a TelephonyDisplayInfo
+     * override type, 0 (OVERRIDE_NETWORK_TYPE_NONE) if unknown.
+     */
+    public static RadioTech classify(int networkType, int overrideNetworkType) {
+        RadioTech tech = networkType >= 0 && networkType < BY_NETWORK_TYPE.length
+                ? BY_NETWORK_TYPE[networkType] : UNKNOWN;
+        // The override describes what LTE is anchoring; NR Advanced on NR is
+        // still standalone.
+        if ((tech == LTE || tech == LTE_CA) && overrideNetworkType > 0
+                && overrideNetworkType < BY_OVERRIDE_TYPE.length) {
+            return BY_OVERRIDE_TYPE[overrideNetworkType];
+        }
+        return tech;
+    }
+}
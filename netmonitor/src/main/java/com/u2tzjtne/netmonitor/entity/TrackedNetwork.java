@@ -0,0 +1,35 @@
+package com.u2tzjtne.netmonitor.entity;
+
+/**
+ * A connected network with the properties network selection policies look at.
+ */
+public class TrackedNetwork {
+    public final NetInfo netInfo;
+    // True until the platform pushed capabilities saying otherwise.
+    public final boolean metered;
+    public final boolean validated;
+    public final boolean wifi;
+    public final boolean cellular;
+    // Latency measured by a NetworkProber, -1 if unknown.
+    public final long rttMs;
+
+    public TrackedNetwork(NetInfo netInfo, boolean metered, boolean validated,
+                          boolean wifi, boolean cellular, long rttMs) {
+        this.netInfo = netInfo;
+        this.metered = metered;
+        this.validated = validated;
+        this.wifi = wifi;
+        this.cellular = cellular;
+        this.rttMs = rttMs;
+    }
+
+    public long getHandle() {
+        return netInfo.handle;
+    }
+
+    @Override
+    public String toString() {
+        return netInfo.handle + " " + netInfo.type + (metered ? " metered" : "")
+                + (validated ? " validated" : "") + (rttMs >= 0 ? " rtt=" + rttMs + "ms" : "");
+    }
+}
@@ -0,0 +1,81 @@
+package com.u2tzjtne.netmonitor.entity;
+
+/**
+ * The Wi-Fi connection as last reported by the platform.
+ */
+public class WifiDetails {
+    public enum Band {
+        BAND_2_4_GHZ, BAND_5_GHZ, BAND_6_GHZ, UNKNOWN
+    }
+
+    // Quoted as reported by WifiInfo, "" if the app may not see it.
+    public final String ssid;
+    // The access point, null if unknown.
+    public final String bssid;
+    // dBm, changing continuously: see WifiInfoProvider for its level.
+    public final int rssi;
+    public final int linkSpeedMbps;
+    public final int frequencyMhz;
+
+    public WifiDetails(String ssid, String bssid, int rssi, int linkSpeedMbps, int frequencyMhz) {
+        this.ssid = ssid;
+        this.bssid = bssid;
+        this.rssi = rssi;
+        this.linkSpeedMbps = linkSpeedMbps;
+        this.frequencyMhz = frequencyMhz;
+    }
+
+    public Band getBand() {
+        if (frequencyMhz >= 2400 && frequencyMhz < 2500) {
+            return Band.BAND_2_4_GHZ;
+        }
+        if (frequencyMhz >= 4900 && frequencyMhz < 5900) {
+            return Band.BAND_5_GHZ;
+        }
+        if (frequencyMhz >= 5925 && frequencyMhz < 7125) {
+            return Band.BAND_6_GHZ;
+        }
+        return Band.UNKNOWN;
+    }
+
+    /**
+     * Returns true if {@code other} is another access point of the same
+     * network, i.e. the device roamed between them.
+     */
+    public boolean isRoamFrom(WifiDetails other) {
+        return other != null && bssid != null && other.bssid != null && !ssid.isEmpty()
+                && ssid.equals(other.ssid) && !bssid.equals(other.bssid);
+    }
+
+    /**
+     * Returns true if the details other than the RSSI are the same.
+     */
+    public boolean sameLink(WifiDetails other) {
+        return other != null && ssid.equals(other.ssid)
+                && (bssid == null ? other.bssid == null : bssid.equals(other.bssid))
+                && linkSpeedMbps == other.linkSpeedMbps && frequencyMhz == other.frequencyMhz;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof WifiDetails)) return false;
+        WifiDetails that = (WifiDetails) o;
+        return rssi == that.rssi && sameLink(that);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = ssid.hashCode();
+        result = 31 * result + (bssid != null ? bssid.hashCode() : 0);
+        result = 31 * result + rssi;
+        result = 31 * result + linkSpeedMbps;
+        result = 31 * result + frequencyMhz;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return ssid + " " + bssid + " " + rssi + "dBm " + linkSpeedMbps + "Mbps " + frequencyMhz + "MHz";
+    }
+}
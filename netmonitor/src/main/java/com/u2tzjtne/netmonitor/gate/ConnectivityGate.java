@@ -0,0 +1,270 @@
+package com.u2tzjtne.netmonitor.gate;
+
+import android.net.Network;
+
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.entity.TrackedNetwork;
+import com.u2tzjtne.netmonitor.select.NetworkPolicy;
+import com.u2tzjtne.netmonitor.select.NetworkSelector;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Waits, without polling or blocking a thread, until a network satisfying a
+ * {@link NetworkPolicy} is connected, e.g.
+ * {@code NetworkPolicy.require(null, true, true)} for any validated unmetered
+ * network.
+ * <p>
+ * {@link #await(NetworkPolicy, long, Callback)} completes immediately when such
+ * a network is already connected. CompletableFuture needs API 24, so the
+ * non-callback variant returns a plain {@link Future}.
+ */
+public class ConnectivityGate {
+    /**
+     * Called once, on the thread delivering the network event, or on the gate
+     * timer thread for timeouts.
+     */
+    public interface Callback {
+        void onAvailable(TrackedNetwork network, Network boundNetwork);
+
+        void onTimeout();
+    }
+
+    private final NetworkSelector selector;
+    private final boolean ownsSelector;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Creates a gate with its own NetworkSelector on {@code monitor}.
+     */
+    public ConnectivityGate(NetMonitor monitor) {
+        this(new NetworkSelector(monitor), true);
+    }
+
+    /**
+     * Creates a gate sharing {@code selector}, e.g. to take probe latency into
+     * account. The selector is not destroyed with the gate.
+     */
+    public ConnectivityGate(NetworkSelector selector) {
+        this(selector, false);
+    }
+
+    private ConnectivityGate(NetworkSelector selector, boolean ownsSelector) {
+        this.selector = selector;
+        this.ownsSelector = ownsSelector;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "NetMonitor-gate");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Most waits complete before their timeout, don't keep them queued.
+        executor.setRemoveOnCancelPolicy(true);
+        this.timer = executor;
+    }
+
+    public NetworkSelector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Calls {@code callback} as soon as a network accepted by {@code condition}
+     * is connected, or with {@link Callback#onTimeout()} after
+     * {@code timeoutMs}, 0 to wait forever.
+     */
+    public Waiter await(NetworkPolicy condition, long timeoutMs, Callback callback) {
+        final Waiter waiter = new Waiter(callback);
+        if (timeoutMs > 0) {
+            try {
+                waiter.timeout = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        waiter.onTimeout();
+                    }
+                }, timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Destroyed.
+                waiter.onTimeout();
+                return waiter;
+            }
+        }
+        waiter.subscription = selector.subscribe(condition, waiter);
+        if (waiter.isDone()) {
+            waiter.subscription.cancel();
+        }
+        return waiter;
+    }
+
+    /**
+     * Returns a Future of the first network accepted by {@code condition}.
+     * {@link Future#get()} throws an ExecutionException caused by a
+     * TimeoutException if none connects within {@code timeoutMs}.
+     */
+    public Future<TrackedNetwork> await(NetworkPolicy condition, long timeoutMs) {
+        final NetworkFuture future = new NetworkFuture(timeoutMs);
+        future.waiter = await(condition, timeoutMs, future);
+        return future;
+    }
+
+    /**
+     * Stops the timer, pending waiters never complete.
+     */
+    public void destroy() {
+        timer.shutdownNow();
+        if (ownsSelector) {
+            selector.destroy();
+        }
+    }
+
+    /**
+     * A pending {@link #await(NetworkPolicy, long, Callback)}.
+     */
+    public static final class Waiter implements NetworkSelector.Listener {
+        private final Callback callback;
+        // Guarded by this.
+        private boolean done;
+        volatile ScheduledFuture<?> timeout;
+        volatile NetworkSelector.Subscription subscription;
+
+        Waiter(Callback callback) {
+            this.callback = callback;
+        }
+
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Stops waiting, the callback is not called. Returns false if it already
+         * was.
+         */
+        public boolean cancel() {
+            if (!finish()) {
+                return false;
+            }
+            release();
+            return true;
+        }
+
+        @Override
+        public void onNetworkSelected(TrackedNetwork network, Network boundNetwork) {
+            if (network == null || !finish()) {
+                return;
+            }
+            release();
+            callback.onAvailable(network, boundNetwork);
+        }
+
+        void onTimeout() {
+            if (!finish()) {
+                return;
+            }
+            release();
+            callback.onTimeout();
+        }
+
+        private synchronized boolean finish() {
+            if (done) {
+                return false;
+            }
+            done = true;
+            return true;
+        }
+
+        private void release() {
+            ScheduledFuture<?> pendingTimeout = timeout;
+            if (pendingTimeout != null) {
+                pendingTimeout.cancel(false);
+            }
+            // Null while subscribing: await() cancels it then.
+            NetworkSelector.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+
+    private static final class NetworkFuture implements Future<TrackedNetwork>, Callback {
+        private final long timeoutMs;
+        private final CountDownLatch latch = new CountDownLatch(1);
+        volatile Waiter waiter;
+        private volatile TrackedNetwork network;
+        private volatile boolean timedOut;
+        private volatile boolean cancelled;
+
+        NetworkFuture(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+
+        @Override
+        public void onAvailable(TrackedNetwork network, Network boundNetwork) {
+            this.network = network;
+            latch.countDown();
+        }
+
+        @Override
+        public void onTimeout() {
+            timedOut = true;
+            latch.countDown();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            Waiter current = waiter;
+            if (current == null || !current.cancel()) {
+                return false;
+            }
+            cancelled = true;
+            latch.countDown();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return latch.getCount() == 0;
+        }
+
+        @Override
+        public TrackedNetwork get() throws InterruptedException, ExecutionException {
+            latch.await();
+            return result();
+        }
+
+        @Override
+        public TrackedNetwork get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!latch.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        private TrackedNetwork result() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (timedOut) {
+                throw new ExecutionException(new TimeoutException(
+                        "No matching network within " + timeoutMs + "ms"));
+            }
+            return network;
+        }
+    }
+}
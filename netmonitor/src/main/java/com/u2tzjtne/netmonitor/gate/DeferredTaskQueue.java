@@ -0,0 +1,202 @@
+package com.u2tzjtne.netmonitor.gate;
+
+import android.net.Network;
+import android.util.Log;
+
+import com.u2tzjtne.netmonitor.entity.TrackedNetwork;
+import com.u2tzjtne.netmonitor.select.NetworkPolicy;
+import com.u2tzjtne.netmonitor.select.NetworkSelector;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.u2tzjtne.netmonitor.core.NetMonitor.TAG;
+
+/**
+ * Holds work that needs the network until a network satisfying a
+ * {@link NetworkPolicy} is connected, then runs it in batches.
+ * <p>
+ * When connectivity returns, components reacting to onNetConnect all start
+ * their requests at once. Tasks submitted here instead are released at most
+ * {@code batchSize} at a time, every {@code batchIntervalMs}, highest priority
+ * first, with at most {@code maxConcurrency} running. The queue is bounded: when
+ * it is full, a task evicts the lowest priority one if it has a higher
+ * priority, and is rejected otherwise.
+ */
+public class DeferredTaskQueue {
+    /**
+     * Work run on a queue thread with the network it should use.
+     */
+    public interface Task {
+        void run(Network network);
+    }
+
+    private final NetworkSelector.Subscription subscription;
+    private final int capacity;
+    private final int maxConcurrency;
+    private final int batchSize;
+    private final long batchIntervalMs;
+    private final ScheduledThreadPoolExecutor executor;
+    // Guarded by itself, with the fields below.
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private long sequence;
+    private int running;
+    private boolean drainScheduled;
+    private Network network;
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public DeferredTaskQueue(NetworkSelector selector, NetworkPolicy condition, int capacity,
+                             int maxConcurrency, int batchSize, long batchIntervalMs) {
+        if (capacity <= 0 || maxConcurrency <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("capacity, maxConcurrency and batchSize must be positive");
+        }
+        this.capacity = capacity;
+        this.maxConcurrency = maxConcurrency;
+        this.batchSize = batchSize;
+        this.batchIntervalMs = batchIntervalMs;
+        this.executor = new ScheduledThreadPoolExecutor(maxConcurrency, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "NetMonitor-deferred");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.subscription = selector.subscribe(condition, new NetworkSelector.Listener() {
+            @Override
+            public void onNetworkSelected(TrackedNetwork selected, Network boundNetwork) {
+                synchronized (queue) {
+                    network = boundNetwork;
+                    scheduleDrain(0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues {@code task}, run once a matching network is connected. Tasks with
+     * a higher {@code priority} run first, in submission order for equal
+     * priorities. Returns false if the queue is full of tasks of higher or equal
+     * priority.
+     */
+    public boolean submit(Task task, int priority) {
+        synchronized (queue) {
+            if (queue.size() >= capacity) {
+                Entry lowest = null;
+                for (Entry entry : queue) {
+                    if (lowest == null || entry.compareTo(lowest) > 0) {
+                        lowest = entry;
+                    }
+                }
+                if (lowest.priority >= priority) {
+                    return false;
+                }
+                queue.remove(lowest);
+            }
+            queue.add(new Entry(task, priority, sequence++));
+            scheduleDrain(0);
+            return true;
+        }
+    }
+
+    public int size() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Drops the queued tasks and stops the running ones.
+     */
+    public void destroy() {
+        subscription.cancel();
+        synchronized (queue) {
+            queue.clear();
+        }
+        executor.shutdownNow();
+    }
+
+    // Must hold queue.
+    private void scheduleDrain(long delayMs) {
+        if (drainScheduled || network == null || queue.isEmpty()) {
+            return;
+        }
+        try {
+            executor.schedule(drain, delayMs, TimeUnit.MILLISECONDS);
+            drainScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // Destroyed.
+        }
+    }
+
+    private void drain() {
+        synchronized (queue) {
+            drainScheduled = false;
+            final Network current = network;
+            if (current == null) {
+                return;
+            }
+            int released = 0;
+            while (released < batchSize && running < maxConcurrency && !queue.isEmpty()) {
+                final Entry entry = queue.poll();
+                running++;
+                released++;
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            runTask(entry.task, current);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    return;
+                }
+            }
+            if (released > 0) {
+                scheduleDrain(batchIntervalMs);
+            }
+        }
+    }
+
+    private void runTask(Task task, Network network) {
+        try {
+            task.run(network);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Deferred task failed", e);
+        } finally {
+            synchronized (queue) {
+                running--;
+                // A slot is free, release more after the interval.
+                scheduleDrain(batchIntervalMs);
+            }
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final Task task;
+        final int priority;
+        final long sequence;
+
+        Entry(Task task, int priority, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
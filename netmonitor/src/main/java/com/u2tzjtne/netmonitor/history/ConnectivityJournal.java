@@ -0,0 +1,401 @@
+package com.u2tzjtne.netmonitor.history;
+
+import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.entity.ConnectivityStats;
+import com.u2tzjtne.netmonitor.entity.IPAddress;
+import com.u2tzjtne.netmonitor.entity.JournalRecord;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.util.NetUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Records the events of a NetMonitor to a file, so "the app was offline" can
+ * be checked after the fact.
+ * <p>
+ * The file is a ring of fixed-size records behind a small header, written
+ * through a memory-mapped buffer: appending an event is a 64-byte copy into
+ * memory, with no system call and no allocation. The oldest records are
+ * overwritten once the ring is full, so the file never grows. Each record
+ * carries a CRC and is only counted once completely written, so a process
+ * killed in the middle of a write loses at most that record; pages are left to
+ * the kernel to write back, and {@link #flush()} forces them to disk.
+ * <p>
+ * Each process opening the journal starts a new session, recorded with the
+ * default network at the time. Queries stream over the records one at a time
+ * and never load the whole file.
+ */
+public class ConnectivityJournal {
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final long DEFAULT_FLAP_WINDOW_MS = 30 * 1000;
+
+    static final int MAGIC = 0x4e4d4a31; // "NMJ1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 64;
+    // Addresses kept per record; a network rarely has more than one of each family.
+    static final int MAX_ADDRESSES = 2;
+
+    // Header layout.
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_RECORD_SIZE = 8;
+    private static final int HEADER_CAPACITY = 12;
+    private static final int HEADER_WRITE_COUNT = 16;
+    private static final int HEADER_SESSION_ID = 24;
+
+    // Record layout.
+    private static final int RECORD_TIMESTAMP = 0;
+    private static final int RECORD_SESSION_ID = 8;
+    private static final int RECORD_EVENT = 12;
+    // NetType ordinal + 1, 0 for none.
+    private static final int RECORD_TYPE = 13;
+    private static final int RECORD_ADDRESS_COUNT = 14;
+    // Bit i set when address i is IPv4.
+    private static final int RECORD_ADDRESS_FAMILIES = 15;
+    private static final int RECORD_HANDLE = 16;
+    private static final int RECORD_SSID_HASH = 24;
+    private static final int RECORD_ADDRESSES = 28;
+    private static final int RECORD_CRC = RECORD_SIZE - 4;
+
+    private static final JournalRecord.Event[] EVENTS = JournalRecord.Event.values();
+    private static final NetType[] TYPES = NetType.values();
+
+    /**
+     * Receives the records of a query, oldest first.
+     */
+    public interface Visitor {
+        /**
+         * Returns false to stop the query.
+         */
+        boolean visit(JournalRecord record);
+    }
+
+    private final NetMonitor monitor;
+    private final int capacity;
+    private final int sessionId;
+    private final long flapWindowMs;
+    // Guarded by lock, with the scratch buffers below.
+    private final Object lock = new Object();
+    private final MappedByteBuffer buffer;
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private final ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+    private final CRC32 crc = new CRC32();
+    private long writeCount;
+    private boolean closed;
+    private final NetCallback netCallback = new NetCallback() {
+        @Override
+        public void onNetChanged(NetType newNetType) {
+            append(JournalRecord.Event.NET_CHANGED, NetMonitor.INVALID_NET_ID, newNetType, null);
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+            append(JournalRecord.Event.NET_CONNECT, netInfo.handle, netInfo.type, netInfo.ipAddresses);
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+            append(JournalRecord.Event.NET_DISCONNECT, networkHandle, null, null);
+        }
+    };
+
+    public ConnectivityJournal(NetMonitor monitor, File file) throws IOException {
+        this(monitor, file, DEFAULT_CAPACITY, DEFAULT_FLAP_WINDOW_MS);
+    }
+
+    /**
+     * Opens or creates the journal in {@code file}, keeping the last
+     * {@code capacity} events. A file written with another capacity or format
+     * is started over.
+     *
+     * @param flapWindowMs a change of the default network closer than this to
+     *                     the previous one counts as a flap.
+     */
+    public ConnectivityJournal(NetMonitor monitor, File file, int capacity, long flapWindowMs)
+            throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        this.monitor = monitor;
+        this.capacity = capacity;
+        this.flapWindowMs = flapWindowMs;
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(size);
+            // The mapping outlives the file descriptor.
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+        if (buffer.getInt(HEADER_MAGIC) != MAGIC || buffer.getInt(HEADER_VERSION) != VERSION
+                || buffer.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE
+                || buffer.getInt(HEADER_CAPACITY) != capacity) {
+            buffer.putLong(HEADER_WRITE_COUNT, 0);
+            buffer.putInt(HEADER_SESSION_ID, 0);
+            buffer.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+            buffer.putInt(HEADER_CAPACITY, capacity);
+            buffer.putInt(HEADER_VERSION, VERSION);
+            buffer.putInt(HEADER_MAGIC, MAGIC);
+        }
+        writeCount = buffer.getLong(HEADER_WRITE_COUNT);
+        sessionId = buffer.getInt(HEADER_SESSION_ID) + 1;
+        buffer.putInt(HEADER_SESSION_ID, sessionId);
+        append(JournalRecord.Event.SESSION_START, monitor.getDefaultNetId(),
+                NetUtils.getConnectionType(monitor.getCurrentNetworkState()), null);
+        monitor.register(netCallback);
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Returns the number of records in the journal.
+     */
+    public int size() {
+        synchronized (lock) {
+            return (int) Math.min(writeCount, capacity);
+        }
+    }
+
+    /**
+     * Streams the records with a timestamp in [{@code fromMs}, {@code toMs}),
+     * oldest first. Records damaged by a crash are skipped.
+     */
+    public void query(long fromMs, long toMs, Visitor visitor) {
+        long end;
+        synchronized (lock) {
+            end = writeCount;
+        }
+        for (long index = Math.max(0, end - capacity); index < end; index++) {
+            JournalRecord record;
+            synchronized (lock) {
+                // Overwritten since the query started.
+                if (index < writeCount - capacity || !readSlot(index)) {
+                    continue;
+                }
+                long timestamp = scratchBuffer.getLong(RECORD_TIMESTAMP);
+                if (timestamp < fromMs || timestamp >= toMs) {
+                    continue;
+                }
+                record = decode();
+            }
+            if (!visitor.visit(record)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of the session {@code sessionId}, up to now for
+     * the current session and up to its last event for previous ones, or null
+     * if the session is no longer in the journal.
+     */
+    public ConnectivityStats getSessionStats(int sessionId) {
+        return computeStats(sessionId, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the statistics over [{@code fromMs}, {@code toMs}), across
+     * sessions, or null if the journal has no event before {@code toMs}. Time
+     * between the last event of a session and the start of the next one, when
+     * the app was not running, is not counted.
+     */
+    public ConnectivityStats getStats(long fromMs, long toMs) {
+        return computeStats(0, fromMs, toMs);
+    }
+
+    /**
+     * Forces the pages written so far to disk.
+     */
+    public void flush() {
+        synchronized (lock) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Stops recording and flushes the journal. Queries remain available.
+     */
+    public void close() {
+        monitor.unregister(netCallback);
+        synchronized (lock) {
+            closed = true;
+            buffer.force();
+        }
+    }
+
+    private void append(JournalRecord.Event event, long handle, NetType type, IPAddress[] addresses) {
+        long timestamp = System.currentTimeMillis();
+        int ssidHash = type == NetType.NET_WIFI ? monitor.getWifiSSID().hashCode() : 0;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            ByteBuffer record = scratchBuffer;
+            record.putLong(RECORD_TIMESTAMP, timestamp);
+            record.putInt(RECORD_SESSION_ID, sessionId);
+            record.put(RECORD_EVENT, (byte) event.ordinal());
+            record.put(RECORD_TYPE, (byte) (type == null ? 0 : type.ordinal() + 1));
+            record.putLong(RECORD_HANDLE, handle);
+            record.putInt(RECORD_SSID_HASH, ssidHash);
+            int count = addresses == null ? 0 : Math.min(MAX_ADDRESSES, addresses.length);
+            int families = 0;
+            for (int i = 0; i < MAX_ADDRESSES; i++) {
+                int offset = RECORD_ADDRESSES + i * 16;
+                byte[] address = i < count ? addresses[i].address : null;
+                int length = address == null ? 0 : Math.min(16, address.length);
+                if (length == 4) {
+                    families |= 1 << i;
+                }
+                for (int j = 0; j < 16; j++) {
+                    scratch[offset + j] = j < length ? address[j] : 0;
+                }
+            }
+            record.put(RECORD_ADDRESS_COUNT, (byte) count);
+            record.put(RECORD_ADDRESS_FAMILIES, (byte) families);
+            crc.reset();
+            crc.update(scratch, 0, RECORD_CRC);
+            record.putInt(RECORD_CRC, (int) crc.getValue());
+
+            buffer.position(slotOffset(writeCount));
+            buffer.put(scratch);
+            // Committed once the whole record is in place.
+            writeCount++;
+            buffer.putLong(HEADER_WRITE_COUNT, writeCount);
+        }
+    }
+
+    /**
+     * Copies the record at {@code index} into the scratch buffer and returns
+     * true if it is intact. Must hold lock.
+     */
+    private boolean readSlot(long index) {
+        buffer.position(slotOffset(index));
+        buffer.get(scratch);
+        crc.reset();
+        crc.update(scratch, 0, RECORD_CRC);
+        return scratchBuffer.getInt(RECORD_CRC) == (int) crc.getValue()
+                && (scratch[RECORD_EVENT] & 0xff) < EVENTS.length
+                && (scratch[RECORD_TYPE] & 0xff) <= TYPES.length;
+    }
+
+    /**
+     * Decodes the scratch buffer. Must hold lock.
+     */
+    private JournalRecord decode() {
+        ByteBuffer record = scratchBuffer;
+        int count = record.get(RECORD_ADDRESS_COUNT);
+        int families = record.get(RECORD_ADDRESS_FAMILIES);
+        IPAddress[] addresses = new IPAddress[Math.max(0, Math.min(MAX_ADDRESSES, count))];
+        for (int i = 0; i < addresses.length; i++) {
+            byte[] address = new byte[(families & (1 << i)) != 0 ? 4 : 16];
+            System.arraycopy(scratch, RECORD_ADDRESSES + i * 16, address, 0, address.length);
+            addresses[i] = new IPAddress(address);
+        }
+        return new JournalRecord(record.getLong(RECORD_TIMESTAMP), record.getInt(RECORD_SESSION_ID),
+                EVENTS[record.get(RECORD_EVENT)], record.getLong(RECORD_HANDLE), typeAt(record),
+                record.getInt(RECORD_SSID_HASH), addresses);
+    }
+
+    /**
+     * Replays the default network changes of the session {@code sessionId}, or
+     * of every session if it is 0, clipped to [{@code fromMs}, {@code toMs}).
+     */
+    private ConnectivityStats computeStats(int sessionId, long fromMs, long toMs) {
+        long[] timeOnType = new long[TYPES.length];
+        long online = 0;
+        int flaps = 0;
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        int lastSession = 0;
+        // Default network since the last change, null before the first record.
+        NetType current = null;
+        long since = 0;
+        long lastChange = Long.MIN_VALUE;
+        long end;
+        synchronized (lock) {
+            end = writeCount;
+        }
+        for (long index = Math.max(0, end - capacity); index < end; index++) {
+            long timestamp;
+            int session;
+            JournalRecord.Event event;
+            NetType type;
+            synchronized (lock) {
+                if (index < writeCount - capacity || !readSlot(index)) {
+                    continue;
+                }
+                timestamp = scratchBuffer.getLong(RECORD_TIMESTAMP);
+                session = scratchBuffer.getInt(RECORD_SESSION_ID);
+                event = EVENTS[scratch[RECORD_EVENT]];
+                type = typeAt(scratchBuffer);
+            }
+            if ((sessionId != 0 && session != sessionId) || timestamp >= toMs) {
+                continue;
+            }
+            if (event == JournalRecord.Event.SESSION_START) {
+                // The previous session ended at its last event.
+                if (current != null) {
+                    long duration = clip(since, last, fromMs, toMs);
+                    timeOnType[current.ordinal()] += duration;
+                    online += current == NetType.NET_NONE ? 0 : duration;
+                }
+                current = type;
+                since = timestamp;
+                lastChange = Long.MIN_VALUE;
+            } else if (event == JournalRecord.Event.NET_CHANGED) {
+                if (current != null) {
+                    long duration = clip(since, timestamp, fromMs, toMs);
+                    timeOnType[current.ordinal()] += duration;
+                    online += current == NetType.NET_NONE ? 0 : duration;
+                }
+                if (timestamp >= fromMs && lastChange != Long.MIN_VALUE
+                        && timestamp - lastChange < flapWindowMs) {
+                    flaps++;
+                }
+                current = type;
+                since = timestamp;
+                lastChange = timestamp;
+            }
+            first = Math.min(first, timestamp);
+            last = timestamp;
+            lastSession = session;
+        }
+        if (first == Long.MAX_VALUE) {
+            return null;
+        }
+        // The current session is still running.
+        long stop = lastSession == this.sessionId ? Math.min(toMs, System.currentTimeMillis()) : last;
+        if (current != null) {
+            long duration = clip(since, stop, fromMs, toMs);
+            timeOnType[current.ordinal()] += duration;
+            online += current == NetType.NET_NONE ? 0 : duration;
+        }
+        return new ConnectivityStats(Math.max(first, fromMs), Math.max(Math.max(first, fromMs), stop),
+                online, flaps, timeOnType);
+    }
+
+    private static long clip(long start, long end, long fromMs, long toMs) {
+        return Math.max(0, Math.min(end, toMs) - Math.max(start, fromMs));
+    }
+
+    private static NetType typeAt(ByteBuffer record) {
+        int type = record.get(RECORD_TYPE) & 0xff;
+        return type == 0 ? null : TYPES[type - 1];
+    }
+
+    private int slotOffset(long index) {
+        return HEADER_SIZE + (int) (index % capacity) * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,77 @@
+package com.u2tzjtne.netmonitor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations with power-of-two microsecond buckets:
+ * bucket 0 holds durations under 1us, bucket i durations in [2^(i-1), 2^i) us.
+ * Percentiles are therefore upper bounds, precise to a factor of two, which is
+ * enough to tell a 50us callback from a 20ms one.
+ */
+public final class LatencyHistogram {
+    static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNs = new AtomicLong();
+    private final AtomicLong maxNs = new AtomicLong();
+
+    public void record(long durationNs) {
+        long micros = Math.max(0, durationNs) / 1000;
+        int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNs.addAndGet(durationNs);
+        long max;
+        while (durationNs > (max = maxNs.get()) && !maxNs.compareAndSet(max, durationNs)) {
+            // Retry.
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMeanNs() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNs.get() / n;
+    }
+
+    public long getMaxNs() {
+        return maxNs.get();
+    }
+
+    /**
+     * Returns an upper bound of the {@code percentile} (0 to 100) duration, 0 if
+     * nothing was recorded.
+     */
+    public long getPercentileNs(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return Math.min((1L << i) * 1000, getMaxNs());
+            }
+        }
+        return getMaxNs();
+    }
+
+    /**
+     * Returns the number of durations recorded in {@code bucket}.
+     */
+    public long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + " mean=" + getMeanNs() / 1000 + "us p50<=" + getPercentileNs(50) / 1000
+                + "us p99<=" + getPercentileNs(99) / 1000 + "us max=" + getMaxNs() / 1000 + "us";
+    }
+}
@@ -0,0 +1,256 @@
+package com.u2tzjtne.netmonitor.metrics;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.u2tzjtne.netmonitor.core.NetMonitor.INVALID_NET_ID;
+
+/**
+ * A {@link MetricsSink} aggregating measurements in memory: a count per event,
+ * a latency histogram per system service query and per subscriber class, slow
+ * subscriber calls and flaps per network handle.
+ * <p>
+ * A subscriber call slower than the slow threshold (a 16ms frame by default)
+ * is counted and reported to the {@link Listener}. A flap is a connect or
+ * disconnect of a network within the flap window of its previous one; events
+ * about the default network are tracked under {@code INVALID_NET_ID}.
+ * <p>
+ * Measurements are forwarded to an optional next sink, so an app can both
+ * read the aggregates and export the raw values.
+ */
+public class MetricsRecorder implements MetricsSink {
+    public static final long DEFAULT_SLOW_THRESHOLD_NS = 16 * 1000 * 1000;
+    public static final long DEFAULT_FLAP_WINDOW_MS = 30 * 1000;
+    // Networks whose flaps are remembered, the least recently active are dropped.
+    private static final int MAX_TRACKED_NETWORKS = 32;
+
+    /**
+     * Notified on the thread of the slow call.
+     */
+    public interface Listener {
+        void onSlowSubscriber(Object subscriber, String event, long durationNs);
+    }
+
+    private final MetricsSink next;
+    private final ConcurrentMap<String, AtomicLong> eventCounts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> platformCalls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> subscriberCalls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> queueDelays = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> slowCalls = new ConcurrentHashMap<>();
+    // Guarded by itself.
+    private final Map<Long, Flaps> flaps = new LinkedHashMap<Long, Flaps>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Flaps> eldest) {
+            return size() > MAX_TRACKED_NETWORKS;
+        }
+    };
+    private volatile long slowThresholdNs = DEFAULT_SLOW_THRESHOLD_NS;
+    private volatile long flapWindowMs = DEFAULT_FLAP_WINDOW_MS;
+    private volatile Listener listener;
+
+    public MetricsRecorder() {
+        this(null);
+    }
+
+    /**
+     * Records and forwards every measurement to {@code next}, which may be null.
+     */
+    public MetricsRecorder(MetricsSink next) {
+        this.next = next;
+    }
+
+    public void setSlowThresholdNs(long slowThresholdNs) {
+        this.slowThresholdNs = slowThresholdNs;
+    }
+
+    public void setFlapWindowMs(long flapWindowMs) {
+        this.flapWindowMs = flapWindowMs;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onEvent(String event, long networkHandle) {
+        counter(eventCounts, event).incrementAndGet();
+        if (NetMetrics.NET_CONNECT.equals(event) || NetMetrics.NET_DISCONNECT.equals(event)
+                || NetMetrics.NET_CHANGED.equals(event)) {
+            recordTransition(networkHandle);
+        }
+        if (next != null) {
+            next.onEvent(event, networkHandle);
+        }
+    }
+
+    @Override
+    public void onPlatformCall(String call, long durationNs) {
+        histogram(platformCalls, call).record(durationNs);
+        if (next != null) {
+            next.onPlatformCall(call, durationNs);
+        }
+    }
+
+    @Override
+    public void onSubscriberCall(Object subscriber, String event, long queuedNs, long durationNs) {
+        // Keyed by class: holding subscribers would leak them.
+        String name = subscriber.getClass().getName();
+        histogram(subscriberCalls, name).record(durationNs);
+        if (queuedNs > 0) {
+            histogram(queueDelays, name).record(queuedNs);
+        }
+        if (durationNs >= slowThresholdNs) {
+            counter(slowCalls, name).incrementAndGet();
+            Listener current = listener;
+            if (current != null) {
+                current.onSlowSubscriber(subscriber, event, durationNs);
+            }
+        }
+        if (next != null) {
+            next.onSubscriberCall(subscriber, event, queuedNs, durationNs);
+        }
+    }
+
+    public long getEventCount(String event) {
+        AtomicLong count = eventCounts.get(event);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Returns the durations of the system service query {@code call}, e.g.
+     * {@link NetMetrics#GET_LINK_PROPERTIES}, or null if it was never made.
+     */
+    public LatencyHistogram getPlatformCallLatency(String call) {
+        return platformCalls.get(call);
+    }
+
+    /**
+     * Returns the time spent in the callbacks of subscribers of class
+     * {@code subscriberClass}, or null if none was called.
+     */
+    public LatencyHistogram getSubscriberLatency(Class<?> subscriberClass) {
+        return subscriberCalls.get(subscriberClass.getName());
+    }
+
+    /**
+     * Returns the time events waited on the Executor of subscribers of class
+     * {@code subscriberClass}, or null if none is registered with an Executor.
+     */
+    public LatencyHistogram getQueueDelay(Class<?> subscriberClass) {
+        return queueDelays.get(subscriberClass.getName());
+    }
+
+    public long getSlowCallCount(Class<?> subscriberClass) {
+        AtomicLong count = slowCalls.get(subscriberClass.getName());
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Returns the number of flaps of the network with {@code handle}, or of the
+     * default network for {@code INVALID_NET_ID}.
+     */
+    public int getFlapCount(long handle) {
+        synchronized (flaps) {
+            Flaps entry = flaps.get(handle);
+            return entry == null ? 0 : entry.count;
+        }
+    }
+
+    /**
+     * Forgets every measurement.
+     */
+    public void reset() {
+        eventCounts.clear();
+        platformCalls.clear();
+        subscriberCalls.clear();
+        queueDelays.clear();
+        slowCalls.clear();
+        synchronized (flaps) {
+            flaps.clear();
+        }
+    }
+
+    /**
+     * Returns a human readable summary, e.g. for a dumpsys or a bug report.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Events:\n");
+        for (Map.Entry<String, AtomicLong> entry : eventCounts.entrySet()) {
+            builder.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        builder.append("Platform calls:\n");
+        appendHistograms(builder, platformCalls);
+        builder.append("Subscribers:\n");
+        appendHistograms(builder, subscriberCalls);
+        for (Map.Entry<String, AtomicLong> entry : slowCalls.entrySet()) {
+            builder.append("  ").append(entry.getKey()).append(" slow calls: ")
+                    .append(entry.getValue()).append('\n');
+        }
+        builder.append("Queue delays:\n");
+        appendHistograms(builder, queueDelays);
+        builder.append("Flaps:\n");
+        synchronized (flaps) {
+            for (Map.Entry<Long, Flaps> entry : flaps.entrySet()) {
+                builder.append("  ")
+                        .append(entry.getKey() == INVALID_NET_ID ? "default" : String.valueOf(entry.getKey()))
+                        .append(": ").append(entry.getValue().count).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private void recordTransition(long handle) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (flaps) {
+            Flaps entry = flaps.get(handle);
+            if (entry == null) {
+                entry = new Flaps();
+                flaps.put(handle, entry);
+            } else if (now - entry.lastTransition < flapWindowMs) {
+                entry.count++;
+            }
+            entry.lastTransition = now;
+        }
+    }
+
+    private static void appendHistograms(StringBuilder builder, Map<String, LatencyHistogram> histograms) {
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            builder.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+    }
+
+    private static AtomicLong counter(ConcurrentMap<String, AtomicLong> counters, String key) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    private static LatencyHistogram histogram(ConcurrentMap<String, LatencyHistogram> histograms, String key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(key, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    private static final class Flaps {
+        long lastTransition;
+        int count;
+    }
+}
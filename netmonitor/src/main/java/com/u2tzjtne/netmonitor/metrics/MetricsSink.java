@@ -0,0 +1,30 @@
+package com.u2tzjtne.netmonitor.metrics;
+
+/**
+ * Receives the raw measurements of the library once installed with
+ * {@link NetMetrics#setSink(MetricsSink)}, e.g. to export them to an app's own
+ * telemetry. {@link MetricsRecorder} aggregates them in memory.
+ * <p>
+ * Methods are called synchronously on the thread being measured, which may be
+ * the main thread: implementations must be thread-safe and return quickly.
+ */
+public interface MetricsSink {
+    /**
+     * An event named by one of the {@link NetMetrics} event constants, for the
+     * network with {@code networkHandle}, or {@code NetMonitor.INVALID_NET_ID}
+     * for events about the default network.
+     */
+    void onEvent(String event, long networkHandle);
+
+    /**
+     * A query to a system service, named by one of the {@link NetMetrics} call
+     * constants, took {@code durationNs}.
+     */
+    void onPlatformCall(String call, long durationNs);
+
+    /**
+     * {@code subscriber} took {@code durationNs} to handle {@code event}, after
+     * waiting {@code queuedNs} on its Executor (0 if called synchronously).
+     */
+    void onSubscriberCall(Object subscriber, String event, long queuedNs, long durationNs);
+}
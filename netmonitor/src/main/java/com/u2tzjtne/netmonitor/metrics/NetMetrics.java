@@ -0,0 +1,88 @@
+package com.u2tzjtne.netmonitor.metrics;
+
+/**
+ * Opt-in instrumentation of the library. Disabled until a sink is installed;
+ * until then every hook costs a volatile read, no clock read and no allocation.
+ */
+public final class NetMetrics {
+    // Platform events, as received from ConnectivityManager.
+    public static final String AVAILABLE = "available";
+    public static final String CAPABILITIES_CHANGED = "capabilities_changed";
+    public static final String LINK_PROPERTIES_CHANGED = "link_properties_changed";
+    public static final String LOSING = "losing";
+    public static final String LOST = "lost";
+    public static final String CONNECTIVITY_ACTION = "connectivity_action";
+
+    // Events delivered to subscribers.
+    public static final String NET_CHANGED = "net_changed";
+    public static final String NET_CONNECT = "net_connect";
+    public static final String NET_DISCONNECT = "net_disconnect";
+
+    // System service queries.
+    public static final String GET_ACTIVE_NETWORK_INFO = "getActiveNetworkInfo";
+    public static final String GET_NETWORK_INFO = "getNetworkInfo";
+    public static final String GET_ALL_NETWORKS = "getAllNetworks";
+    public static final String GET_LINK_PROPERTIES = "getLinkProperties";
+    public static final String GET_NETWORK_CAPABILITIES = "getNetworkCapabilities";
+    public static final String GET_WIFI_INFO = "getWifiInfo";
+
+    private static volatile MetricsSink sink;
+
+    private NetMetrics() {
+    }
+
+    /**
+     * Installs {@code sink}, or disables metrics if it is null.
+     */
+    public static void setSink(MetricsSink sink) {
+        NetMetrics.sink = sink;
+    }
+
+    public static MetricsSink getSink() {
+        return sink;
+    }
+
+    public static boolean isEnabled() {
+        return sink != null;
+    }
+
+    public static void event(String event, long networkHandle) {
+        MetricsSink current = sink;
+        if (current != null) {
+            current.onEvent(event, networkHandle);
+        }
+    }
+
+    /**
+     * Returns the start time to pass to {@link #platformCall(String, long)} or
+     * {@link #subscriberCall(Object, String, long, long)}, 0 when disabled.
+     */
+    public static long startTimer() {
+        return sink != null ? System.nanoTime() : 0;
+    }
+
+    public static void platformCall(String call, long startNs) {
+        if (startNs == 0) {
+            return;
+        }
+        MetricsSink current = sink;
+        if (current != null) {
+            current.onPlatformCall(call, System.nanoTime() - startNs);
+        }
+    }
+
+    /**
+     * Reports a subscriber call started at {@code startNs}, for an event posted
+     * to its Executor at {@code postedNs}, or 0 if it was called synchronously.
+     */
+    public static void subscriberCall(Object subscriber, String event, long postedNs, long startNs) {
+        if (startNs == 0) {
+            return;
+        }
+        MetricsSink current = sink;
+        if (current != null) {
+            current.onSubscriberCall(subscriber, event, postedNs == 0 ? 0 : startNs - postedNs,
+                    System.nanoTime() - startNs);
+        }
+    }
+}
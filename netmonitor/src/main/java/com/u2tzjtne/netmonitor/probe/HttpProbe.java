@@ -0,0 +1,87 @@
+package com.u2tzjtne.netmonitor.probe;
+
+import com.u2tzjtne.netmonitor.entity.ProbeResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+/**
+ * Requests a URL expected to answer "204 No Content", like the platform
+ * connectivity check. Any other answer means a captive portal or a proxy got
+ * in the way. Speaks HTTP/1.1 over a raw socket so the request goes out on the
+ * probed network and is not subject to the cleartext traffic policy. The
+ * timeout applies to the connection and to each read, see {@link Probe#run}.
+ */
+public class HttpProbe implements Probe {
+    public static final String DEFAULT_HOST = "connectivitycheck.gstatic.com";
+    public static final String DEFAULT_PATH = "/generate_204";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    // Longest status line we read before giving up.
+    private static final int MAX_STATUS_LINE = 256;
+
+    private final String host;
+    private final int port;
+    private final String path;
+    private final int timeoutMs;
+
+    public HttpProbe(int timeoutMs) {
+        this(DEFAULT_HOST, 80, DEFAULT_PATH, timeoutMs);
+    }
+
+    public HttpProbe(String host, int port, String path, int timeoutMs) {
+        this.host = host;
+        this.port = port;
+        this.path = path;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public ProbeResult run(ProbeTransport transport) {
+        try (Socket socket = transport.getSocketFactory().createSocket()) {
+            InetAddress address = transport.resolve(host)[0];
+            long start = System.nanoTime();
+            socket.connect(new InetSocketAddress(address, port), timeoutMs);
+            long rttMs = (System.nanoTime() - start) / 1000000;
+            socket.setSoTimeout(timeoutMs);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET " + path + " HTTP/1.1\r\n"
+                    + "Host: " + host + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(ASCII));
+            out.flush();
+            int code = readStatusCode(socket.getInputStream());
+            if (code == 204) {
+                return new ProbeResult(ProbeResult.Status.VALIDATED, rttMs);
+            }
+            return code > 0
+                    ? new ProbeResult(ProbeResult.Status.CAPTIVE_PORTAL, rttMs)
+                    : ProbeResult.failed();
+        } catch (IOException | RuntimeException e) {
+            return ProbeResult.failed();
+        }
+    }
+
+    /**
+     * Parses "HTTP/1.1 204 No Content", returns -1 if the answer is not HTTP.
+     */
+    private static int readStatusCode(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n' && line.length() < MAX_STATUS_LINE) {
+            line.append((char) c);
+        }
+        String[] parts = line.toString().trim().split(" ");
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
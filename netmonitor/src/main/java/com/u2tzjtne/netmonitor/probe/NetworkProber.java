@@ -0,0 +1,276 @@
+package com.u2tzjtne.netmonitor.probe;
+
+import android.annotation.SuppressLint;
+import android.net.Network;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.entity.NetDegradation;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.entity.ProbeResult;
+import com.u2tzjtne.netmonitor.util.NetLog;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import javax.net.SocketFactory;
+
+import static com.u2tzjtne.netmonitor.core.NetMonitor.TAG;
+
+/**
+ * Checks that the networks reported by a NetMonitor actually reach the
+ * Internet, and how fast.
+ * <p>
+ * NetType only reflects what the OS claims; a hotel Wi-Fi behind a captive
+ * portal or a dead uplink is still NET_WIFI. The prober runs its probes, in
+ * order, on each network as soon as it connects or its NetInfo changes, with
+ * sockets and DNS bound to that network. The network is validated if every
+ * probe succeeds, and its latency is the lowest RTT measured. Results are
+ * cached per network handle for a TTL; reading an expired result returns null
+ * and starts a new probe in the background. When a network starts degrading
+ * its fallback is probed right away, to be known good before the loss.
+ */
+@SuppressLint("NewApi")
+public class NetworkProber {
+    public static final long DEFAULT_TTL_MS = 60 * 1000;
+    public static final int DEFAULT_TIMEOUT_MS = 3000;
+
+    /**
+     * Notified on a prober thread each time a network has been probed.
+     */
+    public interface Listener {
+        void onProbeResult(long networkHandle, ProbeResult result);
+    }
+
+    private final NetMonitor monitor;
+    private final long ttlMs;
+    private final Probe[] probes;
+    private final ExecutorService executor;
+    // Guarded by itself.
+    private final LongSparseArray<Entry> entries = new LongSparseArray<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final NetCallback netCallback = new NetCallback() {
+        @Override
+        public void onNetChanged(NetType newNetType) {
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+            // A new or changed network, previous results no longer apply.
+            probe(netInfo.handle);
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+            synchronized (entries) {
+                entries.remove(networkHandle);
+            }
+        }
+    };
+    private final NetMonitor.DegradationListener degradationListener = new NetMonitor.DegradationListener() {
+        @Override
+        public void onNetworkDegrading(NetDegradation degradation) {
+            if (degradation.fallbackHandle != NetMonitor.INVALID_NET_ID) {
+                probe(degradation.fallbackHandle);
+            }
+        }
+    };
+
+    /**
+     * Probes with an HTTP 204 check against {@link HttpProbe#DEFAULT_HOST}.
+     */
+    public NetworkProber(NetMonitor monitor) {
+        this(monitor, DEFAULT_TTL_MS, new HttpProbe(DEFAULT_TIMEOUT_MS));
+    }
+
+    public NetworkProber(NetMonitor monitor, long ttlMs, Probe... probes) {
+        if (probes.length == 0) {
+            throw new IllegalArgumentException("No probe");
+        }
+        this.monitor = monitor;
+        this.ttlMs = ttlMs;
+        this.probes = probes.clone();
+        this.executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "NetMonitor-probe");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        monitor.register(netCallback);
+        monitor.addDegradationListener(degradationListener);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the latest result for the network with {@code handle}, or null if
+     * it has not been probed yet or its result expired, in which case a probe is
+     * started unless one is running already.
+     */
+    public ProbeResult getResult(long handle) {
+        synchronized (entries) {
+            Entry entry = entries.get(handle);
+            if (entry != null && entry.result != null
+                    && SystemClock.elapsedRealtime() < entry.expiresAt) {
+                return entry.result;
+            }
+        }
+        // Polling must not queue a run after the running one: the result it
+        // waits for is the one coming.
+        probe(handle, false);
+        return null;
+    }
+
+    /**
+     * Returns true if the network with {@code handle} passed its probes within
+     * the TTL.
+     */
+    public boolean isValidated(long handle) {
+        ProbeResult result = getResult(handle);
+        return result != null && result.isValidated();
+    }
+
+    /**
+     * Returns the measured RTT of the network with {@code handle}, or -1 if it
+     * is unknown or the network is not validated.
+     */
+    public long getLatency(long handle) {
+        ProbeResult result = getResult(handle);
+        return result != null && result.isValidated() ? result.rttMs : -1;
+    }
+
+    /**
+     * Probes the network with {@code handle} in the background, unless it is not
+     * connected. If a probe of it is already running, runs again after it.
+     */
+    public void probe(long handle) {
+        probe(handle, true);
+    }
+
+    /**
+     * @param rerun whether to run again after a probe already running, whose
+     *              results may predate a change of the network.
+     */
+    private void probe(final long handle, boolean rerun) {
+        if (monitor.getNetwork(handle) == null) {
+            return;
+        }
+        final Entry entry;
+        synchronized (entries) {
+            Entry current = entries.get(handle);
+            if (current != null && current.running) {
+                current.rerun |= rerun;
+                return;
+            }
+            entry = current != null ? current : new Entry();
+            entry.running = true;
+            entries.put(handle, entry);
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runProbes(handle, entry);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Destroyed.
+            synchronized (entries) {
+                entry.running = false;
+            }
+        }
+    }
+
+    public void destroy() {
+        monitor.unregister(netCallback);
+        monitor.removeDegradationListener(degradationListener);
+        executor.shutdownNow();
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private void runProbes(long handle, Entry entry) {
+        Network network = monitor.getNetwork(handle);
+        ProbeResult result = network == null ? ProbeResult.failed() : runProbes(network);
+        boolean rerun;
+        synchronized (entries) {
+            if (entries.get(handle) != entry) {
+                // Lost while probing.
+                return;
+            }
+            entry.result = result;
+            entry.expiresAt = SystemClock.elapsedRealtime() + ttlMs;
+            entry.running = false;
+            rerun = entry.rerun;
+            entry.rerun = false;
+        }
+        if (NetLog.isDebugEnabled()) {
+            Log.d(TAG, "Network " + handle + " probed: " + result);
+        }
+        for (Listener listener : listeners) {
+            listener.onProbeResult(handle, result);
+        }
+        if (rerun) {
+            probe(handle);
+        }
+    }
+
+    private ProbeResult runProbes(Network network) {
+        ProbeTransport transport = new NetworkTransport(network);
+        long rttMs = Long.MAX_VALUE;
+        for (Probe probe : probes) {
+            ProbeResult result = probe.run(transport);
+            if (!result.isValidated()) {
+                return result;
+            }
+            rttMs = Math.min(rttMs, result.rttMs);
+        }
+        return new ProbeResult(ProbeResult.Status.VALIDATED, rttMs);
+    }
+
+    private static final class Entry {
+        ProbeResult result;
+        long expiresAt;
+        boolean running;
+        boolean rerun;
+    }
+
+    /**
+     * Creates sockets and resolves names on a specific network.
+     */
+    private static final class NetworkTransport implements ProbeTransport {
+        private final Network network;
+
+        NetworkTransport(Network network) {
+            this.network = network;
+        }
+
+        @Override
+        public SocketFactory getSocketFactory() {
+            return network.getSocketFactory();
+        }
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            return network.getAllByName(host);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.u2tzjtne.netmonitor.probe;
+
+import com.u2tzjtne.netmonitor.entity.ProbeResult;
+
+/**
+ * A lightweight check that a network actually reaches the Internet.
+ */
+public interface Probe {
+    /**
+     * Runs the probe once on {@code transport}. The timeout of the probe bounds
+     * the connection and each read, not the resolution of the host name, which
+     * lasts as long as the resolver of the transport takes (the platform one
+     * gives up after a few seconds). Never throws: failures are reported as
+     * {@link ProbeResult.Status#FAILED}.
+     */
+    ProbeResult run(ProbeTransport transport);
+}
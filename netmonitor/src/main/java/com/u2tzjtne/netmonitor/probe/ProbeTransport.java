@@ -0,0 +1,29 @@
+package com.u2tzjtne.netmonitor.probe;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import javax.net.SocketFactory;
+
+/**
+ * The network a probe runs on: where its sockets are created and how it
+ * resolves host names. {@link #DEFAULT} uses the process default network,
+ * which is enough to run probes against a local server on a plain JVM.
+ */
+public interface ProbeTransport {
+    ProbeTransport DEFAULT = new ProbeTransport() {
+        @Override
+        public SocketFactory getSocketFactory() {
+            return SocketFactory.getDefault();
+        }
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            return InetAddress.getAllByName(host);
+        }
+    };
+
+    SocketFactory getSocketFactory();
+
+    InetAddress[] resolve(String host) throws UnknownHostException;
+}
@@ -0,0 +1,35 @@
+package com.u2tzjtne.netmonitor.probe;
+
+import com.u2tzjtne.netmonitor.entity.ProbeResult;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Opens a TCP connection to an endpoint; the connect time is the RTT.
+ */
+public class TcpProbe implements Probe {
+    private final String host;
+    private final int port;
+    private final int timeoutMs;
+
+    public TcpProbe(String host, int port, int timeoutMs) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public ProbeResult run(ProbeTransport transport) {
+        try (Socket socket = transport.getSocketFactory().createSocket()) {
+            InetAddress address = transport.resolve(host)[0];
+            long start = System.nanoTime();
+            socket.connect(new InetSocketAddress(address, port), timeoutMs);
+            return new ProbeResult(ProbeResult.Status.VALIDATED, (System.nanoTime() - start) / 1000000);
+        } catch (IOException | RuntimeException e) {
+            return ProbeResult.failed();
+        }
+    }
+}
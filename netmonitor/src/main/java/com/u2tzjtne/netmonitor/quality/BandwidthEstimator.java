@@ -0,0 +1,290 @@
+package com.u2tzjtne.netmonitor.quality;
+
+import android.annotation.SuppressLint;
+import android.net.NetworkCapabilities;
+import android.util.LongSparseArray;
+
+import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.entity.BandwidthEstimate;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetQuality;
+import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.util.NetUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.u2tzjtne.netmonitor.core.NetMonitor.INVALID_NET_ID;
+
+/**
+ * Estimates the bandwidth and RTT of each network beyond the coarse NetType.
+ * <p>
+ * When a network connects, the estimate starts from what the platform claims:
+ * the link bandwidth hints of its NetworkCapabilities and, for cellular
+ * networks, the nominal bandwidth of its subtype. Throughput and RTT samples
+ * observed by the app, e.g. fed by its HTTP stack through
+ * {@link #addThroughputSample(long, long, long, boolean)}, then take over and
+ * are smoothed with an exponentially weighted moving average.
+ * <p>
+ * Listeners are only called when the downstream estimate moves the network to
+ * another {@link NetQuality} bucket, so they can pick bitrates or prefetch
+ * sizes without reacting to every sample.
+ */
+@SuppressLint("NewApi")
+public class BandwidthEstimator {
+    // Upper bounds, in kbps, of POOR, MODERATE and GOOD. Above is EXCELLENT.
+    public static final long[] DEFAULT_THRESHOLDS_KBPS = {150, 550, 2000};
+    // Weight of a new sample in the moving average.
+    static final double SMOOTHING = 0.25;
+    // Transfers smaller or shorter than this measure latency, not throughput.
+    static final long MIN_SAMPLE_BYTES = 16 * 1024;
+    static final long MIN_SAMPLE_MS = 20;
+
+    /**
+     * Notified on the thread feeding the sample, or delivering the NetMonitor
+     * event, when the quality bucket of a network changes.
+     */
+    public interface Listener {
+        void onQualityChanged(BandwidthEstimate estimate);
+    }
+
+    private final NetMonitor monitor;
+    private final long[] thresholdsKbps;
+    // Guarded by itself.
+    private final LongSparseArray<State> states = new LongSparseArray<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final NetCallback netCallback = new NetCallback() {
+        @Override
+        public void onNetChanged(NetType newNetType) {
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+            setPrior(netInfo);
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+            synchronized (states) {
+                states.remove(networkHandle);
+            }
+        }
+    };
+
+    public BandwidthEstimator(NetMonitor monitor) {
+        this(monitor, DEFAULT_THRESHOLDS_KBPS);
+    }
+
+    /**
+     * @param thresholdsKbps ascending upper bounds of the POOR, MODERATE and GOOD
+     *                       buckets.
+     */
+    public BandwidthEstimator(NetMonitor monitor, long[] thresholdsKbps) {
+        if (thresholdsKbps.length != 3) {
+            throw new IllegalArgumentException("Expected 3 thresholds, got " + thresholdsKbps.length);
+        }
+        this.monitor = monitor;
+        this.thresholdsKbps = thresholdsKbps.clone();
+        monitor.register(netCallback);
+        List<NetInfo> connected = monitor.getActiveNetworkList();
+        if (connected != null) {
+            for (NetInfo netInfo : connected) {
+                setPrior(netInfo);
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Records a transfer of {@code bytes} over {@code durationMs} on the default
+     * network.
+     */
+    public void addThroughputSample(long bytes, long durationMs, boolean upload) {
+        addThroughputSample(monitor.getDefaultNetId(), bytes, durationMs, upload);
+    }
+
+    /**
+     * Records a transfer of {@code bytes} over {@code durationMs} on the network
+     * with {@code handle}. Transfers too small to measure throughput, or on a
+     * network no longer connected, are ignored.
+     */
+    public void addThroughputSample(long handle, long bytes, long durationMs, boolean upload) {
+        if (handle == INVALID_NET_ID || bytes < MIN_SAMPLE_BYTES || durationMs < MIN_SAMPLE_MS) {
+            return;
+        }
+        long kbps = bytes * 8 / durationMs;
+        BandwidthEstimate changed;
+        synchronized (states) {
+            State state = getConnectedState(handle);
+            if (state == null) {
+                return;
+            }
+            if (upload) {
+                state.upKbps = smooth(state.upKbps, kbps, state.observedUp);
+                state.observedUp = true;
+            } else {
+                state.downKbps = smooth(state.downKbps, kbps, state.observedDown);
+                state.observedDown = true;
+            }
+            changed = updateQuality(handle, state);
+        }
+        notifyIfChanged(changed);
+    }
+
+    /**
+     * Records a round trip of {@code rttMs} on the network with {@code handle}.
+     */
+    public void addRttSample(long handle, long rttMs) {
+        if (handle == INVALID_NET_ID || rttMs < 0) {
+            return;
+        }
+        synchronized (states) {
+            State state = getConnectedState(handle);
+            if (state == null) {
+                return;
+            }
+            state.rttMs = smooth(state.rttMs, rttMs, state.rttMs >= 0);
+        }
+    }
+
+    /**
+     * Returns the estimate of the default network.
+     */
+    public BandwidthEstimate getEstimate() {
+        return getEstimate(monitor.getDefaultNetId());
+    }
+
+    /**
+     * Returns the estimate of the network with {@code handle}, with UNKNOWN
+     * quality if nothing is known about it.
+     */
+    public BandwidthEstimate getEstimate(long handle) {
+        synchronized (states) {
+            State state = states.get(handle);
+            if (state == null) {
+                return new BandwidthEstimate(handle, -1, -1, -1, NetQuality.UNKNOWN, false);
+            }
+            return toEstimate(handle, state);
+        }
+    }
+
+    public void destroy() {
+        monitor.unregister(netCallback);
+        synchronized (states) {
+            states.clear();
+        }
+    }
+
+    private void setPrior(NetInfo netInfo) {
+        long downKbps = -1;
+        long upKbps = -1;
+        // A VPN is no faster than the network it runs over, whose capabilities
+        // and subtype are the ones the platform fills.
+        long link = netInfo.vpn && netInfo.underlyingHandle != INVALID_NET_ID
+                ? netInfo.underlyingHandle : netInfo.handle;
+        NetworkCapabilities capabilities = monitor.getNetworkCapabilities(link);
+        if (capabilities != null) {
+            downKbps = positiveOr(capabilities.getLinkDownstreamBandwidthKbps(), -1);
+            upKbps = positiveOr(capabilities.getLinkUpstreamBandwidthKbps(), -1);
+        }
+        if (NetUtils.isCellular(netInfo.type)) {
+            int nominalKbps = NetUtils.getNominalBandwidthKbps(monitor.getNetworkState(link));
+            if (nominalKbps > 0) {
+                downKbps = downKbps > 0 ? Math.min(downKbps, nominalKbps) : nominalKbps;
+            }
+        }
+        BandwidthEstimate changed;
+        synchronized (states) {
+            State state = states.get(netInfo.handle);
+            if (state == null) {
+                state = new State();
+                states.put(netInfo.handle, state);
+            }
+            // Observed samples always win over what the platform claims.
+            if (!state.observedDown) {
+                state.downKbps = downKbps;
+            }
+            if (!state.observedUp) {
+                state.upKbps = upKbps;
+            }
+            changed = updateQuality(netInfo.handle, state);
+        }
+        notifyIfChanged(changed);
+    }
+
+    // Must hold states. Returns null if the network is not connected, so a
+    // late sample of a lost network leaves no entry behind.
+    private State getConnectedState(long handle) {
+        State state = states.get(handle);
+        if (state == null && monitor.getSnapshot().getNetwork(handle) != null) {
+            state = new State();
+            states.put(handle, state);
+        }
+        return state;
+    }
+
+    // Must hold states. Returns the new estimate if the quality bucket changed.
+    private BandwidthEstimate updateQuality(long handle, State state) {
+        NetQuality quality = toQuality(state.downKbps);
+        if (quality == state.quality) {
+            return null;
+        }
+        state.quality = quality;
+        return toEstimate(handle, state);
+    }
+
+    private void notifyIfChanged(BandwidthEstimate estimate) {
+        if (estimate == null) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            listener.onQualityChanged(estimate);
+        }
+    }
+
+    NetQuality toQuality(long downKbps) {
+        if (downKbps < 0) {
+            return NetQuality.UNKNOWN;
+        } else if (downKbps < thresholdsKbps[0]) {
+            return NetQuality.POOR;
+        } else if (downKbps < thresholdsKbps[1]) {
+            return NetQuality.MODERATE;
+        } else if (downKbps < thresholdsKbps[2]) {
+            return NetQuality.GOOD;
+        }
+        return NetQuality.EXCELLENT;
+    }
+
+    private static BandwidthEstimate toEstimate(long handle, State state) {
+        return new BandwidthEstimate(handle, state.downKbps, state.upKbps, state.rttMs,
+                state.quality, state.observedDown || state.observedUp);
+    }
+
+    private static long smooth(long current, long sample, boolean hasCurrent) {
+        if (!hasCurrent || current < 0) {
+            return sample;
+        }
+        return Math.round(current + SMOOTHING * (sample - current));
+    }
+
+    private static long positiveOr(int value, long fallback) {
+        return value > 0 ? value : fallback;
+    }
+
+    private static final class State {
+        long downKbps = -1;
+        long upKbps = -1;
+        long rttMs = -1;
+        boolean observedDown;
+        boolean observedUp;
+        NetQuality quality = NetQuality.UNKNOWN;
+    }
+}
@@ -0,0 +1,37 @@
+package com.u2tzjtne.netmonitor.schedule;
+
+import com.u2tzjtne.netmonitor.entity.NetQuality;
+
+/**
+ * What the default network must offer for a {@link NetJobScheduler} job to
+ * run, and how long the job may be held back to share a radio wakeup.
+ */
+public final class JobConstraints {
+    /**
+     * Any network, coalesced for up to the scheduler's batch window.
+     */
+    public static final JobConstraints ANY = new JobConstraints(false, null, Long.MAX_VALUE);
+
+    // Requires a network the platform reports as not metered.
+    public final boolean unmetered;
+    // Requires a BandwidthEstimator quality at least this good, null for any.
+    public final NetQuality minQuality;
+    // Once queued this long, the job runs as soon as its network constraints
+    // are met, without waiting for a batch.
+    public final long maxDelayMs;
+
+    public JobConstraints(boolean unmetered, NetQuality minQuality, long maxDelayMs) {
+        if (maxDelayMs < 0) {
+            throw new IllegalArgumentException("maxDelayMs < 0");
+        }
+        this.unmetered = unmetered;
+        this.minQuality = minQuality;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    @Override
+    public String toString() {
+        return (unmetered ? "unmetered " : "") + (minQuality != null ? ">=" + minQuality + " " : "")
+                + (maxDelayMs != Long.MAX_VALUE ? "within " + maxDelayMs + "ms" : "any time");
+    }
+}
@@ -0,0 +1,346 @@
+package com.u2tzjtne.netmonitor.schedule;
+
+import android.annotation.SuppressLint;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.entity.BandwidthEstimate;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetQuality;
+import com.u2tzjtne.netmonitor.entity.NetSnapshot;
+import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.quality.BandwidthEstimator;
+import com.u2tzjtne.netmonitor.util.NetUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static android.net.NetworkCapabilities.NET_CAPABILITY_NOT_METERED;
+import static com.u2tzjtne.netmonitor.core.NetMonitor.INVALID_NET_ID;
+import static com.u2tzjtne.netmonitor.core.NetMonitor.TAG;
+
+/**
+ * Runs background jobs on the default network in radio-friendly batches.
+ * <p>
+ * Waking a cellular radio costs seconds of high power state whatever the
+ * amount transferred, so jobs reacting to each onNetChanged on their own keep
+ * it awake. Jobs scheduled here are held until the default network meets
+ * their {@link JobConstraints}. On Wi-Fi, Ethernet and other non-cellular
+ * networks they then run right away. On cellular they are coalesced: nothing
+ * runs until the oldest job has waited for the batch window or its maxDelayMs,
+ * and then every job whose constraints are met is released together. Jobs
+ * becoming ready while a batch runs join it, the radio being up anyway.
+ * <p>
+ * At most {@code maxParallelism} jobs run at once. A job that fails is
+ * retried after an exponential backoff. Constraints are checked again on
+ * every default network change, quality change, submission and job end.
+ */
+@SuppressLint("NewApi")
+public class NetJobScheduler {
+    public static final long DEFAULT_BATCH_WINDOW_MS = 15 * 60 * 1000;
+    public static final int DEFAULT_MAX_PARALLELISM = 2;
+    static final long INITIAL_BACKOFF_MS = 30 * 1000;
+    static final long MAX_BACKOFF_MS = 30 * 60 * 1000;
+
+    /**
+     * Work needing the network.
+     */
+    public interface Job {
+        /**
+         * Runs on a scheduler thread with the default network, null before
+         * Lollipop. Returns false, or throws, to be retried later.
+         */
+        boolean run(Network network);
+    }
+
+    private final NetMonitor monitor;
+    private final BandwidthEstimator estimator;
+    private final int maxParallelism;
+    private final long batchWindowMs;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Object lock = new Object();
+    // Guarded by lock, with the fields below.
+    private final List<Entry> pending = new ArrayList<>();
+    // Released, waiting for a free slot.
+    private final ArrayDeque<Entry> batch = new ArrayDeque<>();
+    private int running;
+    private ScheduledFuture<?> wakeup;
+    private boolean destroyed;
+    private final Runnable evaluate = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (lock) {
+                evaluate();
+            }
+        }
+    };
+    private final NetCallback netCallback = new NetCallback() {
+        @Override
+        public void onNetChanged(NetType newNetType) {
+            execute(evaluate);
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+        }
+    };
+    private final BandwidthEstimator.Listener qualityListener = new BandwidthEstimator.Listener() {
+        @Override
+        public void onQualityChanged(BandwidthEstimate estimate) {
+            execute(evaluate);
+        }
+    };
+
+    public NetJobScheduler(NetMonitor monitor) {
+        this(monitor, null, DEFAULT_MAX_PARALLELISM, DEFAULT_BATCH_WINDOW_MS);
+    }
+
+    /**
+     * @param estimator rates the default network for {@link JobConstraints#minQuality},
+     *                  may be null in which case quality constraints are never met.
+     */
+    public NetJobScheduler(NetMonitor monitor, BandwidthEstimator estimator, int maxParallelism,
+                           long batchWindowMs) {
+        if (maxParallelism <= 0) {
+            throw new IllegalArgumentException("maxParallelism must be positive");
+        }
+        this.monitor = monitor;
+        this.estimator = estimator;
+        this.maxParallelism = maxParallelism;
+        this.batchWindowMs = batchWindowMs;
+        this.executor = new ScheduledThreadPoolExecutor(maxParallelism + 1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "NetMonitor-jobs");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        monitor.register(netCallback);
+        if (estimator != null) {
+            estimator.addListener(qualityListener);
+        }
+    }
+
+    /**
+     * Holds {@code job} until the default network meets {@code constraints}
+     * and its batch is released.
+     */
+    public void schedule(Job job, JobConstraints constraints) {
+        synchronized (lock) {
+            if (destroyed) {
+                return;
+            }
+            pending.add(new Entry(job, constraints, SystemClock.elapsedRealtime()));
+            evaluate();
+        }
+    }
+
+    /**
+     * Drops {@code job} if it is not running. Returns false if it was not held.
+     */
+    public boolean cancel(Job job) {
+        synchronized (lock) {
+            return remove(pending.iterator(), job) | remove(batch.iterator(), job);
+        }
+    }
+
+    /**
+     * Returns the number of jobs held or waiting for a slot.
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size() + batch.size();
+        }
+    }
+
+    /**
+     * Drops the held jobs and interrupts the running ones.
+     */
+    public void destroy() {
+        monitor.unregister(netCallback);
+        if (estimator != null) {
+            estimator.removeListener(qualityListener);
+        }
+        synchronized (lock) {
+            destroyed = true;
+            pending.clear();
+            batch.clear();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Releases the jobs that are due and schedules the next evaluation. Must
+     * hold lock.
+     */
+    private void evaluate() {
+        if (destroyed) {
+            return;
+        }
+        if (wakeup != null) {
+            wakeup.cancel(false);
+            wakeup = null;
+        }
+        NetSnapshot snapshot = monitor.getSnapshot();
+        NetType type = snapshot.getDefaultType();
+        long handle = snapshot.getDefaultNetId();
+        if (type == null || type == NetType.NET_NONE) {
+            // Evaluated again on the next default network change.
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        boolean eager = !NetUtils.isCellular(type) || running > 0;
+        boolean metered = isMetered(snapshot, handle, type);
+        NetQuality quality = estimator != null ? estimator.getEstimate(handle).quality : null;
+        long batchAt = Long.MAX_VALUE;
+        long nextWakeup = Long.MAX_VALUE;
+        for (int i = 0; i < pending.size(); i++) {
+            Entry entry = pending.get(i);
+            if (!meets(entry.constraints, metered, quality)) {
+                continue;
+            }
+            if (entry.notBefore > now) {
+                nextWakeup = Math.min(nextWakeup, entry.notBefore);
+                continue;
+            }
+            batchAt = Math.min(batchAt, eager ? now : entry.queuedAt
+                    + Math.min(batchWindowMs, entry.constraints.maxDelayMs));
+        }
+        if (batchAt <= now) {
+            // Everything that can run goes in the same wakeup.
+            for (Iterator<Entry> iterator = pending.iterator(); iterator.hasNext(); ) {
+                Entry entry = iterator.next();
+                if (entry.notBefore <= now && meets(entry.constraints, metered, quality)) {
+                    iterator.remove();
+                    batch.add(entry);
+                }
+            }
+        } else {
+            nextWakeup = Math.min(nextWakeup, batchAt);
+        }
+        // Jobs released on an earlier network, still waiting for a slot, go
+        // back to pending if this one doesn't meet their constraints anymore.
+        for (Iterator<Entry> iterator = batch.iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (!meets(entry.constraints, metered, quality)) {
+                iterator.remove();
+                pending.add(entry);
+            }
+        }
+        Network network = monitor.getNetwork(handle);
+        while (running < maxParallelism && !batch.isEmpty()) {
+            final Entry entry = batch.poll();
+            final Network boundNetwork = network;
+            running++;
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runJob(entry, boundNetwork);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+        if (nextWakeup != Long.MAX_VALUE) {
+            try {
+                wakeup = executor.schedule(evaluate, nextWakeup - now, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Destroyed.
+            }
+        }
+    }
+
+    private void runJob(Entry entry, Network network) {
+        boolean done;
+        try {
+            done = entry.job.run(network);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Job failed", e);
+            done = false;
+        }
+        synchronized (lock) {
+            running--;
+            if (!done && !destroyed) {
+                entry.notBefore = SystemClock.elapsedRealtime()
+                        + Math.min(INITIAL_BACKOFF_MS << Math.min(entry.attempts, 16), MAX_BACKOFF_MS);
+                entry.attempts++;
+                pending.add(entry);
+            }
+            evaluate();
+        }
+    }
+
+    private void execute(Runnable runnable) {
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            // Destroyed.
+        }
+    }
+
+    private boolean isMetered(NetSnapshot snapshot, long handle, NetType type) {
+        // Traffic through a VPN is billed as on the network it runs over.
+        NetInfo netInfo = snapshot.getNetwork(handle);
+        if (netInfo != null && netInfo.vpn && netInfo.underlyingHandle != INVALID_NET_ID) {
+            handle = netInfo.underlyingHandle;
+        }
+        NetworkCapabilities capabilities = monitor.getNetworkCapabilities(handle);
+        if (capabilities == null) {
+            return NetUtils.isCellular(type);
+        }
+        return !capabilities.hasCapability(NET_CAPABILITY_NOT_METERED);
+    }
+
+    private static boolean meets(JobConstraints constraints, boolean metered, NetQuality quality) {
+        if (constraints.unmetered && metered) {
+            return false;
+        }
+        return constraints.minQuality == null
+                || (quality != null && quality.compareTo(constraints.minQuality) >= 0);
+    }
+
+    private static boolean remove(Iterator<Entry> iterator, Job job) {
+        boolean removed = false;
+        while (iterator.hasNext()) {
+            if (iterator.next().job == job) {
+                iterator.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    private static final class Entry {
+        final Job job;
+        final JobConstraints constraints;
+        final long queuedAt;
+        // Guarded by lock.
+        long notBefore;
+        int attempts;
+
+        Entry(Job job, JobConstraints constraints, long queuedAt) {
+            this.job = job;
+            this.constraints = constraints;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.u2tzjtne.netmonitor.select;
+
+import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.entity.TrackedNetwork;
+
+/**
+ * Decides which of the connected networks a kind of traffic should use.
+ */
+public abstract class NetworkPolicy {
+    /**
+     * Any network, unmetered ones first, e.g. for bulk transfers that may
+     * still use cellular data when nothing else is available.
+     */
+    public static final NetworkPolicy UNMETERED_FIRST = new NetworkPolicy("unmetered-first") {
+        @Override
+        public boolean accepts(TrackedNetwork network) {
+            return true;
+        }
+
+        @Override
+        public int compare(TrackedNetwork a, TrackedNetwork b) {
+            if (a.metered != b.metered) {
+                return a.metered ? 1 : -1;
+            }
+            return compareValidatedThenLatency(a, b);
+        }
+    };
+
+    /**
+     * Unmetered networks only, e.g. for prefetching or backups.
+     */
+    public static final NetworkPolicy UNMETERED_ONLY = new NetworkPolicy("unmetered-only") {
+        @Override
+        public boolean accepts(TrackedNetwork network) {
+            return !network.metered;
+        }
+
+        @Override
+        public int compare(TrackedNetwork a, TrackedNetwork b) {
+            return compareValidatedThenLatency(a, b);
+        }
+    };
+
+    /**
+     * The validated network with the lowest measured RTT, e.g. for interactive
+     * requests. Networks never probed come after the measured ones.
+     */
+    public static final NetworkPolicy LOWEST_LATENCY = new NetworkPolicy("lowest-latency") {
+        @Override
+        public boolean accepts(TrackedNetwork network) {
+            return true;
+        }
+
+        @Override
+        public int compare(TrackedNetwork a, TrackedNetwork b) {
+            return compareValidatedThenLatency(a, b);
+        }
+    };
+
+    /**
+     * Cellular networks only, e.g. for carrier services.
+     */
+    public static final NetworkPolicy CELLULAR_ONLY = new NetworkPolicy("cellular-only") {
+        @Override
+        public boolean accepts(TrackedNetwork network) {
+            return network.cellular;
+        }
+
+        @Override
+        public int compare(TrackedNetwork a, TrackedNetwork b) {
+            return compareValidatedThenLatency(a, b);
+        }
+    };
+
+    /**
+     * Returns a policy accepting the networks of {@code type}, or any type if
+     * null, that are unmetered and validated when required, the ones with the
+     * lowest RTT first.
+     */
+    public static NetworkPolicy require(final NetType type, final boolean unmetered, final boolean validated) {
+        return new NetworkPolicy("require(" + type + (unmetered ? ", unmetered" : "")
+                + (validated ? ", validated" : "") + ")") {
+            @Override
+            public boolean accepts(TrackedNetwork network) {
+                return (type == null || network.netInfo.type == type)
+                        && (!unmetered || !network.metered)
+                        && (!validated || network.validated);
+            }
+
+            @Override
+            public int compare(TrackedNetwork a, TrackedNetwork b) {
+                return compareValidatedThenLatency(a, b);
+            }
+        };
+    }
+
+    private final String name;
+
+    protected NetworkPolicy(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns true if {@code network} may be selected at all.
+     */
+    public abstract boolean accepts(TrackedNetwork network);
+
+    /**
+     * Returns true if VPNs may be selected too. They aren't by default: a VPN
+     * runs over one of the other networks, which the policy should pick, and
+     * the traffic not bound to a network goes through it anyway.
+     */
+    public boolean acceptsVpn() {
+        return false;
+    }
+
+    /**
+     * Returns a negative number if {@code a} is preferred over {@code b}, a
+     * positive number if {@code b} is, 0 if either will do.
+     */
+    public abstract int compare(TrackedNetwork a, TrackedNetwork b);
+
+    /**
+     * Validated networks first, then the lowest known RTT.
+     */
+    protected static int compareValidatedThenLatency(TrackedNetwork a, TrackedNetwork b) {
+        if (a.validated != b.validated) {
+            return a.validated ? -1 : 1;
+        }
+        if (a.rttMs < 0 || b.rttMs < 0) {
+            return a.rttMs < 0 ? (b.rttMs < 0 ? 0 : 1) : -1;
+        }
+        return a.rttMs < b.rttMs ? -1 : (a.rttMs == b.rttMs ? 0 : 1);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,338 @@
+package com.u2tzjtne.netmonitor.select;
+
+import android.annotation.SuppressLint;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.SystemClock;
+import android.util.LongSparseArray;
+
+import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.entity.NetDegradation;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.entity.ProbeResult;
+import com.u2tzjtne.netmonitor.entity.TrackedNetwork;
+import com.u2tzjtne.netmonitor.probe.NetworkProber;
+import com.u2tzjtne.netmonitor.util.NetUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.SocketFactory;
+
+import static android.net.NetworkCapabilities.NET_CAPABILITY_NOT_METERED;
+import static android.net.NetworkCapabilities.NET_CAPABILITY_VALIDATED;
+import static android.net.NetworkCapabilities.TRANSPORT_CELLULAR;
+import static android.net.NetworkCapabilities.TRANSPORT_WIFI;
+
+/**
+ * Tracks every connected network, not only the default one, and picks the
+ * best one for a {@link NetworkPolicy}.
+ * <p>
+ * Callers subscribe with a policy and are handed the selected platform
+ * Network, to bind sockets or a {@link SocketFactory} to it, so bulk traffic can
+ * go over Wi-Fi while RPCs use the fastest network in parallel. When the
+ * selected network is lost, or a better one connects, subscribers are moved to
+ * the next best network. Metered, validated and transport come from the
+ * NetworkCapabilities pushed to the NetMonitor; latency comes from an optional
+ * {@link NetworkProber}, whose results also trigger a new selection. A network
+ * the platform announced as losing counts as not validated, so subscribers
+ * move to the fallback before it is actually lost. VPNs are only selected
+ * for the policies accepting them, see {@link NetworkPolicy#acceptsVpn()}.
+ * <p>
+ * Requires Lollipop; on older releases no network is ever selected.
+ */
+@SuppressLint("NewApi")
+public class NetworkSelector {
+    /**
+     * Notified when the network selected for a subscription changes, on the
+     * thread delivering the NetMonitor or prober event. Must return quickly.
+     */
+    public interface Listener {
+        /**
+         * {@code network} and {@code boundNetwork} are null when no network
+         * satisfies the policy anymore.
+         */
+        void onNetworkSelected(TrackedNetwork network, Network boundNetwork);
+    }
+
+    private final NetMonitor monitor;
+    private final NetworkProber prober;
+    private final Object lock = new Object();
+    // Guarded by lock.
+    private final LongSparseArray<NetInfo> networks = new LongSparseArray<>();
+    private final LongSparseArray<ProbeResult> probeResults = new LongSparseArray<>();
+    private final LongSparseArray<NetDegradation> degrading = new LongSparseArray<>();
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final NetCallback netCallback = new NetCallback() {
+        @Override
+        public void onNetChanged(NetType newNetType) {
+            // The default network may have gained or lost capabilities.
+            refresh();
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+            synchronized (lock) {
+                networks.put(netInfo.handle, netInfo);
+                reselect();
+            }
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+            synchronized (lock) {
+                networks.remove(networkHandle);
+                probeResults.remove(networkHandle);
+                degrading.remove(networkHandle);
+                reselect();
+            }
+        }
+    };
+    private final NetMonitor.CapabilitiesListener capabilitiesListener = new NetMonitor.CapabilitiesListener() {
+        @Override
+        public void onCapabilitiesChanged(long handle, NetworkCapabilities capabilities) {
+            refresh();
+        }
+    };
+    private final NetMonitor.DegradationListener degradationListener = new NetMonitor.DegradationListener() {
+        @Override
+        public void onNetworkDegrading(NetDegradation degradation) {
+            synchronized (lock) {
+                if (networks.get(degradation.handle) == null) {
+                    return;
+                }
+                degrading.put(degradation.handle, degradation);
+                reselect();
+            }
+        }
+    };
+    private final NetworkProber.Listener probeListener = new NetworkProber.Listener() {
+        @Override
+        public void onProbeResult(long networkHandle, ProbeResult result) {
+            synchronized (lock) {
+                if (networks.get(networkHandle) == null) {
+                    return;
+                }
+                probeResults.put(networkHandle, result);
+                reselect();
+            }
+        }
+    };
+
+    public NetworkSelector(NetMonitor monitor) {
+        this(monitor, null);
+    }
+
+    /**
+     * @param prober measures the latency of networks, may be null in which case
+     *               the latency of every network is unknown.
+     */
+    public NetworkSelector(NetMonitor monitor, NetworkProber prober) {
+        this.monitor = monitor;
+        this.prober = prober;
+        List<NetInfo> connected = monitor.getActiveNetworkList();
+        synchronized (lock) {
+            if (connected != null) {
+                for (NetInfo netInfo : connected) {
+                    networks.put(netInfo.handle, netInfo);
+                }
+            }
+        }
+        monitor.register(netCallback);
+        monitor.addCapabilitiesListener(capabilitiesListener);
+        monitor.addDegradationListener(degradationListener);
+        if (prober != null) {
+            prober.addListener(probeListener);
+        }
+    }
+
+    /**
+     * Returns every connected network.
+     */
+    public List<TrackedNetwork> getNetworks() {
+        synchronized (lock) {
+            return track();
+        }
+    }
+
+    /**
+     * Returns the best network for {@code policy} right now, or null if none
+     * satisfies it.
+     */
+    public TrackedNetwork select(NetworkPolicy policy) {
+        synchronized (lock) {
+            return select(policy, track());
+        }
+    }
+
+    /**
+     * Subscribes {@code listener} to the best network for {@code policy}. The
+     * listener is called before this returns with the current selection, null
+     * included.
+     */
+    public Subscription subscribe(NetworkPolicy policy, Listener listener) {
+        synchronized (lock) {
+            Subscription subscription = new Subscription(policy, listener);
+            subscriptions.add(subscription);
+            subscription.update(select(policy, track()));
+            return subscription;
+        }
+    }
+
+    /**
+     * Selects again. Events of the NetMonitor and prober already do it.
+     */
+    public void refresh() {
+        synchronized (lock) {
+            reselect();
+        }
+    }
+
+    public void destroy() {
+        monitor.unregister(netCallback);
+        monitor.removeCapabilitiesListener(capabilitiesListener);
+        monitor.removeDegradationListener(degradationListener);
+        if (prober != null) {
+            prober.removeListener(probeListener);
+        }
+        synchronized (lock) {
+            subscriptions.clear();
+        }
+    }
+
+    // Must hold lock.
+    private void reselect() {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        List<TrackedNetwork> tracked = track();
+        // Listeners may cancel their subscription.
+        for (Subscription subscription : subscriptions.toArray(new Subscription[0])) {
+            if (subscriptions.contains(subscription)) {
+                subscription.update(select(subscription.policy, tracked));
+            }
+        }
+    }
+
+    // Must hold lock.
+    private List<TrackedNetwork> track() {
+        List<TrackedNetwork> tracked = new ArrayList<>(networks.size());
+        long now = SystemClock.elapsedRealtime();
+        for (int i = 0; i < networks.size(); i++) {
+            NetInfo netInfo = networks.valueAt(i);
+            NetworkCapabilities capabilities = monitor.getNetworkCapabilities(netInfo.handle);
+            ProbeResult probeResult = probeResults.get(netInfo.handle);
+            long rttMs = probeResult != null && probeResult.isValidated() ? probeResult.rttMs : -1;
+            boolean losing = isLosing(netInfo.handle, now);
+            if (capabilities == null) {
+                tracked.add(new TrackedNetwork(netInfo, true,
+                        !losing && probeResult != null && probeResult.isValidated(),
+                        netInfo.type == NetType.NET_WIFI, NetUtils.isCellular(netInfo.type), rttMs));
+                continue;
+            }
+            // A failed probe overrides the platform's validation, which is only
+            // refreshed every few minutes.
+            boolean validated = !losing && (probeResult != null
+                    ? probeResult.isValidated()
+                    : capabilities.hasCapability(NET_CAPABILITY_VALIDATED));
+            tracked.add(new TrackedNetwork(netInfo,
+                    !capabilities.hasCapability(NET_CAPABILITY_NOT_METERED), validated,
+                    capabilities.hasTransport(TRANSPORT_WIFI), capabilities.hasTransport(TRANSPORT_CELLULAR),
+                    rttMs));
+        }
+        return tracked;
+    }
+
+    // Must hold lock. A network still up past its deadline was kept by the
+    // platform after all: it is dropped from degrading, which also clears it on
+    // the capabilities change the platform pushes when it validates it again.
+    private boolean isLosing(long handle, long now) {
+        NetDegradation degradation = degrading.get(handle);
+        if (degradation != null && degradation.deadlineMs <= now) {
+            degrading.remove(handle);
+            return false;
+        }
+        return degradation != null;
+    }
+
+    private static TrackedNetwork select(NetworkPolicy policy, List<TrackedNetwork> tracked) {
+        TrackedNetwork best = null;
+        for (int i = 0; i < tracked.size(); i++) {
+            TrackedNetwork candidate = tracked.get(i);
+            if (candidate.netInfo.vpn && !policy.acceptsVpn()) {
+                continue;
+            }
+            if (policy.accepts(candidate) && (best == null || policy.compare(candidate, best) < 0)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A policy and the network currently selected for it.
+     */
+    public final class Subscription {
+        private final NetworkPolicy policy;
+        private final Listener listener;
+        // Guarded by lock.
+        private TrackedNetwork selected;
+        private Network boundNetwork;
+        private boolean notified;
+
+        private Subscription(NetworkPolicy policy, Listener listener) {
+            this.policy = policy;
+            this.listener = listener;
+        }
+
+        public NetworkPolicy getPolicy() {
+            return policy;
+        }
+
+        public TrackedNetwork getSelected() {
+            synchronized (lock) {
+                return selected;
+            }
+        }
+
+        /**
+         * Returns the selected platform Network, or null if none.
+         */
+        public Network getNetwork() {
+            synchronized (lock) {
+                return boundNetwork;
+            }
+        }
+
+        /**
+         * Returns a SocketFactory bound to the selected network, or null if
+         * none: traffic must not silently fall back to the default network.
+         */
+        public SocketFactory getSocketFactory() {
+            Network network = getNetwork();
+            return network != null ? network.getSocketFactory() : null;
+        }
+
+        public void cancel() {
+            synchronized (lock) {
+                subscriptions.remove(this);
+            }
+        }
+
+        // Must hold lock.
+        void update(TrackedNetwork best) {
+            long previous = selected != null ? selected.getHandle() : NetMonitor.INVALID_NET_ID;
+            long current = best != null ? best.getHandle() : NetMonitor.INVALID_NET_ID;
+            selected = best;
+            // The platform Network may come after its NetInfo, see it again then.
+            if (notified && previous == current && (best == null || boundNetwork != null)) {
+                return;
+            }
+            notified = true;
+            boundNetwork = best != null ? monitor.getNetwork(current) : null;
+            listener.onNetworkSelected(best, boundNetwork);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.u2tzjtne.netmonitor.traffic;
+
+import android.os.Process;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Sums the counters of a UID in a file in the format of
+ * {@code /proc/net/xt_qtaguid/stats}: a header line, then one line per
+ * interface, tag, UID and counter set, whose columns are
+ * {@code idx iface acct_tag_hex uid_tag_int cnt_set rx_bytes rx_packets tx_bytes ...}.
+ * Only untagged lines are summed, the tagged ones being breakdowns of them.
+ * <p>
+ * For releases and devices where TrafficStats doesn't report per-UID counters
+ * but the file is readable. The file is parsed in a reused buffer.
+ */
+public class ProcTrafficSource implements TrafficSource {
+    public static final String DEFAULT_PATH = "/proc/net/xt_qtaguid/stats";
+
+    private static final int RX_BYTES_COLUMN = 5;
+    private static final int TX_BYTES_COLUMN = 7;
+
+    private final File file;
+    private final int uid;
+    // Guarded by this.
+    private byte[] buffer = new byte[8192];
+    private final long[] row = new long[2];
+
+    public ProcTrafficSource() {
+        this(new File(DEFAULT_PATH), Process.myUid());
+    }
+
+    public ProcTrafficSource(File file, int uid) {
+        this.file = file;
+        this.uid = uid;
+    }
+
+    @Override
+    public synchronized boolean read(long[] counters) {
+        int length;
+        try {
+            length = readFile();
+        } catch (IOException e) {
+            return false;
+        }
+        long rxBytes = 0;
+        long txBytes = 0;
+        boolean found = false;
+        // Skips the header.
+        int position = nextLine(0, length);
+        while (position < length) {
+            int end = nextLine(position, length);
+            long[] parsed = parseRow(position, end);
+            if (parsed != null) {
+                rxBytes += parsed[0];
+                txBytes += parsed[1];
+                found = true;
+            }
+            position = end;
+        }
+        if (!found) {
+            return false;
+        }
+        counters[0] = rxBytes;
+        counters[1] = txBytes;
+        return true;
+    }
+
+    /**
+     * Returns the received and sent bytes of the line between {@code start}
+     * and {@code end} if it is an untagged line of the UID, otherwise null.
+     */
+    private long[] parseRow(int start, int end) {
+        int column = 0;
+        int position = start;
+        while (position < end && column <= TX_BYTES_COLUMN) {
+            while (position < end && buffer[position] == ' ') {
+                position++;
+            }
+            int tokenStart = position;
+            while (position < end && buffer[position] != ' ' && buffer[position] != '\n') {
+                position++;
+            }
+            if (tokenStart == position) {
+                break;
+            }
+            switch (column) {
+                case 2:
+                    // acct_tag_hex, 0x0 when untagged.
+                    if (position - tokenStart != 3 || buffer[tokenStart + 1] != 'x'
+                            || buffer[tokenStart + 2] != '0') {
+                        return null;
+                    }
+                    break;
+                case 3:
+                    if (parseLong(tokenStart, position) != uid) {
+                        return null;
+                    }
+                    break;
+                case RX_BYTES_COLUMN:
+                    row[0] = parseLong(tokenStart, position);
+                    break;
+                case TX_BYTES_COLUMN:
+                    row[1] = parseLong(tokenStart, position);
+                    return row[0] >= 0 && row[1] >= 0 ? row : null;
+                default:
+                    break;
+            }
+            column++;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the decimal number between {@code start} and {@code end}, or -1
+     * if it is not one.
+     */
+    private long parseLong(int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private int nextLine(int position, int length) {
+        while (position < length && buffer[position] != '\n') {
+            position++;
+        }
+        return Math.min(position + 1, length);
+    }
+
+    /**
+     * Reads the whole file into the buffer, growing it if needed. The size of
+     * a proc file is unknown until it is read.
+     */
+    private int readFile() throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+                if (length == buffer.length) {
+                    byte[] grown = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, length);
+                    buffer = grown;
+                }
+            }
+            return length;
+        } finally {
+            in.close();
+        }
+    }
+}
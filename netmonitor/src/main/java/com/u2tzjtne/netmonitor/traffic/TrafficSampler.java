@@ -0,0 +1,258 @@
+package com.u2tzjtne.netmonitor.traffic;
+
+import android.os.SystemClock;
+
+import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.core.NetMonitor;
+import com.u2tzjtne.netmonitor.entity.NetInfo;
+import com.u2tzjtne.netmonitor.entity.NetType;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accounts the bytes the app transfers on each NetType, e.g. to enforce data
+ * budgets on metered links.
+ * <p>
+ * The sampler polls a {@link TrafficSource} on its own thread and attributes
+ * the bytes transferred since the previous sample to the type of the default
+ * network at that sample. It also samples on every default network change, so
+ * a delta never spans two types. Polling is adaptive: every
+ * {@code minIntervalMs} while traffic flows, backing off exponentially up to
+ * {@code maxIntervalMs} while the link is idle, and at {@code maxIntervalMs}
+ * while there is no network.
+ * <p>
+ * Totals are kept in arrays indexed by NetType ordinal and queried without
+ * allocating. Listeners are notified once when the total of a type crosses its
+ * budget, until the budget or the totals are reset.
+ */
+public class TrafficSampler {
+    public static final long DEFAULT_MIN_INTERVAL_MS = 1000;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 60 * 1000;
+    // Deltas below this, e.g. keep-alives, count as idle for the schedule.
+    static final long IDLE_BYTES = 1024;
+
+    private static final NetType[] TYPES = NetType.values();
+
+    /**
+     * Notified on the sampler thread.
+     */
+    public interface Listener {
+        void onBudgetExceeded(NetType type, long totalBytes, long budgetBytes);
+    }
+
+    private final NetMonitor monitor;
+    private final TrafficSource source;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final ScheduledThreadPoolExecutor executor;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+    // Indexed by NetType ordinal. Guarded by lock, with rateBytesPerSecond.
+    private final long[] rxBytes = new long[TYPES.length];
+    private final long[] txBytes = new long[TYPES.length];
+    // 0 for no budget.
+    private final long[] budgets = new long[TYPES.length];
+    private final boolean[] exceeded = new boolean[TYPES.length];
+    private long rateBytesPerSecond;
+    // Confined to the sampler thread.
+    private final long[] counters = new long[2];
+    private boolean hasPrevious;
+    private long previousRxBytes;
+    private long previousTxBytes;
+    private long previousSampleMs;
+    private NetType sampledType;
+    private long intervalMs;
+    private ScheduledFuture<?> nextSample;
+    private final Runnable sample = new Runnable() {
+        @Override
+        public void run() {
+            sample();
+        }
+    };
+    private final NetCallback netCallback = new NetCallback() {
+        @Override
+        public void onNetChanged(NetType newNetType) {
+            // Closes the delta of the previous type.
+            execute(sample);
+        }
+
+        @Override
+        public void onNetConnect(NetInfo netInfo) {
+        }
+
+        @Override
+        public void onNetDisconnect(long networkHandle) {
+        }
+    };
+
+    public TrafficSampler(NetMonitor monitor) {
+        this(monitor, new UidTrafficSource(), DEFAULT_MIN_INTERVAL_MS, DEFAULT_MAX_INTERVAL_MS);
+    }
+
+    public TrafficSampler(NetMonitor monitor, TrafficSource source, long minIntervalMs, long maxIntervalMs) {
+        if (minIntervalMs <= 0 || maxIntervalMs < minIntervalMs) {
+            throw new IllegalArgumentException("Expected 0 < minIntervalMs <= maxIntervalMs");
+        }
+        this.monitor = monitor;
+        this.source = source;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.intervalMs = minIntervalMs;
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "NetMonitor-traffic");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        monitor.register(netCallback);
+        execute(sample);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Notifies the listeners when the bytes received and sent on {@code type}
+     * reach {@code budgetBytes}, or removes its budget if 0.
+     */
+    public void setBudget(NetType type, long budgetBytes) {
+        int index = type.ordinal();
+        synchronized (lock) {
+            budgets[index] = budgetBytes;
+            exceeded[index] = budgetBytes > 0 && rxBytes[index] + txBytes[index] >= budgetBytes;
+        }
+    }
+
+    public long getRxBytes(NetType type) {
+        synchronized (lock) {
+            return rxBytes[type.ordinal()];
+        }
+    }
+
+    public long getTxBytes(NetType type) {
+        synchronized (lock) {
+            return txBytes[type.ordinal()];
+        }
+    }
+
+    public long getTotalBytes(NetType type) {
+        int index = type.ordinal();
+        synchronized (lock) {
+            return rxBytes[index] + txBytes[index];
+        }
+    }
+
+    /**
+     * Returns the bytes received and sent per second between the last two
+     * samples.
+     */
+    public long getBytesPerSecond() {
+        synchronized (lock) {
+            return rateBytesPerSecond;
+        }
+    }
+
+    /**
+     * Zeroes the totals, e.g. at the start of a billing period. Budgets are
+     * kept and can be exceeded again.
+     */
+    public void reset() {
+        synchronized (lock) {
+            for (int i = 0; i < TYPES.length; i++) {
+                rxBytes[i] = 0;
+                txBytes[i] = 0;
+                exceeded[i] = false;
+            }
+        }
+    }
+
+    public void destroy() {
+        monitor.unregister(netCallback);
+        executor.shutdownNow();
+    }
+
+    private void execute(Runnable runnable) {
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            // Destroyed.
+        }
+    }
+
+    /**
+     * Accounts the delta since the previous sample and schedules the next one.
+     * Runs on the sampler thread.
+     */
+    private void sample() {
+        long now = SystemClock.elapsedRealtime();
+        NetType type = monitor.getSnapshot().getDefaultType();
+        long delta = 0;
+        if (source.read(counters)) {
+            long rx = counters[0] - previousRxBytes;
+            long tx = counters[1] - previousTxBytes;
+            // Negative when the counters were reset: the delta is lost.
+            if (hasPrevious && sampledType != null && rx >= 0 && tx >= 0) {
+                delta = rx + tx;
+                account(sampledType, rx, tx, now - previousSampleMs);
+            }
+            previousRxBytes = counters[0];
+            previousTxBytes = counters[1];
+            previousSampleMs = now;
+            hasPrevious = true;
+        } else {
+            hasPrevious = false;
+        }
+        sampledType = type;
+        if (type == null || type == NetType.NET_NONE) {
+            intervalMs = maxIntervalMs;
+        } else if (delta >= IDLE_BYTES) {
+            intervalMs = minIntervalMs;
+        } else {
+            intervalMs = Math.min(intervalMs * 2, maxIntervalMs);
+        }
+        if (nextSample != null) {
+            nextSample.cancel(false);
+        }
+        try {
+            nextSample = executor.schedule(sample, intervalMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Destroyed.
+        }
+    }
+
+    private void account(NetType type, long rx, long tx, long elapsedMs) {
+        int index = type.ordinal();
+        long total;
+        long budget;
+        boolean crossed;
+        synchronized (lock) {
+            rxBytes[index] += rx;
+            txBytes[index] += tx;
+            rateBytesPerSecond = (rx + tx) * 1000 / Math.max(1, elapsedMs);
+            total = rxBytes[index] + txBytes[index];
+            budget = budgets[index];
+            crossed = budget > 0 && !exceeded[index] && total >= budget;
+            if (crossed) {
+                exceeded[index] = true;
+            }
+        }
+        if (crossed) {
+            for (Listener listener : listeners) {
+                listener.onBudgetExceeded(type, total, budget);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.u2tzjtne.netmonitor.traffic;
+
+/**
+ * Cumulative byte counters of the app, read by a {@link TrafficSampler}.
+ * Implementations other than {@link UidTrafficSource} and
+ * {@link ProcTrafficSource} can replay recorded counters off-device.
+ */
+public interface TrafficSource {
+    /**
+     * Stores the bytes received in {@code counters[0]} and sent in
+     * {@code counters[1]} since an arbitrary origin, e.g. boot. Called on the
+     * sampler thread at each sample; should avoid allocating.
+     *
+     * @return false if the counters are unavailable.
+     */
+    boolean read(long[] counters);
+}
@@ -0,0 +1,31 @@
+package com.u2tzjtne.netmonitor.traffic;
+
+import android.net.TrafficStats;
+import android.os.Process;
+
+/**
+ * Reads the TrafficStats counters of a UID, the app's by default.
+ */
+public class UidTrafficSource implements TrafficSource {
+    private final int uid;
+
+    public UidTrafficSource() {
+        this(Process.myUid());
+    }
+
+    public UidTrafficSource(int uid) {
+        this.uid = uid;
+    }
+
+    @Override
+    public boolean read(long[] counters) {
+        long rxBytes = TrafficStats.getUidRxBytes(uid);
+        long txBytes = TrafficStats.getUidTxBytes(uid);
+        if (rxBytes == TrafficStats.UNSUPPORTED || txBytes == TrafficStats.UNSUPPORTED) {
+            return false;
+        }
+        counters[0] = rxBytes;
+        counters[1] = txBytes;
+        return true;
+    }
+}
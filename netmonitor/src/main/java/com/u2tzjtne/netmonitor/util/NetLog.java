@@ -0,0 +1,27 @@
+package com.u2tzjtne.netmonitor.util;
+
+import android.util.Log;
+
+import static com.u2tzjtne.netmonitor.core.NetMonitor.TAG;
+
+/**
+ * Gate for the debug logs of the event path. Callers check
+ * {@link #isDebugEnabled()} before building a message, so the NetworkCallback
+ * handlers don't concatenate strings or call toString() on platform objects
+ * when nobody reads the log.
+ */
+public final class NetLog {
+    // Enabled with "adb shell setprop log.tag.NetMonitor DEBUG", or setDebugEnabled.
+    private static volatile boolean debugEnabled = Log.isLoggable(TAG, Log.DEBUG);
+
+    private NetLog() {
+    }
+
+    public static boolean isDebugEnabled() {
+        return debugEnabled;
+    }
+
+    public static void setDebugEnabled(boolean enabled) {
+        debugEnabled = enabled;
+    }
+}
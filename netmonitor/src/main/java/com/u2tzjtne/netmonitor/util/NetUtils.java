@@ -5,6 +5,7 @@ import android.telephony.TelephonyManager;
 
 import com.u2tzjtne.netmonitor.entity.NetState;
 import com.u2tzjtne.netmonitor.entity.NetType;
+import com.u2tzjtne.netmonitor.entity.RadioTech;
 
 public class NetUtils {
 
@@ -23,30 +24,78 @@ public class NetUtils {
                 return NetType.NET_BLUETOOTH;
             case ConnectivityManager.TYPE_MOBILE:
                 // Use information from TelephonyManager to classify the connection.
-                switch (netState.getNetworkSubType()) {
-                    case TelephonyManager.NETWORK_TYPE_GPRS:
-                    case TelephonyManager.NETWORK_TYPE_EDGE:
-                    case TelephonyManager.NETWORK_TYPE_CDMA:
-                    case TelephonyManager.NETWORK_TYPE_1xRTT:
-                    case TelephonyManager.NETWORK_TYPE_IDEN:
-                        return NetType.NET_2G;
-                    case TelephonyManager.NETWORK_TYPE_UMTS:
-                    case TelephonyManager.NETWORK_TYPE_EVDO_0:
-                    case TelephonyManager.NETWORK_TYPE_EVDO_A:
-                    case TelephonyManager.NETWORK_TYPE_HSDPA:
-                    case TelephonyManager.NETWORK_TYPE_HSUPA:
-                    case TelephonyManager.NETWORK_TYPE_HSPA:
-                    case TelephonyManager.NETWORK_TYPE_EVDO_B:
-                    case TelephonyManager.NETWORK_TYPE_EHRPD:
-                    case TelephonyManager.NETWORK_TYPE_HSPAP:
-                        return NetType.NET_3G;
-                    case TelephonyManager.NETWORK_TYPE_LTE:
-                        return NetType.NET_4G;
-                    default:
-                        return NetType.NET_UNKNOWN_CELLULAR;
-                }
+                return getRadioTech(netState).netType;
             default:
                 return NetType.NET_UNKNOWN;
         }
     }
+
+    /**
+     * Returns whether {@code type} is a mobile data connection, of any
+     * generation.
+     */
+    public static boolean isCellular(NetType type) {
+        return type == NetType.NET_2G || type == NetType.NET_3G || type == NetType.NET_4G
+                || type == NetType.NET_5G || type == NetType.NET_UNKNOWN_CELLULAR;
+    }
+
+    /**
+     * Returns the radio technology of a mobile connection, UNKNOWN for the
+     * others.
+     */
+    public static RadioTech getRadioTech(NetState netState) {
+        if (netState.getNetworkType() != ConnectivityManager.TYPE_MOBILE) {
+            return RadioTech.UNKNOWN;
+        }
+        return RadioTech.classify(netState.getNetworkSubType(), netState.getOverrideNetworkSubType());
+    }
+
+    /**
+     * Returns the theoretical maximum downstream bandwidth of a connection in
+     * kbps, from its type and subtype, or -1 when it can't be told from them
+     * (e.g. Wi-Fi and Ethernet). Values borrowed from Chromium's
+     * NetworkChangeNotifier::GetMaxBandwidthMbpsForConnectionSubtype.
+     */
+    public static int getNominalBandwidthKbps(NetState netState) {
+        if (!netState.isConnected()) {
+            return 0;
+        }
+        if (netState.getNetworkType() != ConnectivityManager.TYPE_MOBILE) {
+            return -1;
+        }
+        switch (netState.getNetworkSubType()) {
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return 64;
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+                return 115;
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+                return 153;
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+                return 237;
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+                return 384;
+            case TelephonyManager.NETWORK_TYPE_UMTS:
+                return 2000;
+            case TelephonyManager.NETWORK_TYPE_EVDO_0:
+                return 2460;
+            case TelephonyManager.NETWORK_TYPE_EVDO_A:
+                return 3100;
+            case TelephonyManager.NETWORK_TYPE_HSPA:
+                return 3600;
+            case TelephonyManager.NETWORK_TYPE_HSDPA:
+                return 14300;
+            case TelephonyManager.NETWORK_TYPE_HSUPA:
+                return 14400;
+            case TelephonyManager.NETWORK_TYPE_EVDO_B:
+                return 14700;
+            case TelephonyManager.NETWORK_TYPE_EHRPD:
+                return 21000;
+            case TelephonyManager.NETWORK_TYPE_HSPAP:
+                return 42000;
+            case TelephonyManager.NETWORK_TYPE_LTE:
+                return 100000;
+            default:
+                return -1;
+        }
+    }
 }
@@ -4,35 +4,37 @@ import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.util.Log;
 
-import com.u2tzjtne.netmonitor.core.NetMonitor;
-import com.u2tzjtne.netmonitor.core.NetCallback;
+import com.u2tzjtne.netmonitor.annotation.OnNetChanged;
+import com.u2tzjtne.netmonitor.annotation.OnNetConnect;
+import com.u2tzjtne.netmonitor.annotation.OnNetDisconnect;
+import com.u2tzjtne.netmonitor.core.SharedNetMonitor;
 import com.u2tzjtne.netmonitor.entity.NetInfo;
 import com.u2tzjtne.netmonitor.entity.NetType;
 
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
-    private NetMonitor netMonitor;
+    private SharedNetMonitor.Handle netMonitor;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-        netMonitor = new NetMonitor(new NetCallback() {
-            @Override
-            public void onNetChanged(NetType newNetType) {
-                Log.d(TAG, "onNetChanged: " + newNetType.name());
-            }
-
-            @Override
-            public void onNetConnect(NetInfo netInfo) {
-                Log.d(TAG, "onNetConnect: " + netInfo.name);
-            }
-
-            @Override
-            public void onNetDisconnect(long networkHandle) {
-                Log.d(TAG, "onNetDisconnect: " + networkHandle);
-            }
-        }, this);
+        netMonitor = SharedNetMonitor.attach(this, this);
+    }
+
+    @OnNetChanged
+    void onNetChanged(NetType newNetType) {
+        Log.d(TAG, "onNetChanged: " + newNetType.name());
+    }
+
+    @OnNetConnect
+    void onNetConnect(NetInfo netInfo) {
+        Log.d(TAG, "onNetConnect: " + netInfo.name);
+    }
+
+    @OnNetDisconnect
+    void onNetDisconnect(long networkHandle) {
+        Log.d(TAG, "onNetDisconnect: " + networkHandle);
     }
 
     @Override